@@ -1,9 +1,12 @@
 module uk.ac.soton.comp1206 {
+    requires java.management;
     requires java.scripting;
+    requires jdk.management;
     requires javafx.controls;
     requires javafx.fxml;
     requires javafx.media;
     requires org.apache.logging.log4j;
+    requires org.apache.logging.log4j.core;
     requires nv.websocket.client;
     opens uk.ac.soton.comp1206.ui to javafx.fxml;
     exports uk.ac.soton.comp1206;
@@ -13,4 +16,5 @@ module uk.ac.soton.comp1206 {
     exports uk.ac.soton.comp1206.event;
     exports uk.ac.soton.comp1206.component;
     exports uk.ac.soton.comp1206.game;
+    exports uk.ac.soton.comp1206.storage;
 }
\ No newline at end of file
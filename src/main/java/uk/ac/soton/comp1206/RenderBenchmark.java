@@ -0,0 +1,473 @@
+package uk.ac.soton.comp1206;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.GameBlock;
+import uk.ac.soton.comp1206.component.GameBoard;
+import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.network.LocalServer;
+import uk.ac.soton.comp1206.scene.InstructionsScene;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmarks the real JavaFX rendering path for the game's boards and scenes, and writes the results as JSON.
+ *
+ * Each scenario puts a board or scene on the stage and drives it through a scripted sequence, one step per frame:
+ * filling the board row by row, completing and clearing a row and column together, sweeping the mouse over every
+ * block, cycling the piece board, and playing the challenge and instructions scenes from the keyboard. Board scenarios
+ * are run for each board size. For every scenario the report holds the build time, node count and frame time
+ * statistics.
+ *
+ * When the Monocle glass platform is on the classpath the benchmark runs headless with the software pipeline, so
+ * results can be compared between machines and in CI. Without it, a display is needed.
+ *
+ * Usage: {@code RenderBenchmark [sizes] [report]}, for example {@code RenderBenchmark 5,10,25,50,100 render.json}
+ */
+public class RenderBenchmark extends Application {
+
+    private static final Logger logger = LogManager.getLogger(RenderBenchmark.class);
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private static int[] sizes = {5, 10, 25, 50, 100};
+    private static Path report = Path.of("render-benchmark.json");
+    private static LocalServer server;
+
+    /**
+     * A scripted sequence run against one board or scene
+     */
+    private abstract static class Scenario {
+        final String name;
+        final int size;
+
+        Scenario(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        /**
+         * Put the board or scene on the stage
+         * @return the root of what is being measured
+         */
+        abstract Parent build(Stage stage);
+
+        /**
+         * Run one step of the script
+         * @param frame frame number, starting at 0
+         * @return false once the script has finished
+         */
+        abstract boolean step(int frame);
+    }
+
+    /**
+     * Measurements for one scenario
+     */
+    private record Result(String name, int size, double buildMillis, int nodes, int frames, double meanMillis,
+                          double p50Millis, double p99Millis, double maxMillis, double scriptMillis, String error) {
+
+        static Result failed(Scenario scenario, Throwable error) {
+            return new Result(scenario.name, scenario.size, 0, 0, 0, 0, 0, 0, 0, 0, String.valueOf(error));
+        }
+
+        String toJson() {
+            if (error != null) {
+                return String.format(Locale.ROOT, "{\"name\":\"%s\",\"size\":%d,\"error\":\"%s\"}",
+                        name, size, error.replace("\\", "\\\\").replace("\"", "\\\""));
+            }
+            return String.format(Locale.ROOT,
+                    "{\"name\":\"%s\",\"size\":%d,\"buildMs\":%.3f,\"nodes\":%d,\"frames\":%d,\"meanMs\":%.3f,"
+                            + "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f,\"scriptMs\":%.3f}",
+                    name, size, buildMillis, nodes, frames, meanMillis, p50Millis, p99Millis, maxMillis, scriptMillis);
+        }
+    }
+
+    private final List<Scenario> scenarios = new ArrayList<>();
+    private final List<Result> results = new ArrayList<>();
+    private GameWindow gameWindow;
+
+    /**
+     * Run the benchmark
+     * @param args optional comma separated board sizes and report path
+     * @throws IOException if the local server cannot start
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            sizes = Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray();
+        }
+        if (args.length > 1) {
+            report = Path.of(args[1]);
+        }
+
+        //Prefer a repeatable headless software pipeline where Monocle is available
+        if (isAvailable("com.sun.glass.ui.monocle.MonoclePlatformFactory")) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+            System.setProperty("prism.order", "sw");
+            logger.info("Running headless on Monocle");
+        } else if (System.getenv("DISPLAY") == null && System.getProperty("os.name").startsWith("Linux")) {
+            System.err.println("No display and Monocle is not on the classpath: cannot start JavaFX");
+            System.exit(2);
+        }
+
+        //Scenes need a server to talk to, use a local one so the benchmark does not depend on the network
+        server = new LocalServer(0);
+        server.start();
+        System.setProperty("tetrecs.server", server.getUri());
+
+        launch(args);
+    }
+
+    private static boolean isAvailable(String className) {
+        try {
+            Class.forName(className, false, RenderBenchmark.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Called by JavaFX with the primary stage. Runs every scenario in turn, then writes the report and exits.
+     * @param stage the stage to render into
+     */
+    @Override
+    public void start(Stage stage) {
+        for (int size : sizes) {
+            scenarios.add(fill(size));
+            scenarios.add(doubleClear(size));
+            scenarios.add(hover(size));
+        }
+        scenarios.add(pieceCycle());
+        scenarios.add(instructions());
+        scenarios.add(challenge());
+
+        stage.setScene(new Scene(new StackPane(), WIDTH, HEIGHT, Color.BLACK));
+        stage.show();
+
+        new AnimationTimer() {
+            private int current = -1;
+            private int frame;
+            private long last;
+            private long[] frameNanos;
+            private long scriptNanos;
+            private double buildMillis;
+            private int nodes;
+
+            @Override
+            public void handle(long now) {
+                if (current >= 0) {
+                    frameNanos[frame] = now - last;
+                    long start = System.nanoTime();
+                    boolean more;
+                    try {
+                        more = scenarios.get(current).step(frame);
+                    } catch (RuntimeException | LinkageError e) {
+                        logger.error("{} failed: {}", scenarios.get(current).name, e.toString());
+                        results.add(Result.failed(scenarios.get(current), e));
+                        next();
+                        return;
+                    }
+                    scriptNanos += System.nanoTime() - start;
+                    frame++;
+                    if (more && frame < frameNanos.length) {
+                        last = now;
+                        return;
+                    }
+                    results.add(summarise(scenarios.get(current), buildMillis, nodes, frameNanos, frame, scriptNanos));
+                }
+                next();
+            }
+
+            /**
+             * Build the next scenario, skipping any that fail to build, or finish after the last one
+             */
+            private void next() {
+                current++;
+                if (current >= scenarios.size()) {
+                    stop();
+                    finish();
+                    return;
+                }
+                var scenario = scenarios.get(current);
+                logger.info("Running {} at {}x{}", scenario.name, scenario.size, scenario.size);
+                long start = System.nanoTime();
+                Parent root;
+                try {
+                    root = scenario.build(stage);
+                } catch (RuntimeException | LinkageError e) {
+                    logger.error("{} failed to build: {}", scenario.name, e.toString());
+                    results.add(Result.failed(scenario, e));
+                    next();
+                    return;
+                }
+                buildMillis = (System.nanoTime() - start) / 1e6;
+                nodes = countNodes(root);
+                frameNanos = new long[10_000];
+                frame = 0;
+                scriptNanos = 0;
+                last = System.nanoTime();
+            }
+        }.start();
+    }
+
+    private Result summarise(Scenario scenario, double buildMillis, int nodes, long[] frameNanos, int frames,
+                             long scriptNanos) {
+        long[] sorted = Arrays.copyOf(frameNanos, frames);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        var result = new Result(scenario.name, scenario.size, buildMillis, nodes, frames,
+                total / 1e6 / Math.max(1, frames),
+                percentile(sorted, 0.5), percentile(sorted, 0.99), frames == 0 ? 0 : sorted[frames - 1] / 1e6,
+                scriptNanos / 1e6, null);
+        logger.info("{}", result.toJson());
+        return result;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * p) - 1)] / 1e6;
+    }
+
+    private void finish() {
+        var json = new StringBuilder();
+        json.append("{\"javafx\":\"").append(System.getProperty("javafx.runtime.version")).append('"');
+        json.append(",\"java\":\"").append(System.getProperty("java.version")).append('"');
+        json.append(",\"glass\":\"").append(System.getProperty("glass.platform", "default")).append('"');
+        json.append(",\"prism\":\"").append(System.getProperty("prism.order", "default")).append('"');
+        json.append(",\"results\":[\n");
+        for (int i = 0; i < results.size(); i++) {
+            json.append("  ").append(results.get(i).toJson()).append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        json.append("]}\n");
+        try {
+            Files.writeString(report, json);
+            logger.info("Wrote {} results to {}", results.size(), report.toAbsolutePath());
+        } catch (IOException e) {
+            logger.error("Unable to write report: {}", e.getMessage());
+        }
+        server.close();
+        Platform.exit();
+        System.exit(0);
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent parent) {
+            for (var child : parent.getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Show a board on its own scene
+     */
+    private static GameBoard showBoard(Stage stage, Grid grid) {
+        var board = new GameBoard(grid, HEIGHT, HEIGHT);
+        stage.setScene(new Scene(new StackPane(board), WIDTH, HEIGHT, Color.BLACK));
+        return board;
+    }
+
+    /**
+     * Fill the board one row per frame, as one change set per row
+     */
+    private static Scenario fill(int size) {
+        return new Scenario("fill", size) {
+            Grid grid;
+
+            @Override
+            Parent build(Stage stage) {
+                grid = new Grid(size, size);
+                return showBoard(stage, grid);
+            }
+
+            @Override
+            boolean step(int frame) {
+                int y = frame % size;
+                grid.beginChanges();
+                for (int x = 0; x < size; x++) {
+                    grid.set(x, y, frame / size % 2 == 0 ? 1 + (x + y) % 15 : 0);
+                }
+                grid.commitChanges();
+                return frame < Math.max(60, size * 2) - 1;
+            }
+        };
+    }
+
+    /**
+     * Complete a row and a column on an otherwise full board, then clear both together, over and over
+     */
+    private static Scenario doubleClear(int size) {
+        return new Scenario("double-clear", size) {
+            Grid grid;
+
+            @Override
+            Parent build(Stage stage) {
+                grid = new Grid(size, size);
+                var board = showBoard(stage, grid);
+                grid.beginChanges();
+                for (int x = 0; x < size; x++) {
+                    for (int y = 0; y < size; y++) {
+                        grid.set(x, y, 1 + (x * 7 + y) % 15);
+                    }
+                }
+                grid.commitChanges();
+                return board;
+            }
+
+            @Override
+            boolean step(int frame) {
+                int line = (frame / 2) % size;
+                grid.beginChanges();
+                for (int i = 0; i < size; i++) {
+                    grid.set(i, line, frame % 2 == 0 ? 0 : 1 + i % 15);
+                    grid.set(line, i, frame % 2 == 0 ? 0 : 1 + i % 15);
+                }
+                grid.commitChanges();
+                return frame < 59;
+            }
+        };
+    }
+
+    /**
+     * Move the mouse over the blocks of the board, one block per frame
+     */
+    private static Scenario hover(int size) {
+        return new Scenario("hover", size) {
+            GameBoard board;
+            GameBlock previous;
+
+            @Override
+            Parent build(Stage stage) {
+                board = showBoard(stage, new Grid(size, size));
+                return board;
+            }
+
+            @Override
+            boolean step(int frame) {
+                int cells = size * size;
+                //Visit up to 300 blocks spread across the whole board
+                int index = (int) ((long) frame * cells / Math.min(cells, 300));
+                var block = board.getBlock(index % size, index / size);
+                if (previous != null) {
+                    Event.fireEvent(previous, mouse(MouseEvent.MOUSE_EXITED));
+                }
+                Event.fireEvent(block, mouse(MouseEvent.MOUSE_ENTERED));
+                previous = block;
+                return frame < Math.min(cells, 300) - 1;
+            }
+        };
+    }
+
+    /**
+     * Show every piece in turn on a piece board
+     */
+    private static Scenario pieceCycle() {
+        return new Scenario("piece-cycle", 3) {
+            PieceBoard board;
+
+            @Override
+            Parent build(Stage stage) {
+                board = new PieceBoard(3, 3, 150, 150);
+                stage.setScene(new Scene(new StackPane(board), WIDTH, HEIGHT, Color.BLACK));
+                return board;
+            }
+
+            @Override
+            boolean step(int frame) {
+                board.displayPiece(GamePiece.createPiece(frame % GamePiece.PIECES));
+                return frame < 119;
+            }
+        };
+    }
+
+    /**
+     * Show the instructions scene, which draws every piece
+     */
+    private Scenario instructions() {
+        return new Scenario("instructions-scene", 5) {
+            @Override
+            Parent build(Stage stage) {
+                var window = window(stage);
+                window.loadScene(new InstructionsScene(window));
+                return window.getScene().getRoot();
+            }
+
+            @Override
+            boolean step(int frame) {
+                return frame < 119;
+            }
+        };
+    }
+
+    /**
+     * Play the challenge scene from the keyboard: move the aim, rotate, swap and drop
+     */
+    private Scenario challenge() {
+        KeyCode[] script = {KeyCode.LEFT, KeyCode.UP, KeyCode.E, KeyCode.ENTER, KeyCode.RIGHT, KeyCode.RIGHT,
+                KeyCode.DOWN, KeyCode.R, KeyCode.ENTER, KeyCode.Q, KeyCode.LEFT, KeyCode.DOWN, KeyCode.ENTER};
+        return new Scenario("challenge-scene", 5) {
+            @Override
+            Parent build(Stage stage) {
+                var window = window(stage);
+                window.startChallenge();
+                return window.getScene().getRoot();
+            }
+
+            @Override
+            boolean step(int frame) {
+                //Give the scene a few frames to initialise before typing
+                if (frame >= 3) {
+                    var code = script[frame % script.length];
+                    Event.fireEvent(gameWindow.getScene(),
+                            new KeyEvent(KeyEvent.KEY_PRESSED, "", "", code, false, false, false, false));
+                }
+                return frame < 239;
+            }
+        };
+    }
+
+    private GameWindow window(Stage stage) {
+        if (gameWindow == null) {
+            gameWindow = new GameWindow(stage, WIDTH, HEIGHT);
+        }
+        return gameWindow;
+    }
+
+    private static MouseEvent mouse(EventType<MouseEvent> type) {
+        return new MouseEvent(type, 0, 0, 0, 0, MouseButton.NONE, 0,
+                false, false, false, false, false, false, false, false, false, false, null);
+    }
+}
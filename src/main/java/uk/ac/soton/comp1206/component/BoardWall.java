@@ -0,0 +1,285 @@
+package uk.ac.soton.comp1206.component;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A wall of many small boards drawn into a single canvas, for spectating dozens of games at once.
+ *
+ * Unlike GameBoard, which uses one canvas per block, the whole wall is one node however many boards it shows. Boards
+ * can be updated from any thread; updates are collected and drawn together at most once per pulse. Only tiles that
+ * changed are drawn, and within a tile only the cells whose value changed.
+ *
+ * The amount of detail drawn depends on how big each cell ends up on screen: shaded blocks and labels when there is
+ * room, flat squares when tiles are small, and gapless pixels when they are tiny.
+ */
+public class BoardWall extends Canvas {
+
+    private static final Logger logger = LogManager.getLogger(BoardWall.class);
+
+    /**
+     * How much detail to draw for each cell
+     */
+    public enum Detail {
+        /**
+         * Shaded blocks with borders, and a label above each board
+         */
+        FULL,
+        /**
+         * Flat squares with a gap between them, and a label if there is room
+         */
+        FLAT,
+        /**
+         * Flat squares with no gaps and no labels
+         */
+        MINIMAL
+    }
+
+    private static final double LABEL_HEIGHT = 14;
+    private static final double TILE_GAP = 4;
+    private static final Color BACKGROUND = Color.BLACK;
+    private static final Color EMPTY = Color.color(1, 1, 1, 0.08);
+
+    private final int tiles;
+    private final int cols;
+    private final int rows;
+    private final int tilesPerRow;
+    private final double tileWidth;
+    private final double tileHeight;
+    private final double cellSize;
+    private final Detail detail;
+    private final double labelHeight;
+
+    /**
+     * Latest board received for each tile and not yet drawn, or null if the tile has not changed
+     */
+    private final AtomicReferenceArray<int[]> pending;
+
+    /**
+     * Latest label received for each tile and not yet drawn
+     */
+    private final AtomicReferenceArray<String> pendingLabels;
+
+    /**
+     * What is currently drawn for each tile, only touched on the JavaFX thread
+     */
+    private final int[][] shown;
+    private final String[] labels;
+
+    private final AtomicBoolean drawQueued = new AtomicBoolean(false);
+    private long cellsPainted = 0;
+
+    /**
+     * Create a wall of boards
+     *
+     * @param tiles  number of boards to show
+     * @param cols   columns in each board
+     * @param rows   rows in each board
+     * @param width  width of the wall
+     * @param height height of the wall
+     */
+    public BoardWall(int tiles, int cols, int rows, double width, double height) {
+        super(width, height);
+        this.tiles = tiles;
+        this.cols = cols;
+        this.rows = rows;
+
+        //Lay the tiles out as close to square as the wall allows
+        int perRow = Math.max(1, (int) Math.ceil(Math.sqrt(tiles * width / height)));
+        this.tilesPerRow = Math.min(perRow, tiles);
+        int tileRows = (tiles + tilesPerRow - 1) / tilesPerRow;
+        this.tileWidth = width / tilesPerRow;
+        this.tileHeight = height / tileRows;
+
+        //Work out the level of detail from the cell size without a label, then make room for the label if needed
+        double plain = Math.min((tileWidth - TILE_GAP) / cols, (tileHeight - TILE_GAP) / rows);
+        if (plain >= 14) {
+            detail = Detail.FULL;
+        } else if (plain >= 4) {
+            detail = Detail.FLAT;
+        } else {
+            detail = Detail.MINIMAL;
+        }
+        labelHeight = detail != Detail.MINIMAL && tileHeight - TILE_GAP - LABEL_HEIGHT >= rows * 6 ? LABEL_HEIGHT : 0;
+        this.cellSize = Math.max(1, Math.floor(Math.min((tileWidth - TILE_GAP) / cols,
+                (tileHeight - TILE_GAP - labelHeight) / rows)));
+
+        this.pending = new AtomicReferenceArray<>(tiles);
+        this.pendingLabels = new AtomicReferenceArray<>(tiles);
+        this.shown = new int[tiles][cols * rows];
+        this.labels = new String[tiles];
+
+        logger.info("Board wall of {} tiles, {} per row, {}px cells at {} detail", tiles, tilesPerRow, cellSize, detail);
+
+        var gc = getGraphicsContext2D();
+        gc.setFill(BACKGROUND);
+        gc.fillRect(0, 0, width, height);
+        for (int tile = 0; tile < tiles; tile++) {
+            drawTile(gc, tile);
+        }
+    }
+
+    /**
+     * Show a new state for one board. Can be called from any thread. The array is read when the wall is next drawn,
+     * so the caller must not change it afterwards.
+     *
+     * @param tile  the tile to update
+     * @param cells board contents, indexed by {@code y * cols + x}
+     */
+    public void update(int tile, int[] cells) {
+        pending.set(tile, cells);
+        queueDraw();
+    }
+
+    /**
+     * Set the label shown above one board, if there is room for labels. Can be called from any thread.
+     *
+     * @param tile  the tile to label
+     * @param label the label
+     */
+    public void setLabel(int tile, String label) {
+        if (labelHeight > 0) {
+            pendingLabels.set(tile, label);
+            queueDraw();
+        }
+    }
+
+    /**
+     * Get the level of detail the wall is drawn at
+     *
+     * @return detail
+     */
+    public Detail getDetail() {
+        return detail;
+    }
+
+    /**
+     * Get the number of boards shown
+     *
+     * @return number of tiles
+     */
+    public int getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Get the number of cells drawn since the wall was created, useful to check that only changes are drawn
+     *
+     * @return cells drawn
+     */
+    public long getCellsPainted() {
+        return cellsPainted;
+    }
+
+    private void queueDraw() {
+        if (drawQueued.compareAndSet(false, true)) {
+            Platform.runLater(this::draw);
+        }
+    }
+
+    /**
+     * Draw every tile that changed since the last draw. Runs on the JavaFX thread.
+     */
+    private void draw() {
+        drawQueued.set(false);
+        var gc = getGraphicsContext2D();
+        for (int tile = 0; tile < tiles; tile++) {
+            var label = pendingLabels.getAndSet(tile, null);
+            if (label != null && !label.equals(labels[tile])) {
+                labels[tile] = label;
+                drawLabel(gc, tile);
+            }
+            var cells = pending.getAndSet(tile, null);
+            if (cells == null) {
+                continue;
+            }
+            //Only draw the cells that differ from what is on screen
+            int[] current = shown[tile];
+            int length = Math.min(cells.length, current.length);
+            for (int i = 0; i < length; i++) {
+                if (cells[i] != current[i]) {
+                    current[i] = cells[i];
+                    drawCell(gc, tile, i % cols, i / cols, cells[i]);
+                }
+            }
+        }
+    }
+
+    private void drawTile(GraphicsContext gc, int tile) {
+        drawLabel(gc, tile);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                drawCell(gc, tile, x, y, shown[tile][y * cols + x]);
+            }
+        }
+    }
+
+    private void drawLabel(GraphicsContext gc, int tile) {
+        if (labelHeight == 0) {
+            return;
+        }
+        double left = tileLeft(tile);
+        double top = tileTop(tile);
+        gc.setFill(BACKGROUND);
+        gc.fillRect(left, top, tileWidth - TILE_GAP, labelHeight);
+        if (labels[tile] != null) {
+            gc.setFill(Color.WHITE);
+            gc.setFont(Font.font(labelHeight - 3));
+            gc.setTextAlign(TextAlignment.LEFT);
+            gc.setTextBaseline(VPos.TOP);
+            gc.fillText(labels[tile], left, top + 1, tileWidth - TILE_GAP);
+        }
+    }
+
+    private void drawCell(GraphicsContext gc, int tile, int x, int y, int value) {
+        cellsPainted++;
+        double left = tileLeft(tile) + x * cellSize;
+        double top = tileTop(tile) + labelHeight + y * cellSize;
+        Color colour = value == 0 ? EMPTY : GameBlock.COLOURS[value % GameBlock.COLOURS.length];
+
+        switch (detail) {
+            case FULL -> {
+                gc.setFill(BACKGROUND);
+                gc.fillRect(left, top, cellSize, cellSize);
+                gc.setFill(colour);
+                gc.fillRoundRect(left + 1, top + 1, cellSize - 2, cellSize - 2, 4, 4);
+                if (value != 0) {
+                    //A lighter top edge gives the blocks some depth without an effect
+                    gc.setFill(colour.brighter());
+                    gc.fillRect(left + 2, top + 1, cellSize - 4, Math.max(1, cellSize / 6));
+                    gc.setStroke(Color.BLACK);
+                    gc.setLineWidth(1);
+                    gc.strokeRoundRect(left + 1, top + 1, cellSize - 2, cellSize - 2, 4, 4);
+                }
+            }
+            case FLAT -> {
+                gc.setFill(BACKGROUND);
+                gc.fillRect(left, top, cellSize, cellSize);
+                gc.setFill(colour);
+                gc.fillRect(left, top, cellSize - 1, cellSize - 1);
+            }
+            case MINIMAL -> {
+                gc.setFill(value == 0 ? BACKGROUND : colour);
+                gc.fillRect(left, top, cellSize, cellSize);
+            }
+        }
+    }
+
+    private double tileLeft(int tile) {
+        return (tile % tilesPerRow) * tileWidth + TILE_GAP / 2;
+    }
+
+    private double tileTop(int tile) {
+        return (tile / tilesPerRow) * tileHeight + TILE_GAP / 2;
+    }
+}
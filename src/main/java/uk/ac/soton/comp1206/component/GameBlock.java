@@ -1,6 +1,5 @@
 package uk.ac.soton.comp1206.component;
 
-import javafx.animation.AnimationTimer;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.value.ObservableValue;
@@ -10,6 +9,7 @@ import javafx.scene.effect.DropShadow;
 import javafx.scene.paint.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ui.QualityController;
 
 /**
  * The Visual User Interface component representing a single block in the grid.
@@ -25,6 +25,11 @@ public class GameBlock extends Canvas {
     private static final Logger logger = LogManager.getLogger(GameBlock.class);
     private boolean centerIndicator = false;
 
+    /**
+     * Whether this block is part of the currently suggested placement
+     */
+    private boolean hint = false;
+
     /**
      * The set of colours for different pieces
      */
@@ -47,6 +52,26 @@ public class GameBlock extends Canvas {
             Color.PURPLE
     };
 
+    /**
+     * Shadow under filled blocks, shared by every block rather than created on each paint
+     */
+    private static final DropShadow SHADOW = new DropShadow(10, 3.0, 3.0, Color.color(0, 0, 0, 0.5));
+
+    /**
+     * Fill of empty blocks, and its flat replacement at lower quality
+     */
+    private static final LinearGradient EMPTY_GRADIENT = new LinearGradient(0, 0, 1, 1, true, CycleMethod.NO_CYCLE,
+            new Stop(1, Color.TRANSPARENT),
+            new Stop(0, Color.WHITE));
+    private static final Color EMPTY_FLAT = Color.color(1, 1, 1, 0.3);
+
+    /**
+     * Fill of the centre indicator, and its flat replacement at lower quality
+     */
+    private static final LinearGradient CENTRE_GRADIENT = new LinearGradient(0, 0, 1, 1, true, CycleMethod.NO_CYCLE,
+            new Stop(0.5, Color.GOLD),
+            new Stop(0, Color.PURPLE));
+
     public final GameBoard gameBoard;
 
     private final double width;
@@ -62,6 +87,18 @@ public class GameBlock extends Canvas {
      */
     private final int y;
 
+    /**
+     * Steps of opacity a fade is drawn in, so frames that would look the same are not repainted
+     */
+    private static final int FADE_STEPS = 32;
+
+    /**
+     * When the current fade out started, or 0 if the block is not fading
+     */
+    private long fadeStart = 0;
+    private long fadeNanos = 1;
+    private int fadeStep = -1;
+
     /**
      * The value of this block (0 = empty, otherwise specifies the colour to render as)
      */
@@ -103,6 +140,10 @@ public class GameBlock extends Canvas {
      * @param newValue   the new value
      */
     private void updateValue(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+        // A piece placed over a fading block replaces the fade
+        if (newValue.intValue() != 0) {
+            fadeStart = 0;
+        }
         paint();
     }
 
@@ -115,6 +156,18 @@ public class GameBlock extends Canvas {
         this.centerIndicator = centerIndicator;
     }
 
+    /**
+     * Set whether this block is part of the suggested placement, repainting if it changed
+     *
+     * @param hint whether to display the hint outline
+     */
+    public void setHint(boolean hint) {
+        if (this.hint != hint) {
+            this.hint = hint;
+            paint();
+        }
+    }
+
     private void setupHoverEffects() {
         this.setOnMouseEntered(event -> highlight(true));
         this.setOnMouseExited(event -> highlight(false));
@@ -158,13 +211,8 @@ public class GameBlock extends Canvas {
         }
         // Check if the center indicator flag is set to true
         if (centerIndicator) {
-            // Create a gradient fill for the center indicator
-            var gradient = new LinearGradient(0, 0, 1, 1, true, CycleMethod.NO_CYCLE,
-                    new Stop(0.5, Color.GOLD),
-                    new Stop(0, Color.PURPLE));
-
-            // Set the fill and stroke colors for the center indicator
-            gc.setFill(gradient);
+            // Set the fill and stroke colors for the center indicator, flat at lower quality
+            gc.setFill(QualityController.getQuality().hasGradients() ? CENTRE_GRADIENT : Color.GOLD);
             gc.setStroke(Color.BLACK);
             gc.setLineWidth(0.65);
 
@@ -174,6 +222,15 @@ public class GameBlock extends Canvas {
             // Draw the center indicator as an oval shape
             gc.fillOval((width - radius) / 2, (height - radius) / 2, radius, radius);
         }
+        // Outline the block if it is part of the suggested placement
+        if (hint) {
+            gc.setFill(Color.color(1, 1, 1, 0.35));
+            gc.fillRoundRect(4, 4, width - 8, height - 8, 8, 8);
+            gc.setStroke(Color.WHITE);
+            gc.setLineWidth(2);
+            gc.strokeRoundRect(4, 4, width - 8, height - 8, 8, 8);
+            gc.setLineWidth(1);
+        }
     }
 
     /**
@@ -205,16 +262,10 @@ public class GameBlock extends Canvas {
          */
         gc.clearRect(0, 0, width, height);
 
-        /* Create a gradient fill for the empty block, transitioning from
-         transparent to white to purple.
+        /* Fill the empty block with a gradient from white to transparent,
+         or a flat translucent white at lower quality
          */
-        var gradient = new LinearGradient(0, 0, 1, 1, true, CycleMethod.NO_CYCLE,
-                new Stop(1, Color.TRANSPARENT),
-                new Stop(0, Color.WHITE));
-        new Stop(0.5, Color.PURPLE);
-
-        // Set the fill color to the gradient
-        gc.setFill(gradient);
+        gc.setFill(QualityController.getQuality().hasGradients() ? EMPTY_GRADIENT : EMPTY_FLAT);
 
         /* Draw a rounded rectangle to fill the entire canvas, using the
          gradient fill and rounded corners
@@ -242,12 +293,11 @@ public class GameBlock extends Canvas {
         // Clear
         gc.clearRect(0, 0, width, height);
 
-        // Create a drop shadow effect to give the block a slight 3D appearance
-        DropShadow ds = new DropShadow();
-        ds.setOffsetY(3.0); // Set the vertical offset of the shadow
-        ds.setOffsetX(3.0); // Set the horizontal offset of the shadow
-        ds.setColor(Color.color(0, 0, 0, 0.5)); // Set the colour of the shadow
-        gc.setEffect(ds); // Apply the drop shadow effect to the canvas
+        // A drop shadow gives the block a slight 3D appearance, but is the most expensive thing drawn
+        boolean shadow = QualityController.getQuality().hasShadows();
+        if (shadow) {
+            gc.setEffect(SHADOW);
+        }
 
         // Colour fill with rounded corners
         gc.setFill(colour);
@@ -256,7 +306,9 @@ public class GameBlock extends Canvas {
         // Border
         gc.setStroke(Color.BLACK);
         gc.strokeRoundRect(0, 0, width, height, 10, 10);
-        gc.setEffect(null);  // Reset the effect so it does not affect other elements
+        if (shadow) {
+            gc.setEffect(null);  // Reset the effect so it does not affect other elements
+        }
     }
 
     /**
@@ -313,38 +365,44 @@ public class GameBlock extends Canvas {
     }
 
     /**
-     * Initiates a fade-out effect on this block.
+     * Initiates a fade-out effect on this block. The board animates every fading block from one timer, which stops as
+     * soon as the last fade has finished.
      */
     public void fadeOut() {
-        // Get the current time in nanoseconds, which will be used as a reference point for the animation
-        final long startNanoTime = System.nanoTime();
-
-        // Create a new AnimationTimer to handle the fade-out animation
-        new AnimationTimer() {
-            // This method will be called repeatedly by the AnimationTimer to update the animation
-            public void handle(long currentNanoTime) {
-                // Calculate the elapsed time in seconds since the animation started
-                double t = (currentNanoTime - startNanoTime) / 1_000_000_000.0;
-                // Calculate the opacity of the block based on the elapsed time,
-                // so that it fades out over a period of one second
-                double opacity = 1.0 - t;
-
-                // If the opacity has reached 0 or less, stop the animation and set the block to empty
-                if (opacity <= 0) {
-                    this.stop();
-                    // Ensure the block is set to empty after fade out
-                    setValue(0);
-                    // Update the visual representation of the block to reflect its empty state
-                    paintEmpty();
-                    // Exit the method early, as the animation is complete
-                    return;
-                }
-
-                // If the opacity is still greater than 0, update the visual representation of the block
-                // with the current opacity value, creating the fade-out effect
-                paintFade(opacity);
-            }
-        }.start(); // Start the animation timer
+        // Fade faster at lower quality, so slow machines spend fewer frames on it
+        fadeNanos = QualityController.getQuality().getFadeMillis() * 1_000_000;
+        fadeStep = -1;
+        fadeStart = System.nanoTime();
+        gameBoard.startFade(this);
+    }
+
+    /**
+     * Draw the fade-out for a frame, only repainting if it looks different from the last frame
+     *
+     * @param now the time of the frame in nanoseconds
+     * @return true while the block is still fading
+     */
+    boolean fadeFrame(long now) {
+        if (fadeStart == 0) {
+            return false;
+        }
+        // Calculate the opacity of the block based on the time elapsed since the fade started
+        double opacity = Math.min(1.0, 1.0 - (double) (now - fadeStart) / fadeNanos);
+
+        // Once the opacity reaches 0 the fade is over, so draw the block as it really is
+        if (opacity <= 0) {
+            fadeStart = 0;
+            paint();
+            return false;
+        }
+
+        // Only repaint when the opacity has moved on a visible step
+        int step = (int) (opacity * FADE_STEPS);
+        if (step != fadeStep) {
+            fadeStep = step;
+            paintFade(opacity);
+        }
+        return true;
     }
 
     /**
@@ -355,8 +413,9 @@ public class GameBlock extends Canvas {
     private void paintFade(double opacity) {
         var gc = getGraphicsContext2D();
         clearBlock(gc);
-        Color fadedColor = Color.GREEN; // Assuming black fade for simplicity
-        gc.setFill(fadedColor);
+        gc.setGlobalAlpha(opacity);
+        gc.setFill(Color.GREEN);
         gc.fillRect(10, 10, width, height);
+        gc.setGlobalAlpha(1);
     }
 }
\ No newline at end of file
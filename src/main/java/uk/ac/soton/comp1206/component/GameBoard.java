@@ -1,14 +1,20 @@
 package uk.ac.soton.comp1206.component;
 
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.WeakInvalidationListener;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.BlockClickedListener;
+import uk.ac.soton.comp1206.game.ClearedLines;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.ui.QualityController;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A GameBoard is a visual component to represent the visual GameBoard.
@@ -54,6 +60,27 @@ public class GameBoard extends GridPane {
      */
     GameBlock[][] blocks;
 
+    /**
+     * Repaints every block when the render quality changes. Registered weakly, so a board that is no longer shown can
+     * still be collected.
+     */
+    private final InvalidationListener qualityListener = observable -> repaintBlocks();
+
+    /**
+     * Blocks part way through fading out
+     */
+    private final List<GameBlock> fading = new ArrayList<>();
+
+    /**
+     * Animates every fading block, and only runs while there are any, so an idle board does no work each frame
+     */
+    private final AnimationTimer fadeTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            fadeFrame(now);
+        }
+    };
+
     /**
      * The listener to call when a specific block is clicked
      */
@@ -133,6 +160,18 @@ public class GameBoard extends GridPane {
                 createBlock(x,y);
             }
         }
+        QualityController.qualityProperty().addListener(new WeakInvalidationListener(qualityListener));
+    }
+
+    /**
+     * Repaint every block, for example to draw them at a new render quality
+     */
+    private void repaintBlocks() {
+        for (var column : blocks) {
+            for (var block : column) {
+                block.paint();
+            }
+        }
     }
 
     /**
@@ -211,19 +250,63 @@ public class GameBoard extends GridPane {
     }
 
     /**
-     * Fades out a set of blocks specified by their coordinates.
-     * @param clearedBlocks the coordinates of the blocks to fade out
+     * Outline where a piece would be placed, clearing any previous outline
+     * @param blocks the block makeup of the piece, as it would be rotated
+     * @param x the column of the centre of the piece
+     * @param y the row of the centre of the piece
      */
-    public void fadeOut(Set<GameBlockCoordinate> clearedBlocks) {
-        // Iterate over the set of cleared blocks using a lambda expression
-        clearedBlocks.forEach(coord -> {
-            // Get the GameBlock object at the current coordinate
-            GameBlock block = getBlock(coord.getX(), coord.getY());
-            // Check if the block is not null
-            if (block!= null) {
-                // Call the fadeOut method on the block to animate its fade-out
-                block.fadeOut();
+    public void showHint(int[][] blocks, int x, int y) {
+        for (int bx = 0; bx < cols; bx++) {
+            for (int by = 0; by < rows; by++) {
+                int i = bx - x + 1;
+                int j = by - y + 1;
+                boolean covered = i >= 0 && i < 3 && j >= 0 && j < 3 && blocks[i][j] != 0;
+                this.blocks[bx][by].setHint(covered);
             }
-        });
+        }
+    }
+
+    /**
+     * Remove any placement outline
+     */
+    public void clearHint() {
+        for (int x = 0; x < cols; x++) {
+            for (int y = 0; y < rows; y++) {
+                blocks[x][y].setHint(false);
+            }
+        }
+    }
+
+    /**
+     * Fades out every block in the cleared lines.
+     * @param clearedBlocks the rows and columns that were cleared
+     */
+    public void fadeOut(ClearedLines clearedBlocks) {
+        clearedBlocks.forEach((x, y) -> blocks[x][y].fadeOut());
+    }
+
+    /**
+     * Animate a block's fade until it finishes
+     * @param block the fading block
+     */
+    void startFade(GameBlock block) {
+        if (!fading.contains(block)) {
+            fading.add(block);
+        }
+        fadeTimer.start();
+    }
+
+    /**
+     * Draw a frame of every fade, stopping the timer once they have all finished
+     */
+    private void fadeFrame(long now) {
+        for (int i = fading.size() - 1; i >= 0; i--) {
+            if (!fading.get(i).fadeFrame(now)) {
+                fading.remove(i);
+            }
+        }
+        if (fading.isEmpty()) {
+            fadeTimer.stop();
+        }
     }
 }
@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.GameState;
+
+/**
+ * The Game State Listener is used to receive the snapshot published by the GameActor after each batch of commands. It
+ * is called on the game's owner thread.
+ */
+public interface GameStateListener {
+
+    /**
+     * Handle a new snapshot
+     * @param state the latest state of the game
+     */
+    void stateChanged(GameState state);
+}
@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.GridChange;
+
+/**
+ * The Grid Listener is used to receive each committed change set of a Grid, once per change set rather than once per
+ * cell. It is called on the thread that committed the change, after the cell properties have been updated.
+ */
+public interface GridListener {
+
+    /**
+     * Handle a committed change set
+     * @param change the cells that changed, reused for the next change set so copy out anything kept
+     */
+    void gridChanged(GridChange change);
+}
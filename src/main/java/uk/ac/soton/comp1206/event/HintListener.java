@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.BoardSearch;
+
+/**
+ * The Hint Listener is used to receive placement hints from the HintEngine. Hints are always delivered on the JavaFX
+ * application thread.
+ */
+public interface HintListener {
+
+    /**
+     * Handle a new hint
+     * @param hint the suggested move, or null if the current piece cannot be placed anywhere
+     */
+    void hintReady(BoardSearch.Move hint);
+}
@@ -3,9 +3,7 @@
  */
 package uk.ac.soton.comp1206.event;
 
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
-
-import java.util.Set;
+import uk.ac.soton.comp1206.game.ClearedLines;
 
 /**
  * Interface for listening to line cleared events.
@@ -15,7 +13,7 @@ public interface LineClearedListener {
     /**
      * Called when a line is cleared in the game.
      *
-     * @param clearedLines A set of GameBlockCoordinate objects representing the cleared lines.
+     * @param clearedLines the rows and columns cleared. The object is reused, so copy anything needed after the call.
      */
-    void onLineCleared(Set<GameBlockCoordinate> clearedLines);
+    void onLineCleared(ClearedLines clearedLines);
 }
\ No newline at end of file
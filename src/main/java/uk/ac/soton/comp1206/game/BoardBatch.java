@@ -0,0 +1,111 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A batch of candidate boards waiting to be scored together by a {@link BoardKernel}.
+ *
+ * Searches add each candidate as they generate it, along with any points it already earned by clearing lines, then
+ * score the whole batch in one call. The batch is reused: {@link #clear()} empties it without allocating.
+ */
+public final class BoardBatch {
+
+    private final int cols;
+    private final int rows;
+    private final int capacity;
+    private final int stride;
+    private final BoardKernel kernel;
+
+    /**
+     * The boards, cell-major: {@code cells[cell * stride + board]}
+     */
+    private final int[] cells;
+    private final int[] scores;
+    private final double[] bonuses;
+    private int size = 0;
+
+    /**
+     * Create an empty batch using the fastest available kernel
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param capacity most boards the batch can hold
+     */
+    public BoardBatch(int cols, int rows, int capacity) {
+        this(cols, rows, capacity, BoardKernel.get());
+    }
+
+    /**
+     * Create an empty batch using the given kernel
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param capacity most boards the batch can hold
+     * @param kernel the kernel used to score the boards
+     */
+    public BoardBatch(int cols, int rows, int capacity, BoardKernel kernel) {
+        this.cols = cols;
+        this.rows = rows;
+        this.capacity = capacity;
+        this.kernel = kernel;
+        //Round up to whole vectors so the kernel never needs a partial load
+        int lanes = kernel.lanes();
+        this.stride = Math.max(lanes, (capacity + lanes - 1) / lanes * lanes);
+        this.cells = new int[cols * rows * stride];
+        this.scores = new int[stride];
+        this.bonuses = new double[stride];
+    }
+
+    /**
+     * Remove every board
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add a board to the batch
+     * @param board the board, indexed by {@code y * cols + x}
+     * @param bonus points the board earned on the way, kept alongside its score
+     * @return index of the board in the batch
+     */
+    public int add(int[] board, double bonus) {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full");
+        }
+        for (int cell = 0; cell < cols * rows; cell++) {
+            cells[cell * stride + size] = board[cell];
+        }
+        bonuses[size] = bonus;
+        return size++;
+    }
+
+    /**
+     * Score every board in the batch
+     */
+    public void evaluate() {
+        kernel.evaluate(cells, stride, size, cols, rows, scores);
+    }
+
+    /**
+     * Get the number of boards in the batch
+     * @return boards
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the heuristic score of a board, after {@link #evaluate()}
+     * @param index the board
+     * @return the same value as {@link BoardSearch#evaluate(int[], int, int)} for that board
+     */
+    public int getScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Get the points a board was added with
+     * @param index the board
+     * @return the bonus
+     */
+    public double getBonus(int index) {
+        return bonuses[index];
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Scores a whole batch of candidate boards with the same heuristic as {@link BoardSearch#evaluate(int[], int, int)}.
+ *
+ * Boards are stored cell-major, {@code cells[cell * stride + board]}, so the same cell of neighbouring boards sits
+ * side by side and a kernel can work on many boards at once. When the jdk.incubator.vector module is present (run with
+ * {@code --add-modules jdk.incubator.vector}) the kernel uses the Vector API, one board per lane. Otherwise, or if the
+ * tetrecs.scalar system property is set, it falls back to a plain loop with identical results.
+ *
+ * The Vector API kernel is built separately into the jar's multi-release layer (META-INF/versions/17), so it is only
+ * found when running from the jar. Running from target/classes always uses the plain loop.
+ */
+public abstract class BoardKernel {
+
+    private static final Logger logger = LogManager.getLogger(BoardKernel.class);
+
+    private static BoardKernel kernel;
+
+    BoardKernel() {
+    }
+
+    /**
+     * Score boards {@code 0} to {@code count - 1}
+     * @param cells the boards, cell-major
+     * @param stride distance between one cell and the next, a multiple of {@link #lanes()} at least count
+     * @param count number of boards
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param scores receives the score of each board, at least stride long
+     */
+    public abstract void evaluate(int[] cells, int stride, int count, int cols, int rows, int[] scores);
+
+    /**
+     * Get the number of boards scored together
+     * @return lanes, 1 for the scalar kernel
+     */
+    public abstract int lanes();
+
+    /**
+     * Get the fastest kernel available on this JVM
+     * @return the kernel
+     */
+    public static synchronized BoardKernel get() {
+        if (kernel == null) {
+            kernel = load();
+        }
+        return kernel;
+    }
+
+    private static BoardKernel load() {
+        var vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (!Boolean.getBoolean("tetrecs.scalar") && vectorModule.isPresent()) {
+            try {
+                //The game module does not declare the vector module, so it has to be read before the kernel can link
+                BoardKernel.class.getModule().addReads(vectorModule.get());
+                //Only loaded by name, so nothing links against the vector module unless it is there
+                var vector = (BoardKernel) Class.forName("uk.ac.soton.comp1206.game.VectorBoardKernel")
+                        .getDeclaredConstructor().newInstance();
+                logger.info("Using vector board kernel with {} lanes", vector.lanes());
+                return vector;
+            } catch (ClassNotFoundException e) {
+                logger.info("Vector board kernel not built into this classpath");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warn("Vector board kernel unavailable: {}", e.toString());
+            }
+        }
+        logger.info("Using scalar board kernel");
+        return new ScalarBoardKernel();
+    }
+}
@@ -0,0 +1,340 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Placement search over a plain copy of the board, used by hints and bots.
+ *
+ * Boards are flat int arrays indexed by {@code y * cols + x}, so a search can run on any thread without touching the
+ * Grid properties the UI is bound to. Piece block makeups use the same layout as GamePiece: block [i][j] lands on
+ * column x + i - 1 and row y + j - 1.
+ *
+ * The boards reached by the following piece are scored in batches by a {@link BoardKernel}, which uses the Vector API
+ * when it is available. When a {@link Tablebase} for the board size is installed, those boards are also credited with
+ * the points the piece after is expected to clear and penalised by their chance of running out of room.
+ */
+public final class BoardSearch {
+
+    /**
+     * Cost of a board that is certain to run out of room within the tablebase horizon
+     */
+    private static final double RUN_OUT_PENALTY = 100;
+
+    private BoardSearch() {
+    }
+
+    /**
+     * A placement chosen by the search
+     * @param swap whether to swap the current and following pieces first
+     * @param rotation number of clockwise rotations to apply to the piece
+     * @param x column of the centre of the piece
+     * @param y row of the centre of the piece
+     * @param value the value of the placement, higher is better
+     */
+    public record Move(boolean swap, int rotation, int x, int y, double value) {
+    }
+
+    /**
+     * Copy the contents of a grid into a flat board
+     * @param grid the grid
+     * @param cells destination, at least cols * rows long
+     */
+    public static void copy(Grid grid, int[] cells) {
+        int cols = grid.getCols();
+        for (int y = 0; y < grid.getRows(); y++) {
+            for (int x = 0; x < cols; x++) {
+                cells[y * cols + x] = grid.get(x, y);
+            }
+        }
+    }
+
+    /**
+     * Work out all four rotations of a block makeup
+     * @param blocks the block makeup
+     * @return rotations 0 to 3
+     */
+    public static int[][][] rotations(int[][] blocks) {
+        int[][][] rotations = new int[4][][];
+        rotations[0] = blocks;
+        for (int r = 1; r < 4; r++) {
+            rotations[r] = GamePiece.rotate(rotations[r - 1]);
+        }
+        return rotations;
+    }
+
+    /**
+     * Check whether a piece fits on the board at the given position
+     */
+    public static boolean canPlace(int[] cells, int cols, int rows, int[][] blocks, int x, int y) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (blocks[i][j] == 0) {
+                    continue;
+                }
+                int gridX = x + i - 1;
+                int gridY = y + j - 1;
+                if (gridX < 0 || gridX >= cols || gridY < 0 || gridY >= rows || cells[gridY * cols + gridX] != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Place a piece on the board. The caller must have checked that it fits.
+     */
+    public static void place(int[] cells, int cols, int[][] blocks, int x, int y) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (blocks[i][j] != 0) {
+                    cells[(y + j - 1) * cols + x + i - 1] = blocks[i][j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear every full row and column, the same way Game.afterPiece does
+     * @return the points the clear is worth before the multiplier (lines x blocks x 10)
+     */
+    public static int clearLines(int[] cells, int cols, int rows) {
+        int lines = 0;
+        int blocks = 0;
+        //Mark the cells of full rows by negating them, so they still count as filled when checking columns
+        for (int y = 0; y < rows; y++) {
+            if (rowFull(cells, cols, y)) {
+                lines++;
+                for (int x = 0; x < cols; x++) {
+                    cells[y * cols + x] = -Math.abs(cells[y * cols + x]);
+                }
+            }
+        }
+        //Clear full columns straight away, then whatever is left of the marked rows
+        for (int x = 0; x < cols; x++) {
+            if (colFull(cells, cols, rows, x)) {
+                lines++;
+                for (int y = 0; y < rows; y++) {
+                    cells[y * cols + x] = 0;
+                    blocks++;
+                }
+            }
+        }
+        if (lines == 0) {
+            return 0;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] < 0) {
+                cells[i] = 0;
+                blocks++;
+            }
+        }
+        return lines * blocks * 10;
+    }
+
+    /**
+     * Heuristic value of a board: rewards lines close to completion and penalises isolated holes that few pieces can
+     * fill.
+     */
+    public static double evaluate(int[] cells, int cols, int rows) {
+        double value = 0;
+        for (int y = 0; y < rows; y++) {
+            int filled = 0;
+            for (int x = 0; x < cols; x++) {
+                if (cells[y * cols + x] != 0) {
+                    filled++;
+                }
+            }
+            value += lineValue(filled, cols);
+        }
+        for (int x = 0; x < cols; x++) {
+            int filled = 0;
+            for (int y = 0; y < rows; y++) {
+                if (cells[y * cols + x] != 0) {
+                    filled++;
+                }
+            }
+            value += lineValue(filled, rows);
+        }
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                if (cells[y * cols + x] == 0 && isolated(cells, cols, rows, x, y)) {
+                    value -= 4;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Find the best placement for the current piece, looking one piece ahead at the following piece and considering
+     * swapping the two.
+     *
+     * @param cells the board, which is not modified
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param current block makeup of the current piece, as currently rotated
+     * @param following block makeup of the following piece, as currently rotated
+     * @param cancelled checked between candidates, the search gives up and returns null once it returns true
+     * @return the best move, or null if nothing fits or the search was cancelled
+     */
+    public static Move best(int[] cells, int cols, int rows, int[][] current, int[][] following,
+                            BooleanSupplier cancelled) {
+        return best(cells, cols, rows, current, following, null, cancelled);
+    }
+
+    /**
+     * Find the best placement for the current piece, looking ahead at the following piece and considering swapping the
+     * two, and then at the piece after that from the piece sequence if it is known. A known third piece is tried in
+     * every position instead of estimating an unknown one from the tablebase.
+     *
+     * @param cells the board, which is not modified
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param current block makeup of the current piece, as currently rotated
+     * @param following block makeup of the following piece, as currently rotated
+     * @param after block makeup of the piece after the following piece, such as {@link PieceSequence#peek(int)} 0,
+     * or null if it is not known
+     * @param cancelled checked between candidates, the search gives up and returns null once it returns true
+     * @return the best move, or null if nothing fits or the search was cancelled
+     */
+    public static Move best(int[] cells, int cols, int rows, int[][] current, int[][] following, int[][] after,
+                            BooleanSupplier cancelled) {
+        int[][][] currentRotations = rotations(current);
+        int[][][] followingRotations = rotations(following);
+        int[][][] afterRotations = after == null ? null : rotations(after);
+        int[] first = new int[cells.length];
+        int[] second = new int[cells.length];
+        int[] third = after == null ? null : new int[cells.length];
+        var batch = new BoardBatch(cols, rows, 4 * cells.length);
+        var table = Tablebase.getShared();
+        if (table != null && !table.covers(cols, rows)) {
+            table = null;
+        }
+
+        Move best = null;
+        for (int swap = 0; swap < 2; swap++) {
+            int[][][] play = swap == 0 ? currentRotations : followingRotations;
+            int[][][] next = swap == 0 ? followingRotations : currentRotations;
+            for (int r = 0; r < 4; r++) {
+                for (int y = 0; y < rows; y++) {
+                    if (cancelled.getAsBoolean()) {
+                        return null;
+                    }
+                    for (int x = 0; x < cols; x++) {
+                        if (!canPlace(cells, cols, rows, play[r], x, y)) {
+                            continue;
+                        }
+                        System.arraycopy(cells, 0, first, 0, cells.length);
+                        place(first, cols, play[r], x, y);
+                        double value = clearLines(first, cols, rows)
+                                + bestFollowUp(first, second, third, batch, table, cols, rows, next, afterRotations);
+                        if (best == null || value > best.value()) {
+                            best = new Move(swap == 1, r, x, y, value);
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The best value reachable by placing the next piece on the given board, then the piece after if it is known
+     */
+    private static double bestFollowUp(int[] board, int[] scratch, int[] thirdScratch, BoardBatch batch,
+                                       Tablebase table, int cols, int rows, int[][][] next, int[][][] after) {
+        //Collect every placement first, then score them together
+        batch.clear();
+        for (int r = 0; r < 4; r++) {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    if (!canPlace(board, cols, rows, next[r], x, y)) {
+                        continue;
+                    }
+                    System.arraycopy(board, 0, scratch, 0, board.length);
+                    place(scratch, cols, next[r], x, y);
+                    double bonus = clearLines(scratch, cols, rows) * 0.9;
+                    if (after != null) {
+                        //The third piece is known, so try it rather than guessing, discounted again
+                        bonus += bestKnownClear(scratch, thirdScratch, cols, rows, after) * 0.81;
+                    } else if (table != null) {
+                        //Look one unknown piece further ahead, discounted again
+                        int occupancy = Tablebase.occupancy(scratch);
+                        bonus += table.getExpectedClear(occupancy) * 0.81
+                                - (1 - table.getSurvival(occupancy)) * RUN_OUT_PENALTY;
+                    }
+                    batch.add(scratch, bonus);
+                }
+            }
+        }
+        if (batch.size() == 0) {
+            //Nowhere to put the next piece: heavily penalise, but still rank by how the board looks
+            return evaluate(board, cols, rows) - 1000;
+        }
+        batch.evaluate();
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < batch.size(); i++) {
+            best = Math.max(best, batch.getBonus(i) + batch.getScore(i));
+        }
+        return best;
+    }
+
+    /**
+     * The most lines a known piece can clear on the given board, or minus the run out penalty if it does not fit
+     */
+    private static double bestKnownClear(int[] board, int[] scratch, int cols, int rows, int[][][] piece) {
+        int best = -1;
+        for (int r = 0; r < 4; r++) {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    if (!canPlace(board, cols, rows, piece[r], x, y)) {
+                        continue;
+                    }
+                    System.arraycopy(board, 0, scratch, 0, board.length);
+                    place(scratch, cols, piece[r], x, y);
+                    best = Math.max(best, clearLines(scratch, cols, rows));
+                }
+            }
+        }
+        return best < 0 ? -RUN_OUT_PENALTY : best;
+    }
+
+    private static double lineValue(int filled, int length) {
+        //Lines one or two blocks short of complete are worth the most
+        if (filled == length - 1) {
+            return 6;
+        }
+        if (filled == length - 2) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static boolean isolated(int[] cells, int cols, int rows, int x, int y) {
+        return blocked(cells, cols, rows, x - 1, y) && blocked(cells, cols, rows, x + 1, y)
+                && blocked(cells, cols, rows, x, y - 1) && blocked(cells, cols, rows, x, y + 1);
+    }
+
+    private static boolean blocked(int[] cells, int cols, int rows, int x, int y) {
+        return x < 0 || x >= cols || y < 0 || y >= rows || cells[y * cols + x] != 0;
+    }
+
+    private static boolean rowFull(int[] cells, int cols, int y) {
+        for (int x = 0; x < cols; x++) {
+            if (cells[y * cols + x] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean colFull(int[] cells, int cols, int rows, int x) {
+        for (int y = 0; y < rows; y++) {
+            if (cells[y * cols + x] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
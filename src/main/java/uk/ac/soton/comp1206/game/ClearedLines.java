@@ -0,0 +1,158 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.BitSet;
+
+/**
+ * The rows and columns cleared by one placement, stored as two bit sets rather than one object per cleared block.
+ *
+ * A block was cleared if its row or its column was cleared. Blocks can be visited with {@link #forEach(CellConsumer)}
+ * without boxing or allocating anything.
+ */
+public class ClearedLines {
+
+    /**
+     * Receives the position of each cleared block
+     */
+    @FunctionalInterface
+    public interface CellConsumer {
+
+        /**
+         * Handle one cleared block
+         * @param x column
+         * @param y row
+         */
+        void accept(int x, int y);
+    }
+
+    private final int cols;
+    private final int rows;
+    private final BitSet clearedRows;
+    private final BitSet clearedColumns;
+
+    /**
+     * Create an empty set of cleared lines for a board of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public ClearedLines(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.clearedRows = new BitSet(rows);
+        this.clearedColumns = new BitSet(cols);
+    }
+
+    /**
+     * Mark a row as cleared
+     * @param y row
+     */
+    public void addRow(int y) {
+        clearedRows.set(y);
+    }
+
+    /**
+     * Mark a column as cleared
+     * @param x column
+     */
+    public void addColumn(int x) {
+        clearedColumns.set(x);
+    }
+
+    /**
+     * Remove every line, ready for reuse
+     */
+    public void clear() {
+        clearedRows.clear();
+        clearedColumns.clear();
+    }
+
+    /**
+     * Whether a row was cleared
+     * @param y row
+     * @return true if cleared
+     */
+    public boolean isRowCleared(int y) {
+        return clearedRows.get(y);
+    }
+
+    /**
+     * Whether a column was cleared
+     * @param x column
+     * @return true if cleared
+     */
+    public boolean isColumnCleared(int x) {
+        return clearedColumns.get(x);
+    }
+
+    /**
+     * Whether a block was cleared
+     * @param x column
+     * @param y row
+     * @return true if its row or column was cleared
+     */
+    public boolean contains(int x, int y) {
+        return clearedRows.get(y) || clearedColumns.get(x);
+    }
+
+    /**
+     * Whether nothing was cleared
+     * @return true if no lines were cleared
+     */
+    public boolean isEmpty() {
+        return clearedRows.isEmpty() && clearedColumns.isEmpty();
+    }
+
+    /**
+     * Get the number of lines cleared, rows and columns together
+     * @return number of lines
+     */
+    public int getLineCount() {
+        return clearedRows.cardinality() + clearedColumns.cardinality();
+    }
+
+    /**
+     * Get the number of blocks cleared. Blocks where a cleared row and column cross are only counted once.
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        int fullRows = clearedRows.cardinality();
+        int fullColumns = clearedColumns.cardinality();
+        return fullRows * cols + fullColumns * rows - fullRows * fullColumns;
+    }
+
+    /**
+     * Visit every cleared block once, row by row
+     * @param consumer receives each block
+     */
+    public void forEach(CellConsumer consumer) {
+        if (isEmpty()) {
+            return;
+        }
+        for (int y = 0; y < rows; y++) {
+            if (clearedRows.get(y)) {
+                for (int x = 0; x < cols; x++) {
+                    consumer.accept(x, y);
+                }
+            } else {
+                for (int x = clearedColumns.nextSetBit(0); x >= 0; x = clearedColumns.nextSetBit(x + 1)) {
+                    consumer.accept(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of columns on the board
+     * @return columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows on the board
+     * @return rows
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -9,24 +9,34 @@ import javafx.beans.property.SimpleIntegerProperty;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
 import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.LineClearedListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
 import uk.ac.soton.comp1206.scene.Multimedia;
-
+import uk.ac.soton.comp1206.storage.AutoSave;
+import uk.ac.soton.comp1206.storage.EventLog;
+import uk.ac.soton.comp1206.storage.Leaderboard;
+import uk.ac.soton.comp1206.storage.Outbox;
+import uk.ac.soton.comp1206.storage.ScoreStore;
+import uk.ac.soton.comp1206.ui.PerformanceHud;
+
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * The Game class handles the main logic, state and properties of the TetrECS game. Methods to manipulate the game state
  * and to handle actions made by the player should take place inside this class.
+ *
+ * A game is owned by one thread. Player input and timer expiries reach it as commands through its GameActor, so all
+ * changes to the game state, and all listener calls, happen on that thread.
  */
 public class Game {
 
     private NextPieceListener nextPieceListener;
     private  GamePiece followingPiece; // Tracks the following piece
     private LineClearedListener lineClearedListener;
-    private Timer gameTimer;
+    private final GameClock clock = new GameClock();
     private GameLoopListener gameLoopListener;
     private NextPieceListener followingPieceListener = null;
 
@@ -53,6 +63,71 @@ public class Game {
     private int currentAimX;
     private int currentAimY;
 
+    /**
+     * The upcoming pieces, after the current and following piece
+     */
+    private final PieceSequence pieceSequence;
+
+    /**
+     * Carries out player input and timer expiries on the owner thread
+     */
+    private final GameActor actor;
+
+    /**
+     * The thread the game runs on, where the final rank is reported
+     */
+    private final Executor owner;
+
+    /**
+     * Rank of the final score among every known score, local and remote, once the game has ended and it is known
+     */
+    private final IntegerProperty finalRank = new SimpleIntegerProperty(0);
+
+    /**
+     * Number of scores the final score was ranked among
+     */
+    private int rankedAmong = 0;
+
+    /**
+     * Lines cleared by the last placement, reused for every placement
+     */
+    private final ClearedLines clearedBlocks;
+
+    /**
+     * Empties one cleared block, kept in a field so clearing lines does not allocate a new lambda each time
+     */
+    private final ClearedLines.CellConsumer clearCell = this::emptyCell;
+
+    /**
+     * Where the game is saved after every move, or null to not save
+     */
+    private AutoSave autoSave;
+
+    /**
+     * Time left on the countdown of a restored game, used for the first countdown instead of the full delay
+     */
+    private long resumeMillis = 0;
+
+    /**
+     * Where gameplay events are recorded, or null to not record them
+     */
+    private EventLog eventLog;
+
+    /**
+     * Where the final score is queued for the server, or null to not submit it
+     */
+    private Outbox outbox;
+
+    /**
+     * Game clock tick at which the current piece arrived, for timing each move
+     */
+    private long moveStartTick = 0;
+
+    /**
+     * Timer, scoring and level rules
+     */
+    private final Rules rules;
+
     /**
      * Create a new game with the specified rows and columns. Creates a corresponding grid model.
      *
@@ -62,20 +137,64 @@ public class Game {
 
 
     public Game(int cols, int rows) {
+        this(cols, rows, PieceSequence.createDefault());
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, drawing pieces from the given sequence.
+     *
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSequence the sequence to draw pieces from
+     */
+    public Game(int cols, int rows, PieceSequence pieceSequence) {
+        this(cols, rows, pieceSequence, Platform::runLater);
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, drawing pieces from the given sequence and running on the
+     * given owner thread.
+     *
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSequence the sequence to draw pieces from
+     * @param owner runs the game's commands, one at a time on one thread
+     */
+    public Game(int cols, int rows, PieceSequence pieceSequence, Executor owner) {
+        this(cols, rows, pieceSequence, owner, Rules.getDefault());
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, drawing pieces from the given sequence, running on the
+     * given owner thread and playing by the given rules.
+     *
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSequence the sequence to draw pieces from
+     * @param owner runs the game's commands, one at a time on one thread
+     * @param rules timer, scoring and level rules
+     */
+    public Game(int cols, int rows, PieceSequence pieceSequence, Executor owner, Rules rules) {
         this.cols = cols;
         this.rows = rows;
+        this.pieceSequence = pieceSequence;
+        this.rules = rules;
+        this.lives.set(rules.lives());
         this.currentAimX = cols / 2;
         this.currentAimY = rows / 2;
 
         //Create a new grid model to represent the game state
         this.grid = new Grid(cols, rows);
+        this.clearedBlocks = new ClearedLines(cols, rows);
+        this.actor = new GameActor(this, owner);
+        this.owner = owner;
         spawnPiece(); // This will set the initial currentPiece
         spawnFollowingPiece(); // This will set the initial followingPiece
     }
     private final IntegerProperty score = new SimpleIntegerProperty(0);
     private final IntegerProperty level = new SimpleIntegerProperty(0);
     private final IntegerProperty lives = new SimpleIntegerProperty(3);
-    private static final DoubleProperty multiplier = new SimpleDoubleProperty(1.0);
+    private final DoubleProperty multiplier = new SimpleDoubleProperty(1.0);
 
 
     /**
@@ -102,56 +221,80 @@ public class Game {
      */
 
     public void gameOver() {
-        // Check if the game timer is not null
-        if (gameTimer != null) {
-            gameTimer.cancel();// Stop the game timer to prevent further updates
-        }
+        // Stop the game clock to prevent further updates
+        clock.stop();
+        clock.clearDeadline();
         logger.info("Game Over. Final score: {}", getScore());
 
-        // Notify any listeners or UI components that the game is over
-        // Use Platform.runLater to ensure this code is executed on the JavaFX application thread
-        Platform.runLater(() -> {
-            if (gameLoopListener != null) {
-                gameLoopListener.onGameLoopEnd(); // Notify the listener that the game loop has ended
+        // Record the score locally and rank it once the leaderboard is loaded, which is usually already done in the
+        // background. The leaderboard loads the whole store, so the score is only stored after that or it would be
+        // held twice. Adding to the store and the leaderboard are both quick, the store writes to disk in the background.
+        String name = System.getProperty("user.name");
+        int score = getScore();
+        Leaderboard.load().thenAcceptAsync(leaderboard -> {
+            var scores = ScoreStore.getLocal();
+            if (scores == null) {
+                return;
             }
-        });
+            int rank = leaderboard.add(scores.add(name, score));
+            rankedAmong = leaderboard.size();
+            finalRank.set(rank);
+            logger.info("Final rank: {} of {}", rank, rankedAmong);
+        }, owner);
+
+        // Queue the score for the server, a colon would split the name in the HISCORE message
+        if (outbox != null) {
+            outbox.add("HISCORE " + name.replace(':', '_') + ":" + getScore());
+        }
+
+        if (eventLog != null) {
+            eventLog.gameOver(getLevel(), getScore());
+        }
+
+        // A finished game cannot be resumed
+        if (autoSave != null) {
+            autoSave.clear();
+        }
+
+        // Notify any listeners or UI components that the game is over, we are already on the owner thread
+        fireGameLoopEnd();
     }
 
     /**
      * Starts the game loop, which controls the game's timing and updates.
      */
     private void gameLoop() {
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                Platform.runLater(() -> {
-                    fireGameLoopEnd();
-                    // All changes that affect the UI must be placed within this block
-                    setLives(getLives() - 1); // Decrement the number of lives
-                    multiplier.set(1.0); // Reset the multiplier
-                    nextPiece(); // Generate the next piece
-                    if (getLives() <= 0) {
-                        logger.info("Game Over");
-                        gameOver();
-                    } else {
-                        nextPiece();
-                        resetTimer();
-                        fireGameLoopStart();
-                    }
-                });
-            }
-        };
-        gameTimer.schedule(task, getTimerDelay());
+        clock.setDeadline(getTimerDelay());
     }
+
+    /**
+     * Called on the owner thread when the player runs out of time to place a piece.
+     */
+    void timerExpired() {
+        fireGameLoopEnd();
+        setLives(getLives() - 1); // Decrement the number of lives
+        if (eventLog != null) {
+            eventLog.expired(getLevel(), moveMillis(), getLives());
+        }
+        moveStartTick = clock.getTicks();
+        multiplier.set(1.0); // Reset the multiplier
+        nextPiece(); // Generate the next piece
+        if (getLives() <= 0) {
+            logger.info("Game Over");
+            gameOver();
+        } else {
+            nextPiece();
+            resetTimer();
+            save();
+            fireGameLoopStart();
+        }
+    }
+
     /**
      * Resets the game timer and restarts the game loop.
      */
     private void resetTimer() {
-        if (gameTimer != null) {
-            gameTimer.cancel();  // Cancel the current running tasks
-            gameTimer = new Timer("Game Timer");  // Reinitialize the timer
-            gameLoop();  // This internally calls `fireGameLoopStart()`
-        }
+        gameLoop();
     }
 
 
@@ -159,9 +302,9 @@ public class Game {
 
     /**
      * Notify the listener when lines are cleared.
-     * @param clearedBlocks the set of blocks that were cleared
+     * @param clearedBlocks the lines that were cleared
      */
-    protected void notifyLineCleared(Set<GameBlockCoordinate> clearedBlocks) {
+    protected void notifyLineCleared(ClearedLines clearedBlocks) {
         if (lineClearedListener != null) {
             lineClearedListener.onLineCleared(clearedBlocks);
         }
@@ -201,7 +344,7 @@ public class Game {
      */
     public void generateNextPiece() {
         GamePiece nextPiece = followingPiece;
-        followingPiece = GamePiece.createPiece((int) (Math.random() * GamePiece.PIECES));
+        followingPiece = GamePiece.createPiece(pieceSequence.next());
 
         // Notify the listener with the new piece
         if (nextPieceListener != null) {
@@ -215,9 +358,19 @@ public class Game {
     public void start() {
         logger.info("Starting game");
         initialiseGame();
-        // Initialize timer
-        gameTimer = new Timer("Game Timer");
-        gameLoop(); // Start the initial timer task
+        // Start the game clock and the first countdown, expiries are queued for the owner thread like any other input
+        clock.setOnExpired(deadline -> actor.submit(new GameCommand.TimerExpired(deadline)));
+        clock.start();
+        moveStartTick = clock.getTicks();
+        if (eventLog != null) {
+            eventLog.gameStarted(getLevel(), getScore());
+        }
+        if (resumeMillis > 0) {
+            clock.setDeadline(resumeMillis);
+            resumeMillis = 0;
+        } else {
+            gameLoop();
+        }
     }
 
     /**
@@ -229,14 +382,22 @@ public class Game {
 
     /**
      * Calculate the delay time for the timer based on the current level of the game.
-     * The delay starts at 12000 milliseconds and reduces by 500 milliseconds each level,
+     * With the standard rules the delay starts at 12000 milliseconds and reduces by 500 milliseconds each level,
      * with a minimum delay of 2500 milliseconds.
      *
      * @return the calculated delay in milliseconds.
      */
     public int getTimerDelay() {
-        int delay = 12000 - 500 * getLevel();
-        return Math.max(2500, delay);
+        return rules.timerDelay(getLevel());
+    }
+
+    /**
+     * Get the rules this game is played by
+     *
+     * @return the rules
+     */
+    public Rules getRules() {
+        return rules;
     }
 
     /**
@@ -244,10 +405,131 @@ public class Game {
      * when the game is ending or needs to be paused.
      */
     public void stopGame() {
-        if (gameTimer != null) {
-            gameTimer.cancel();
-            logger.info("Game stopped");
+        clock.stop();
+        clock.clearDeadline();
+        logger.info("Game stopped");
+    }
+
+    /**
+     * Pause the game clock, freezing the countdown
+     */
+    public void pause() {
+        clock.pause();
+    }
+
+    /**
+     * Resume the game clock after a pause
+     */
+    public void resume() {
+        clock.resume();
+    }
+
+    /**
+     * Get the clock that owns game time. The UI can sample the remaining time from it every frame.
+     *
+     * @return the game clock
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Save the game after every placement and lost life, and remove the save when the game ends. Saving only captures
+     * the state on the owner thread, the file is written in the background.
+     *
+     * @param autoSave where to save, or null to stop saving
+     */
+    public void setAutoSave(AutoSave autoSave) {
+        this.autoSave = autoSave;
+    }
+
+    /**
+     * Record placements, clears, expiries, swaps and level ups to a log. Recording only copies a few bytes on the owner
+     * thread, the log is written in the background.
+     *
+     * @param eventLog where to record, or null to stop recording
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Submit the final score to the server through an outbox, which keeps it until the server has it, however long
+     * the player is offline
+     *
+     * @param outbox where to queue the score, or null to not submit it
+     */
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * Game time since the current piece arrived
+     *
+     * @return milliseconds
+     */
+    private int moveMillis() {
+        return (int) ((clock.getTicks() - moveStartTick) * clock.getTickNanos() / 1_000_000);
+    }
+
+    /**
+     * Carry on from a saved game. Should be called before the game is started, on a game created with the sequence
+     * from {@link SaveState#createSequence()} so the same pieces keep coming.
+     *
+     * @param state the saved game
+     */
+    public void restore(SaveState state) {
+        if (state.cols() != cols || state.rows() != rows) {
+            throw new IllegalArgumentException("Saved game is " + state.cols() + "x" + state.rows());
+        }
+        grid.beginChanges();
+        try {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    grid.set(x, y, state.cells()[y * cols + x]);
+                }
+            }
+        } finally {
+            grid.commitChanges();
+        }
+        currentPiece = GamePiece.createPiece(state.currentPiece(), state.currentRotation());
+        followingPiece = GamePiece.createPiece(state.followingPiece(), state.followingRotation());
+
+        // Building the game drew pieces from the sequence, so put back the saved ones
+        var random = pieceSequence.getRandomizer();
+        if (random.getName().equals(state.randomizer())) {
+            random.readState(ByteBuffer.wrap(state.randomizerState()));
+            pieceSequence.restore(state.upcoming());
+        } else {
+            logger.warn("Saved game used the {} randomizer, carrying on with {}", state.randomizer(), random.getName());
         }
+
+        setScore(state.score());
+        setLevel(state.level());
+        setLives(state.lives());
+        setMultiplier(state.multiplier());
+        currentAimX = state.aimX();
+        currentAimY = state.aimY();
+        resumeMillis = Math.max(1, state.remainingMillis());
+        logger.info("Restored game with score {} and {} lives", state.score(), state.lives());
+    }
+
+    /**
+     * Hand the current state to the auto save, if there is one
+     */
+    private void save() {
+        if (autoSave != null) {
+            autoSave.save(SaveState.capture(this));
+        }
+    }
+
+    /**
+     * Get the actor that runs this game. Player input should be submitted to it rather than calling the game directly.
+     *
+     * @return the game actor
+     */
+    public GameActor getActor() {
+        return actor;
     }
 
 
@@ -258,32 +540,37 @@ public class Game {
      * @param gameBlock the block that was clicked
      */
     public void blockClicked(GameBlock gameBlock) {
-        //Get the position of this block
-        int x = gameBlock.getX();
-        int y = gameBlock.getY();
+        placePiece(gameBlock.getX(), gameBlock.getY());
+    }
 
+    /**
+     * Place the current piece centred on the given block, if it fits
+     *
+     * @param x column
+     * @param y row
+     */
+    public void placePiece(int x, int y) {
         logger.info("Block clicked at: {} {}. Attempting to place piece.", x, y);
 
         if (grid.canPlayPiece(currentPiece, x, y)) {
-            grid.playPiece(currentPiece, x, y); //PLace piece on grid
-            afterPiece(); // Handles line clearance
+            playAndClear(x, y);
             nextPiece(); // Spawns next piece
             resetTimer(); // Reset the timer with new delay
+            save();
         } else {
             logger.info("Cannot place piece");
         }
         Multimedia.playAudio("/sounds/place.wav");
     }
 
-    private static GamePiece currentPiece; // Tracks current piece
-    private static final Random random = new Random();
+    private GamePiece currentPiece; // Tracks current piece
 
     /**
      * Spawns a new random game piece.
      */
     public void spawnPiece() {
-        // Spawn a piece using a random index between 0 and the total number of pieces - 1
-        currentPiece = GamePiece.createPiece(random.nextInt(GamePiece.PIECES));
+        // Spawn the next piece from the sequence
+        currentPiece = GamePiece.createPiece(pieceSequence.next());
         logger.info("Spawning new piece: {}", currentPiece);
     }
 
@@ -291,7 +578,7 @@ public class Game {
      * Spawns a new random game piece to be used as the next piece.
      */
     private void spawnFollowingPiece() {
-        followingPiece = GamePiece.createPiece(random.nextInt(GamePiece.PIECES));
+        followingPiece = GamePiece.createPiece(pieceSequence.next());
         logger.info("Following new piece: {}", followingPiece);
     }
     /**
@@ -303,11 +590,36 @@ public class Game {
         logger.info("Next piece set. Current: {}, Next: {}", currentPiece, followingPiece);
 
         // Notify UI about the update
-        Platform.runLater(() -> {
-            if (nextPieceListener != null) {
-                nextPieceListener.nextPiece(currentPiece);
-            }
-        });
+        if (nextPieceListener != null) {
+            nextPieceListener.nextPiece(currentPiece);
+        }
+    }
+
+    /**
+     * Place the current piece and clear any full lines as a single change to the grid, so every affected block is
+     * repainted at most once.
+     *
+     * @param x column of the centre of the piece
+     * @param y row of the centre of the piece
+     */
+    private void playAndClear(int x, int y) {
+        // Only time the placement while the performance overlay is showing
+        long start = PerformanceHud.isShowing() ? System.nanoTime() : 0;
+        if (eventLog != null) {
+            eventLog.placed(currentPiece.getValue(), currentPiece.getRotation(), x, y, getLevel(), moveMillis(),
+                    getScore());
+        }
+        moveStartTick = clock.getTicks();
+        grid.beginChanges();
+        try {
+            grid.playPiece(currentPiece, x, y); // Place piece on grid
+            afterPiece(); // Handles line clearance
+        } finally {
+            grid.commitChanges();
+        }
+        if (start != 0) {
+            PerformanceHud.recordPlacement(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -319,35 +631,42 @@ public class Game {
     public void updateScore(int numberOfLines, int numberOfBlocksCleared) {
         if (numberOfLines > 0) {
             // Calculate the score
-            int scoreToAdd = numberOfLines * numberOfBlocksCleared * 10 * (int) multiplier.get();
+            int scoreToAdd = rules.points(numberOfLines, numberOfBlocksCleared, (int) multiplier.get());
 
             // Update the score property with the new score
             score.set(score.get() + scoreToAdd);
 
             //Calculates the new level based on the updated score
-            int newLevel = score.get() / 1000;
+            int newLevel = rules.level(score.get());
 
             //If the new level is greater than the current level, update the level
             if (newLevel > level.get()) {
                 level.set(newLevel);
-                logger.info("Level up! New level: {}", newLevel);
+                if (logger.isInfoEnabled()) {
+                    logger.info("Level up! New level: {}", newLevel);
+                }
+            }
+            //Guarded so the arguments are not boxed when info logging is off
+            if (logger.isInfoEnabled()) {
+                logger.info("Score updated: {} points added for clearing {} lines and {} blocks. New score: {}", scoreToAdd, numberOfLines, numberOfBlocksCleared, score.get());
             }
-            logger.info("Score updated: {} points added for clearing {} lines and {} blocks. New score: {}", scoreToAdd, numberOfLines, numberOfBlocksCleared, score.get());
         }
     }
 
+    private void emptyCell(int x, int y) {
+        grid.set(x, y, 0);
+    }
+
     /**
      * Checks for full lines after placing a piece and updates the score accordingly.
      */
     public void afterPiece() {
         logger.info("Checking for full lines after placing piece.");
-        // Initialize a set to store the cleared blocks
-        HashSet<GameBlockCoordinate> clearedBlocks = new HashSet<>();
-        int lineClearedCount = 0;
-        // Clear full horizontal lines
-        for (int y = 0; y < grid.getRows(); y++) {
+        // Find every full line first, so a row and column completed together are both cleared
+        clearedBlocks.clear();
+        for (int y = 0; y < rows; y++) {
             boolean isFullLine = true;
-            for (int x = 0; x < grid.getCols(); x++) {
+            for (int x = 0; x < cols; x++) {
                 // Check if the cell is empty (0)
                 if (grid.get(x, y) == 0) {
                     isFullLine = false;
@@ -355,17 +674,12 @@ public class Game {
                 }
             }
             if (isFullLine) {
-                lineClearedCount++; // Increment the line cleared count
-                for (int x = 0; x < grid.getCols(); x++) {
-                    grid.set(x, y, 0); // Clear the line
-                    clearedBlocks.add(new GameBlockCoordinate(x, y)); // Add the cleared block to the set
-                }
+                clearedBlocks.addRow(y);
             }
         }
-        // Clear full vertical lines
-        for (int x = 0; x < grid.getCols(); x++) {
+        for (int x = 0; x < cols; x++) {
             boolean isFullLine = true;
-            for (int y = 0; y < grid.getRows(); y++) {
+            for (int y = 0; y < rows; y++) {
                 // Check if the cell is empty (0)
                 if (grid.get(x, y) == 0) {
                     isFullLine = false;
@@ -373,24 +687,35 @@ public class Game {
                 }
             }
             if (isFullLine) {
-                lineClearedCount++; // Increment the line cleared count
-                for (int y = 0; y < grid.getRows(); y++) {
-                    grid.set(x, y, 0); // Clear the line
-                    clearedBlocks.add(new GameBlockCoordinate(x, y)); // Add the cleared block to the set
-                }
+                clearedBlocks.addColumn(x);
             }
         }
+        // Then clear them
+        clearedBlocks.forEach(clearCell);
+        int lineClearedCount = clearedBlocks.getLineCount();
         if (!clearedBlocks.isEmpty()) {
             // Lines were cleared, update the score
-            updateScore(lineClearedCount, clearedBlocks.size());
-            logger.info("Lines cleared: {}, Blocks cleared: {}, Current Score: {}",
-                    lineClearedCount,
-                    clearedBlocks.size(),
-                    getScore());
-            lineClearedListener.onLineCleared(clearedBlocks); // Notify the line cleared listener
+            int scoreBefore = getScore();
+            int levelBefore = getLevel();
+            updateScore(lineClearedCount, clearedBlocks.getBlockCount());
+            if (eventLog != null) {
+                eventLog.cleared(lineClearedCount, clearedBlocks.getBlockCount(), levelBefore, getScore() - scoreBefore);
+                if (getLevel() > levelBefore) {
+                    eventLog.levelUp(getLevel(), getScore());
+                }
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info("Lines cleared: {}, Blocks cleared: {}, Current Score: {}",
+                        lineClearedCount,
+                        clearedBlocks.getBlockCount(),
+                        getScore());
+            }
+            notifyLineCleared(clearedBlocks); // Notify the line cleared listener
             // Increase multiplier after score is applied
             multiplier.set(multiplier.get() + 1);
-            logger.info("Multiplier increased to {}", multiplier.get());
+            if (logger.isInfoEnabled()) {
+                logger.info("Multiplier increased to {}", multiplier.get());
+            }
         } else {
             // No lines were cleared, reset the multiplier
             multiplier.set(1.0);
@@ -402,9 +727,18 @@ public class Game {
      * Rotates the current piece 90 degrees clockwise.
      */
     public void rotateCurrentPiece() {
+        rotateCurrentPiece(1);
+    }
+
+    /**
+     * Rotates the current piece clockwise the given number of times.
+     *
+     * @param rotations number of quarter turns
+     */
+    public void rotateCurrentPiece(int rotations) {
         if (currentPiece != null) {
             // Rotate the piece
-            currentPiece.rotate();
+            currentPiece.rotate(Math.floorMod(rotations, 4));
             Multimedia.playAudio("/sounds/rotate.wav");
             logger.info("Current piece rotated: {}", currentPiece);
         } else {
@@ -428,6 +762,9 @@ public class Game {
         // Swap the current piece with the following piece
         currentPiece = followingPiece;
         followingPiece = temp;
+        if (eventLog != null) {
+            eventLog.swapped(currentPiece.getValue(), currentPiece.getRotation(), getLevel());
+        }
 
         // Play a sound effect to indicate the swap
         Multimedia.playAudio("/sounds/pling.wav");
@@ -440,9 +777,9 @@ public class Game {
      */
     public void dropPieceAtAim() {
         if (grid.canPlayPiece(currentPiece, currentAimX, currentAimY)) {
-            grid.playPiece(currentPiece, currentAimX, currentAimY);
-            afterPiece(); // Handles line clearance
+            playAndClear(currentAimX, currentAimY);
             nextPiece(); // Spawns next piece
+            save();
         } else {
             logger.info("Cannot place piece(ENTER)");
             Multimedia.playAudio("/sounds/place.wav");
@@ -453,25 +790,42 @@ public class Game {
 
 
     /**
-     * Moves the aim position by the specified delta values.
+     * Moves the aim position by the specified delta values, stopping at the edges of the grid.
      *
      * @param dx the change in x-coordinate
      * @param dy the change in y-coordinate
      */
     public void moveAim(int dx, int dy) {
-        // Calculate the new aim position
-        int newX = currentAimX + dx;
-        int newY = currentAimY + dy;
-
-        // Check if the new position is within the grid boundaries
-        if (newX >= 0 && newX < cols) {
-            // Update the x-coordinate of the aim position
-            currentAimX = newX;
-        }
-        if (newY >= 0 && newY < rows) {
-            // Update the y-coordinate of the aim position
-            currentAimY = newY;
-        }
+        // Keep the new aim position within the grid boundaries
+        currentAimX = Math.max(0, Math.min(cols - 1, currentAimX + dx));
+        currentAimY = Math.max(0, Math.min(rows - 1, currentAimY + dy));
+    }
+
+    /**
+     * Get the column of the aim position
+     *
+     * @return aim column
+     */
+    public int getAimX() {
+        return currentAimX;
+    }
+
+    /**
+     * Get the row of the aim position
+     *
+     * @return aim row
+     */
+    public int getAimY() {
+        return currentAimY;
+    }
+
+    /**
+     * Get the sequence of pieces coming after the following piece
+     *
+     * @return the piece sequence
+     */
+    public PieceSequence getPieceSequence() {
+        return pieceSequence;
     }
 
     public GamePiece getFollowingPiece() {
@@ -517,6 +871,29 @@ public class Game {
         this.lives.set(lives);
     }
 
+    /**
+     * Get the rank of the final score among every known score, local and remote. Set on the owner thread shortly after
+     * the game ends.
+     *
+     * @return the rank, 1 being the best, or 0 until it is known
+     */
+    public IntegerProperty finalRankProperty() {
+        return this.finalRank;
+    }
+
+    public int getFinalRank() {
+        return this.finalRank.get();
+    }
+
+    /**
+     * Get the number of scores the final score was ranked among, including itself
+     *
+     * @return number of scores, or 0 until the final rank is known
+     */
+    public int getRankedAmong() {
+        return rankedAmong;
+    }
+
     public DoubleProperty multiplierProperty() {
         return this.multiplier;
     }
@@ -0,0 +1,213 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GameStateListener;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a game as an actor: every input, whichever thread it comes from, is queued as a GameCommand and carried out on a
+ * single owner thread. The game itself is only ever touched by the owner, so it needs no locking and its listeners are
+ * always called on the same thread.
+ *
+ * Commands are drained in batches. Within a batch, runs of rotations are merged into a single turn, and runs of aim
+ * movements count as a single step, though each movement is still clamped at the board edges in order. After each batch
+ * one immutable GameState snapshot is published, which any thread can read, so a burst of key repeats costs one update.
+ *
+ * The owner is an Executor that must run tasks one at a time on one thread. In the UI it is the JavaFX application
+ * thread, because the grid and score properties are bound to the scene graph.
+ */
+public class GameActor {
+
+    private static final Logger logger = LogManager.getLogger(GameActor.class);
+
+    /**
+     * Most commands carried out in one batch before giving the owner thread back
+     */
+    private static final int MAX_BATCH = 256;
+
+    private final Game game;
+    private final Executor owner;
+    private final MpscQueue<GameCommand> queue = new MpscQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * Reused by the owner for each batch
+     */
+    private final ArrayList<GameCommand> batch = new ArrayList<>();
+
+    private GameStateListener listener;
+    private volatile GameState state;
+    private long moves = 0;
+    private long submitted = 0;
+    private long applied = 0;
+
+    /**
+     * Create an actor for a game
+     * @param game the game, which from now on must only be changed through this actor
+     * @param owner runs the owner's tasks, one at a time on one thread
+     */
+    public GameActor(Game game, Executor owner) {
+        this.game = game;
+        this.owner = owner;
+    }
+
+    /**
+     * Set the listener called on the owner thread after each batch
+     * @param listener the listener
+     */
+    public void setOnStateChanged(GameStateListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queue a command. Safe to call from any thread; never blocks.
+     * @param command the command
+     */
+    public void submit(GameCommand command) {
+        queue.offer(command);
+        scheduleDrain();
+    }
+
+    /**
+     * Get the latest published snapshot
+     * @return the snapshot, or null if nothing has been published yet
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Publish a snapshot of the game as it is now. Must be called on the owner thread, for example after setting up the
+     * game directly.
+     */
+    public void publish() {
+        state = snapshot();
+        if (listener != null) {
+            listener.stateChanged(state);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            owner.execute(this::drain);
+        }
+    }
+
+    /**
+     * Carry out the queued commands. Runs on the owner thread.
+     */
+    private void drain() {
+        //Clear the flag first, so anything queued from now on schedules another drain
+        drainScheduled.set(false);
+
+        GameCommand command;
+        while (batch.size() < MAX_BATCH && (command = queue.poll()) != null) {
+            batch.add(command);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        submitted += batch.size();
+
+        boolean aimMoved = false;
+        int rotations = 0;
+        for (var next : batch) {
+            //Each aim move is clamped at the board edges in turn, exactly as if the keys had been handled one by one,
+            //but a run of them counts as a single step
+            if (next instanceof GameCommand.MoveAim move) {
+                game.moveAim(move.dx(), move.dy());
+                if (!aimMoved) {
+                    aimMoved = true;
+                    applied++;
+                }
+                continue;
+            }
+            aimMoved = false;
+            //Merge runs of rotations, quarter turns add up whatever order they come in
+            if (next instanceof GameCommand.Rotate rotate) {
+                rotations += rotate.times();
+                continue;
+            }
+            if (rotations != 0) {
+                rotate(rotations);
+                rotations = 0;
+            }
+            apply(next);
+        }
+        if (rotations != 0) {
+            rotate(rotations);
+        }
+        batch.clear();
+
+        publish();
+
+        //Hit the batch limit: let the owner do other work and come back for the rest
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void apply(GameCommand command) {
+        if (command instanceof GameCommand.TimerExpired expired
+                && expired.deadline() != game.getClock().getDeadlineGeneration()) {
+            //The timer that ran out was replaced while this waited in the queue, so no life is lost
+            logger.debug("Ignoring expiry of an old deadline");
+            return;
+        }
+        applied++;
+        moves++;
+        if (command instanceof GameCommand.Place place) {
+            game.placePiece(place.x(), place.y());
+        } else if (command instanceof GameCommand.PlaceAtAim) {
+            game.dropPieceAtAim();
+        } else if (command instanceof GameCommand.Swap) {
+            game.swapCurrentPiece();
+        } else if (command instanceof GameCommand.TimerExpired) {
+            game.timerExpired();
+        } else {
+            logger.warn("Unknown command: {}", command);
+        }
+    }
+
+    private void rotate(int rotations) {
+        applied++;
+        moves++;
+        game.rotateCurrentPiece(rotations);
+    }
+
+    private GameState snapshot() {
+        var grid = game.getGrid();
+        int cols = grid.getCols();
+        int rows = grid.getRows();
+        int[] cells = new int[cols * rows];
+        BoardSearch.copy(grid, cells);
+        var current = game.getCurrentPiece();
+        var following = game.getFollowingPiece();
+        return new GameState(cols, rows, cells,
+                current == null ? 0 : current.getValue(), current == null ? null : current.copyBlocks(),
+                following == null ? 0 : following.getValue(), following == null ? null : following.copyBlocks(),
+                game.getAimX(), game.getAimY(),
+                game.getScore(), game.getLevel(), game.getLives(), game.getMultiplier(),
+                moves);
+    }
+
+    /**
+     * Get the number of commands received so far. Read on the owner thread.
+     * @return commands drained from the queue
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Get the number of steps actually carried out, after merging. Read on the owner thread.
+     * @return steps applied to the game
+     */
+    public long getApplied() {
+        return applied;
+    }
+}
@@ -0,0 +1,317 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * The single source of game time. Game time advances in fixed ticks, measured against the monotonic System.nanoTime
+ * clock rather than wall clock timers, so it does not drift and is unaffected by frame rate.
+ *
+ * The clock holds one deadline at a time (the time the player has left to place a piece) and calls the expiry handler
+ * when game time reaches it. Every deadline set or cleared gets a new generation number, which is passed to the expiry
+ * handler, so an expiry handled late can be recognised as stale once a newer deadline has replaced it. The UI can
+ * sample the time remaining as often as it likes, for example once per frame.
+ *
+ * The clock can be paused and resumed and run faster or slower than real time. At {@link #AS_FAST_AS_POSSIBLE} every
+ * deadline expires as soon as the clock is advanced, and {@link #step(long)} can drive the clock directly without a
+ * driver thread, which lets simulations run headless at full speed.
+ */
+public class GameClock {
+
+    private static final Logger logger = LogManager.getLogger(GameClock.class);
+
+    /**
+     * Default length of a tick: 5 milliseconds
+     */
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Time scale at which game time skips straight to the next deadline
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final long tickNanos;
+    private LongConsumer expiryHandler;
+
+    private long ticks = 0;
+    private double accumulator = 0;
+    private long lastSample;
+    private double scale = 1.0;
+    private boolean paused = false;
+
+    private long deadlineTick = -1;
+    private long deadlineLength = 0;
+    private long deadlineGeneration = 0;
+
+    private Thread driver;
+    private volatile boolean running = false;
+
+    /**
+     * Create a clock with the default tick length
+     */
+    public GameClock() {
+        this(DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * Create a clock with the given tick length
+     * @param tickNanos length of one tick in nanoseconds
+     */
+    public GameClock(long tickNanos) {
+        this.tickNanos = tickNanos;
+        this.lastSample = System.nanoTime();
+    }
+
+    /**
+     * Set the handler called when the deadline is reached, with the generation of the deadline that expired. It is
+     * called on whichever thread advances the clock, outside any lock held by the clock.
+     * @param handler expiry handler
+     */
+    public void setOnExpired(LongConsumer handler) {
+        this.expiryHandler = handler;
+    }
+
+    /**
+     * Get the generation of the current deadline, which changes every time a deadline is set or cleared
+     * @return the generation
+     */
+    public synchronized long getDeadlineGeneration() {
+        return deadlineGeneration;
+    }
+
+    /**
+     * Set a new deadline the given amount of game time from now, replacing any existing deadline
+     * @param millis game time until the deadline, in milliseconds
+     */
+    public synchronized void setDeadline(long millis) {
+        long length = Math.max(1, TimeUnit.MILLISECONDS.toNanos(millis) / tickNanos);
+        deadlineLength = length;
+        deadlineTick = ticks + length;
+        deadlineGeneration++;
+        //Measure from now, not from the last tick boundary
+        accumulator = 0;
+        lastSample = System.nanoTime();
+    }
+
+    /**
+     * Remove the current deadline
+     */
+    public synchronized void clearDeadline() {
+        deadlineTick = -1;
+        deadlineGeneration++;
+    }
+
+    /**
+     * Get the game time left until the deadline
+     * @return remaining nanoseconds, or 0 if there is no deadline
+     */
+    public synchronized long getRemainingNanos() {
+        if (deadlineTick < 0) {
+            return 0;
+        }
+        //Include real time since the last sample so the UI sees smooth progress between ticks
+        double pending = paused || scale == AS_FAST_AS_POSSIBLE ? 0 : (System.nanoTime() - lastSample) * scale;
+        double elapsed = ticks * (double) tickNanos + accumulator + pending;
+        return Math.max(0, (long) (deadlineTick * (double) tickNanos - elapsed));
+    }
+
+    /**
+     * Get the fraction of the current deadline still left, useful for drawing a timer bar
+     * @return between 1 (just set) and 0 (expired or no deadline)
+     */
+    public synchronized double getRemainingFraction() {
+        if (deadlineTick < 0) {
+            return 0;
+        }
+        return Math.min(1.0, getRemainingNanos() / (double) (deadlineLength * tickNanos));
+    }
+
+    /**
+     * Get the number of ticks since the clock was created
+     * @return ticks
+     */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Get the length of one tick
+     * @return tick length in nanoseconds
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Pause the clock. Game time stands still until resumed.
+     */
+    public synchronized void pause() {
+        if (!paused) {
+            sample();
+            paused = true;
+        }
+    }
+
+    /**
+     * Resume the clock after a pause
+     */
+    public synchronized void resume() {
+        if (paused) {
+            paused = false;
+            lastSample = System.nanoTime();
+        }
+    }
+
+    /**
+     * Whether the clock is paused
+     * @return true if paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Set how fast game time runs compared to real time
+     * @param scale 1 for real time, 2 for double speed, AS_FAST_AS_POSSIBLE to skip straight to each deadline
+     */
+    public synchronized void setScale(double scale) {
+        if (scale <= 0 || Double.isNaN(scale)) {
+            throw new IllegalArgumentException("Time scale must be positive: " + scale);
+        }
+        sample();
+        this.scale = scale;
+    }
+
+    /**
+     * Get how fast game time runs compared to real time
+     * @return the time scale
+     */
+    public synchronized double getScale() {
+        return scale;
+    }
+
+    /**
+     * Bring game time up to date with real time, running every tick that has elapsed. Calls the expiry handler if the
+     * deadline was reached.
+     */
+    public void advance() {
+        boolean expired;
+        long generation;
+        synchronized (this) {
+            sample();
+            long whole = (long) (accumulator / tickNanos);
+            if (scale == AS_FAST_AS_POSSIBLE && deadlineTick >= 0) {
+                whole = Math.max(whole, deadlineTick - ticks);
+            }
+            generation = deadlineGeneration;
+            expired = runTicks(whole);
+        }
+        if (expired) {
+            fireExpired(generation);
+        }
+    }
+
+    /**
+     * Advance game time by a fixed number of ticks, regardless of real time. Used by headless simulations.
+     * @param count number of ticks
+     */
+    public void step(long count) {
+        boolean expired;
+        long generation;
+        synchronized (this) {
+            accumulator = 0;
+            generation = deadlineGeneration;
+            expired = runTicks(count);
+        }
+        if (expired) {
+            fireExpired(generation);
+        }
+    }
+
+    /**
+     * Advance game time straight to the deadline, if there is one
+     */
+    public void skipToDeadline() {
+        long remaining;
+        synchronized (this) {
+            remaining = deadlineTick < 0 ? 0 : deadlineTick - ticks;
+        }
+        step(Math.max(0, remaining));
+    }
+
+    /**
+     * Start a background thread that advances the clock once per tick
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        lastSample = System.nanoTime();
+        driver = new Thread(this::drive, "Game Clock");
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    /**
+     * Stop the background thread, if running
+     */
+    public void stop() {
+        running = false;
+        var thread = driver;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void drive() {
+        while (running) {
+            advance();
+            double currentScale = getScale();
+            long wait = currentScale == AS_FAST_AS_POSSIBLE ? tickNanos : (long) (tickNanos / currentScale);
+            LockSupport.parkNanos(this, Math.max(wait, 100_000));
+        }
+        logger.debug("Game clock stopped at tick {}", getTicks());
+    }
+
+    /**
+     * Add the scaled real time since the last sample to the accumulator
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        if (!paused && scale != AS_FAST_AS_POSSIBLE) {
+            accumulator += (now - lastSample) * scale;
+        }
+        lastSample = now;
+    }
+
+    /**
+     * Run the given number of ticks, stopping at the deadline
+     * @return true if the deadline was reached
+     */
+    private boolean runTicks(long count) {
+        if (deadlineTick >= 0 && ticks + count >= deadlineTick) {
+            ticks = deadlineTick;
+            accumulator = 0;
+            deadlineTick = -1;
+            return true;
+        }
+        ticks += count;
+        accumulator -= count * (double) tickNanos;
+        if (accumulator < 0) {
+            accumulator = 0;
+        }
+        return false;
+    }
+
+    private void fireExpired(long generation) {
+        var handler = expiryHandler;
+        if (handler != null) {
+            handler.accept(generation);
+        }
+    }
+}
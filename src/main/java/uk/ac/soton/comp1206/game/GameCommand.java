@@ -0,0 +1,58 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * An input to the game. Commands are queued by any thread and carried out in order by the game's owner thread (see
+ * GameActor).
+ */
+public sealed interface GameCommand {
+
+    /**
+     * Place the current piece centred on the given block
+     * @param x column
+     * @param y row
+     */
+    record Place(int x, int y) implements GameCommand {
+    }
+
+    /**
+     * Place the current piece at the aim position
+     */
+    record PlaceAtAim() implements GameCommand {
+    }
+
+    /**
+     * Rotate the current piece clockwise
+     * @param times number of quarter turns
+     */
+    record Rotate(int times) implements GameCommand {
+    }
+
+    /**
+     * Swap the current and following pieces
+     */
+    record Swap() implements GameCommand {
+    }
+
+    /**
+     * Move the aim position
+     * @param dx change in column
+     * @param dy change in row
+     */
+    record MoveAim(int dx, int dy) implements GameCommand {
+    }
+
+    /**
+     * The time allowed for the current piece has run out. Ignored if the game has set a new deadline since, for example
+     * because a placement queued ahead of it restarted the timer.
+     * @param deadline generation of the clock deadline that expired, see {@link GameClock#getDeadlineGeneration()}
+     */
+    record TimerExpired(long deadline) implements GameCommand {
+    }
+
+    /**
+     * Shared instances of the commands without arguments
+     */
+    GameCommand PLACE_AT_AIM = new PlaceAtAim();
+    GameCommand ROTATE = new Rotate(1);
+    GameCommand SWAP = new Swap();
+}
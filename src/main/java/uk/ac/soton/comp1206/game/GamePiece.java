@@ -23,6 +23,11 @@ public class GamePiece {
      */
     private final int value;
 
+    /**
+     * Number of quarter turns since the piece was created, 0 to 3
+     */
+    private int rotation = 0;
+
     /**
      * The name of this piece
      */
@@ -173,13 +178,34 @@ public class GamePiece {
     }
 
     /**
-     * Get the block makeup of this piece
+     * Get the number of quarter turns this piece has been rotated since it was created
+     * @return rotation, 0 to 3
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Get the block makeup of this piece. The array is rotated in place, so copy it with {@link #copyBlocks()} to
+     * keep it or hand it to another thread.
      * @return 2D grid of the blocks representing the piece shape
      */
     public int[][] getBlocks() {
         return blocks;
     }
 
+    /**
+     * Get a copy of the block makeup of this piece that later rotations will not change
+     * @return copy of the 2D grid of blocks
+     */
+    public int[][] copyBlocks() {
+        int[][] copy = new int[blocks.length][];
+        for (int i = 0; i < blocks.length; i++) {
+            copy[i] = blocks[i].clone();
+        }
+        return copy;
+    }
+
     /**
      * Rotate this piece the given number of rotations
      * @param rotations number of rotations
@@ -191,9 +217,30 @@ public class GamePiece {
     }
 
     /**
-     * Rotate this piece exactly once by rotating it's 3x3 grid
+     * Rotate this piece exactly once by rotating it's 3x3 grid in place
      */
     public void rotate() {
+        rotation = (rotation + 1) & 3;
+        //Move the corners round, then the edges, as two four-way swaps
+        int corner = blocks[0][0];
+        blocks[0][0] = blocks[0][2];
+        blocks[0][2] = blocks[2][2];
+        blocks[2][2] = blocks[2][0];
+        blocks[2][0] = corner;
+
+        int edge = blocks[0][1];
+        blocks[0][1] = blocks[1][2];
+        blocks[1][2] = blocks[2][1];
+        blocks[2][1] = blocks[1][0];
+        blocks[1][0] = edge;
+    }
+
+    /**
+     * Rotate a 3x3 block makeup once clockwise, without changing the original
+     * @param blocks the block makeup to rotate
+     * @return a new rotated block makeup
+     */
+    public static int[][] rotate(int[][] blocks) {
         int[][] rotated = new int[blocks.length][blocks[0].length];
         rotated[2][0] = blocks[0][0];
         rotated[1][0] = blocks[0][1];
@@ -207,7 +254,7 @@ public class GamePiece {
         rotated[1][2] = blocks[2][1];
         rotated[0][2] = blocks[2][2];
 
-        blocks = rotated;
+        return rotated;
     }
 
 
@@ -0,0 +1,38 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * An immutable snapshot of a game, published by the GameActor after each batch of commands. Snapshots can be read from
+ * any thread without locking. The arrays are private copies owned by the snapshot and must not be modified.
+ *
+ * @param cols number of columns
+ * @param rows number of rows
+ * @param cells board contents, indexed by {@code y * cols + x}
+ * @param currentValue value of the current piece
+ * @param currentBlocks block makeup of the current piece, as currently rotated
+ * @param followingValue value of the following piece
+ * @param followingBlocks block makeup of the following piece, as currently rotated
+ * @param aimX column of the keyboard aim
+ * @param aimY row of the keyboard aim
+ * @param score the score
+ * @param level the level
+ * @param lives lives left
+ * @param multiplier the score multiplier
+ * @param moves number of commands so far that changed the board or pieces, so readers can skip aim-only updates
+ */
+public record GameState(int cols, int rows, int[] cells,
+                        int currentValue, int[][] currentBlocks,
+                        int followingValue, int[][] followingBlocks,
+                        int aimX, int aimY,
+                        int score, int level, int lives, double multiplier,
+                        long moves) {
+
+    /**
+     * Get the value of a cell
+     * @param x column
+     * @param y row
+     * @return the value, 0 if empty
+     */
+    public int get(int x, int y) {
+        return cells[y * cols + x];
+    }
+}
@@ -2,6 +2,11 @@ package uk.ac.soton.comp1206.game;
 
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
+import uk.ac.soton.comp1206.event.GridListener;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
@@ -13,6 +18,10 @@ import javafx.beans.property.SimpleIntegerProperty;
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  * <p>
  * The Grid should be linked to a GameBoard for it's display.
+ * <p>
+ * Several updates can be grouped into one change set with {@link #beginChanges()} and {@link #commitChanges()}. Inside
+ * a change set, updates are held back and the properties are only updated on commit, once per cell and only for cells
+ * whose value actually ended up different. GridListeners then receive the whole change set in one call.
  */
 public class Grid {
 
@@ -31,6 +40,28 @@ public class Grid {
      */
     private final SimpleIntegerProperty[][] grid;
 
+    /**
+     * Values set inside the open change set, indexed by y * cols + x. Only valid for cells in touched.
+     */
+    private final int[] staged;
+
+    /**
+     * Cells set inside the open change set
+     */
+    private final BitSet touched;
+
+    /**
+     * How many change sets are open. Nested change sets are committed with the outermost one.
+     */
+    private int depth = 0;
+
+    private final List<GridListener> listeners = new ArrayList<>();
+
+    /**
+     * Reused for every committed change set
+     */
+    private final GridChange change;
+
     /**
      * Create a new Grid with the specified number of columns and rows and initialise them
      *
@@ -43,6 +74,9 @@ public class Grid {
 
         //Create the grid itself
         grid = new SimpleIntegerProperty[cols][rows];
+        staged = new int[cols * rows];
+        touched = new BitSet(cols * rows);
+        change = new GridChange(cols, cols * rows);
 
         //Add a SimpleIntegerProperty to every block in the grid
         for (var y = 0; y < rows; y++) {
@@ -71,7 +105,85 @@ public class Grid {
      * @param value the new value
      */
     public void set(int x, int y, int value) {
-        grid[x][y].set(value);
+        if (depth > 0) {
+            //Hold the update back until the change set is committed
+            int index = y * cols + x;
+            staged[index] = value;
+            touched.set(index);
+            return;
+        }
+        int old = grid[x][y].get();
+        if (old != value) {
+            grid[x][y].set(value);
+            change.clear();
+            change.add(y * cols + x, old, value);
+            fireChange(change);
+        }
+    }
+
+    /**
+     * Start a change set. Updates from now until the matching {@link #commitChanges()} are applied together.
+     */
+    public void beginChanges() {
+        depth++;
+    }
+
+    /**
+     * Commit the change set started by {@link #beginChanges()}, updating each changed cell once and telling the
+     * listeners. Does nothing until the outermost change set is committed.
+     *
+     * @return the cells that changed, reused by the next commit, or null if this did not commit the outermost change
+     * set
+     */
+    public GridChange commitChanges() {
+        if (depth == 0) {
+            throw new IllegalStateException("No change set to commit");
+        }
+        if (--depth > 0) {
+            return null;
+        }
+
+        change.clear();
+        for (int index = touched.nextSetBit(0); index >= 0; index = touched.nextSetBit(index + 1)) {
+            var property = grid[index % cols][index / cols];
+            int old = property.get();
+            //Skip cells that were changed and then put back
+            if (staged[index] != old) {
+                change.add(index, old, staged[index]);
+                property.set(staged[index]);
+            }
+        }
+        touched.clear();
+
+        if (change.size() > 0) {
+            fireChange(change);
+        }
+        return change;
+    }
+
+    /**
+     * Add a listener to receive each committed change set
+     *
+     * @param listener the listener
+     */
+    public void addListener(GridListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with {@link #addListener(GridListener)}
+     *
+     * @param listener the listener
+     */
+    public void removeListener(GridListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireChange(GridChange change) {
+        //Indexed rather than for-each so no iterator is allocated on every move
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).gridChanged(change);
+        }
     }
 
     /**
@@ -83,6 +195,10 @@ public class Grid {
      */
     public int get(int x, int y) {
         try {
+            //Inside a change set, updates not yet committed are visible to the code making them
+            if (depth > 0 && x >= 0 && x < cols && y >= 0 && y < rows && touched.get(y * cols + x)) {
+                return staged[y * cols + x];
+            }
             //Get the value held in the property at the x and y index provided
             return grid[x][y].get();
         } catch (ArrayIndexOutOfBoundsException e) {
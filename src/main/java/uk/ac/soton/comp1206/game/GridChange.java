@@ -0,0 +1,101 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The cells of a Grid changed by one committed change set, with their values before and after. Cells that were
+ * changed and then put back within the change set are not included.
+ *
+ * Each Grid reuses a single GridChange for every commit, so listeners should copy out anything they need to keep.
+ */
+public final class GridChange {
+
+    private final int cols;
+    private final int[] indices;
+    private final int[] oldValues;
+    private final int[] newValues;
+    private int size = 0;
+
+    /**
+     * Create an empty change set with room for every cell of a grid
+     * @param cols number of columns in the grid
+     * @param cells number of cells in the grid
+     */
+    GridChange(int cols, int cells) {
+        this.cols = cols;
+        this.indices = new int[cells];
+        this.oldValues = new int[cells];
+        this.newValues = new int[cells];
+    }
+
+    /**
+     * Remove every change, ready for the next commit
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Record a changed cell. Cells are added in ascending index order.
+     * @param index cell index, {@code y * cols + x}
+     * @param oldValue value before the change
+     * @param newValue value after the change
+     */
+    void add(int index, int oldValue, int newValue) {
+        indices[size] = index;
+        oldValues[size] = oldValue;
+        newValues[size] = newValue;
+        size++;
+    }
+
+    /**
+     * Get the number of cells changed
+     * @return number of cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the cell index of a change
+     * @param i which change
+     * @return cell index, {@code y * cols + x}
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Get the column of a change
+     * @param i which change
+     * @return column
+     */
+    public int getX(int i) {
+        return indices[i] % cols;
+    }
+
+    /**
+     * Get the row of a change
+     * @param i which change
+     * @return row
+     */
+    public int getY(int i) {
+        return indices[i] / cols;
+    }
+
+    /**
+     * Get the value of a changed cell before the change
+     * @param i which change
+     * @return old value
+     */
+    public int getOldValue(int i) {
+        return oldValues[i];
+    }
+
+    /**
+     * Get the value of a changed cell after the change
+     * @param i which change
+     * @return new value
+     */
+    public int getNewValue(int i) {
+        return newValues[i];
+    }
+}
@@ -0,0 +1,131 @@
+package uk.ac.soton.comp1206.game;
+
+import javafx.application.Platform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.HintListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Works out placement hints for a game on a background thread, so the JavaFX thread never waits for a search.
+ *
+ * Each call to {@link #refresh()} takes a cheap copy of the board and pieces and starts a new search. Any search still
+ * running is abandoned as soon as a newer one is requested, and only the result of the latest search is handed to the
+ * listener. If several results arrive within one pulse, the listener only sees the last.
+ */
+public class HintEngine implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(HintEngine.class);
+
+    private final Game game;
+    private final ExecutorService worker;
+    private HintListener listener;
+
+    /**
+     * Generation of the latest search requested. Older searches see a different value and give up.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicReference<BoardSearch.Move> latest = new AtomicReference<>();
+    private final AtomicBoolean deliveryQueued = new AtomicBoolean(false);
+    private volatile long latestGeneration = -1;
+
+    /**
+     * Create a hint engine for a game
+     * @param game the game to give hints for
+     */
+    public HintEngine(Game game) {
+        this.game = game;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "Hint Engine");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Set the listener to receive hints
+     * @param listener the listener
+     */
+    public void setOnHint(HintListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start a new search for the current state of the game, abandoning any search in progress. Should be called from
+     * the thread that modifies the game whenever the board or pieces change.
+     */
+    public void refresh() {
+        var current = game.getCurrentPiece();
+        var following = game.getFollowingPiece();
+        if (current == null || following == null) {
+            return;
+        }
+
+        //Snapshot everything the search needs, it must not touch the live game
+        var grid = game.getGrid();
+        int cols = grid.getCols();
+        int rows = grid.getRows();
+        int[] cells = new int[cols * rows];
+        BoardSearch.copy(grid, cells);
+        int[][] currentBlocks = current.copyBlocks();
+        int[][] followingBlocks = following.copyBlocks();
+        int[][] afterBlocks = GamePiece.createPiece(game.getPieceSequence().peek(0)).getBlocks();
+
+        long search = generation.incrementAndGet();
+        worker.execute(() -> {
+            if (generation.get() != search) {
+                return;
+            }
+            long start = System.nanoTime();
+            var move = BoardSearch.best(cells, cols, rows, currentBlocks, followingBlocks, afterBlocks,
+                    () -> generation.get() != search);
+            if (generation.get() != search) {
+                return;
+            }
+            logger.debug("Hint search took {} us: {}", (System.nanoTime() - start) / 1000, move);
+            publish(search, move);
+        });
+    }
+
+    /**
+     * Drop any pending hint, for example when hints are switched off
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        latest.set(null);
+    }
+
+    /**
+     * Hand a result over to the JavaFX thread, collapsing bursts into a single delivery
+     */
+    private void publish(long search, BoardSearch.Move move) {
+        latest.set(move);
+        latestGeneration = search;
+        if (deliveryQueued.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                deliveryQueued.set(false);
+                var hint = latest.get();
+                //Only deliver if nothing newer has been requested since
+                if (listener != null && latestGeneration == generation.get()) {
+                    listener.hintReady(hint);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the background worker
+     */
+    @Override
+    public void close() {
+        cancel();
+        worker.shutdownNow();
+    }
+}
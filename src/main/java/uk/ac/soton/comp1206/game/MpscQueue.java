@@ -0,0 +1,76 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free unbounded queue for many producer threads and a single consumer thread.
+ *
+ * Producers swap themselves in as the new tail with a single atomic exchange and then link the previous tail to the new
+ * node; the consumer follows the links from a stub head node. Producers never block each other or the consumer.
+ *
+ * Only one thread may call {@link #poll()}. {@link #poll()} can briefly return null while a producer is between its
+ * exchange and its link; the producer is about to finish, so callers that schedule a drain after offering will see the
+ * element on the next drain.
+ *
+ * @param <E> element type
+ */
+public final class MpscQueue<E> {
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<E>> tail;
+
+    /**
+     * The consumer's stub node, whose successor is the next element to poll. Only touched by the consumer.
+     */
+    private Node<E> head;
+
+    /**
+     * Create an empty queue
+     */
+    public MpscQueue() {
+        var stub = new Node<E>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Add an element. Safe to call from any thread.
+     * @param value the element, not null
+     */
+    public void offer(E value) {
+        var node = new Node<>(value);
+        var previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Remove the oldest element. Must only be called from the consumer thread.
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        var next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    /**
+     * Whether the queue looks empty. Only reliable on the consumer thread.
+     * @return true if there is nothing to poll
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+}
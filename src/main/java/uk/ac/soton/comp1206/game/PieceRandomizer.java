@@ -0,0 +1,217 @@
+package uk.ac.soton.comp1206.game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A strategy for choosing which pieces come next. Randomizers fill a buffer with piece numbers in bulk, so random
+ * numbers are drawn in batches rather than once per move.
+ *
+ * Randomizers use their own small xorshift generator so that their full state can be read back and restored, for
+ * example when saving and resuming a game.
+ */
+public abstract class PieceRandomizer {
+
+    /**
+     * The generator state, never zero
+     */
+    protected long state;
+
+    /**
+     * Create a randomizer with the given seed
+     * @param seed seed
+     */
+    protected PieceRandomizer(long seed) {
+        setState(seed);
+    }
+
+    /**
+     * Write the next count piece numbers into the buffer
+     * @param buffer destination
+     * @param offset first index to write
+     * @param count number of pieces to write
+     */
+    public abstract void fill(int[] buffer, int offset, int count);
+
+    /**
+     * Get the generator state
+     * @return state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restore the generator state
+     * @param state a value previously returned by getState, or any seed
+     */
+    public void setState(long state) {
+        this.state = state == 0 ? 0x9E3779B97F4A7C15L : state;
+    }
+
+    /**
+     * Get the name this randomizer is created by
+     * @return name accepted by {@link #create(String, long)}
+     */
+    public abstract String getName();
+
+    /**
+     * Get the number of bytes written by {@link #writeState(ByteBuffer)}
+     * @return size of the full state
+     */
+    public int getStateSize() {
+        return Long.BYTES;
+    }
+
+    /**
+     * Write the full state, including anything beyond the generator, so the same pieces follow after reading it back
+     * @param buffer destination
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.putLong(state);
+    }
+
+    /**
+     * Read back a state written by {@link #writeState(ByteBuffer)} on a randomizer of the same kind
+     * @param buffer source
+     */
+    public void readState(ByteBuffer buffer) {
+        setState(buffer.getLong());
+    }
+
+    /**
+     * Draw a random number in [0, bound)
+     * @param bound exclusive upper bound
+     * @return the number
+     */
+    protected int nextInt(int bound) {
+        //xorshift64*
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        long bits = (state * 0x2545F4914F6CDD1DL) >>> 33;
+        return (int) ((bits * bound) >>> 31);
+    }
+
+    /**
+     * Create a randomizer by name
+     * @param name "bag" for a shuffled bag, anything else for uniform draws
+     * @param seed seed
+     * @return the randomizer
+     */
+    public static PieceRandomizer create(String name, long seed) {
+        if ("bag".equalsIgnoreCase(name)) {
+            return new Bag(seed);
+        }
+        return new Uniform(seed);
+    }
+
+    /**
+     * Draws every piece independently and uniformly, as the game always has
+     */
+    public static class Uniform extends PieceRandomizer {
+
+        /**
+         * Create a uniform randomizer
+         * @param seed seed
+         */
+        public Uniform(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public String getName() {
+            return "uniform";
+        }
+
+        @Override
+        public void fill(int[] buffer, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = nextInt(GamePiece.PIECES);
+            }
+        }
+    }
+
+    /**
+     * Deals all fifteen pieces in a shuffled order before starting a new bag, so no piece is ever far away and long
+     * droughts or floods of one shape cannot happen.
+     */
+    public static class Bag extends PieceRandomizer {
+
+        private final int[] bag = new int[GamePiece.PIECES];
+
+        /**
+         * Position in the current bag
+         */
+        private int position = GamePiece.PIECES;
+
+        /**
+         * Create a bag randomizer
+         * @param seed seed
+         */
+        public Bag(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public String getName() {
+            return "bag";
+        }
+
+        @Override
+        public int getStateSize() {
+            return super.getStateSize() + 1 + bag.length;
+        }
+
+        @Override
+        public void writeState(ByteBuffer buffer) {
+            super.writeState(buffer);
+            buffer.put((byte) position);
+            for (int piece : bag) {
+                buffer.put((byte) piece);
+            }
+        }
+
+        @Override
+        public void readState(ByteBuffer buffer) {
+            super.readState(buffer);
+            int restored = buffer.get();
+            if (restored < 0 || restored > bag.length) {
+                throw new IllegalArgumentException("Bad bag position: " + restored);
+            }
+            for (int i = 0; i < bag.length; i++) {
+                int piece = buffer.get();
+                if (piece < 0 || piece >= GamePiece.PIECES) {
+                    throw new IllegalArgumentException("Bad piece in bag: " + piece);
+                }
+                bag[i] = piece;
+            }
+            position = restored;
+        }
+
+        @Override
+        public void fill(int[] buffer, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                if (position == bag.length) {
+                    shuffle();
+                }
+                buffer[offset + i] = bag[position++];
+            }
+        }
+
+        /**
+         * Refill the bag with every piece, in a Fisher-Yates shuffled order
+         */
+        private void shuffle() {
+            for (int i = 0; i < bag.length; i++) {
+                bag[i] = i;
+            }
+            for (int i = bag.length - 1; i > 0; i--) {
+                int j = nextInt(i + 1);
+                int swap = bag[i];
+                bag[i] = bag[j];
+                bag[j] = swap;
+            }
+            position = 0;
+        }
+    }
+}
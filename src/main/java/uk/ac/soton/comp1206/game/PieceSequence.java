@@ -0,0 +1,131 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The sequence of upcoming pieces in a game, held as a ring buffer of piece numbers.
+ *
+ * A fixed number of pieces is always known in advance (the lookahead). When the buffer runs low, it is topped up in
+ * bulk by the randomizer, so drawing a piece is just an array read. The UI can display upcoming pieces and searches
+ * can read them with {@link #peek(int)} without allocating anything.
+ */
+public class PieceSequence {
+
+    /**
+     * Default number of pieces known in advance
+     */
+    public static final int DEFAULT_LOOKAHEAD = 8;
+
+    private final PieceRandomizer randomizer;
+    private final int lookahead;
+
+    /**
+     * Ring buffer of piece numbers. The capacity is a power of two at least twice the lookahead, so a refill can add
+     * at least lookahead pieces in one go.
+     */
+    private final int[] ring;
+    private final int mask;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Create a new sequence
+     * @param randomizer the strategy used to pick pieces
+     * @param lookahead number of pieces always known in advance
+     */
+    public PieceSequence(PieceRandomizer randomizer, int lookahead) {
+        this.randomizer = randomizer;
+        this.lookahead = Math.max(1, lookahead);
+        int capacity = Integer.highestOneBit(this.lookahead * 2 - 1) << 1;
+        this.ring = new int[capacity];
+        this.mask = capacity - 1;
+        refill();
+    }
+
+    /**
+     * Create a sequence using the randomizer named by the tetrecs.randomizer system property ("uniform" by default)
+     * and the default lookahead
+     * @return the sequence
+     */
+    public static PieceSequence createDefault() {
+        var randomizer = PieceRandomizer.create(System.getProperty("tetrecs.randomizer", "uniform"), System.nanoTime());
+        return new PieceSequence(randomizer, Integer.getInteger("tetrecs.lookahead", DEFAULT_LOOKAHEAD));
+    }
+
+    /**
+     * Take the next piece number off the front of the sequence
+     * @return piece number
+     */
+    public int next() {
+        int piece = ring[head];
+        head = (head + 1) & mask;
+        size--;
+        if (size < lookahead) {
+            refill();
+        }
+        return piece;
+    }
+
+    /**
+     * Look at an upcoming piece number without taking it
+     * @param index 0 for the piece next() would return, up to getLookahead() - 1, or up to getBuffered() - 1 for
+     * pieces already drawn beyond the lookahead
+     * @return piece number
+     */
+    public int peek(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No such upcoming piece: " + index);
+        }
+        return ring[(head + index) & mask];
+    }
+
+    /**
+     * Get the number of pieces that can always be peeked at
+     * @return lookahead
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Get the number of pieces already drawn from the randomizer and waiting in the buffer. Saving all of them along
+     * with the randomizer state lets a resumed game deal exactly the same pieces.
+     * @return buffered pieces, at least the lookahead
+     */
+    public int getBuffered() {
+        return size;
+    }
+
+    /**
+     * Get the randomizer filling this sequence
+     * @return randomizer
+     */
+    public PieceRandomizer getRandomizer() {
+        return randomizer;
+    }
+
+    /**
+     * Replace the upcoming pieces, for example when resuming a saved game
+     * @param pieces piece numbers, in order
+     */
+    public void restore(int[] pieces) {
+        head = 0;
+        size = Math.min(pieces.length, ring.length);
+        System.arraycopy(pieces, 0, ring, 0, size);
+        if (size < lookahead) {
+            refill();
+        }
+    }
+
+    /**
+     * Fill every free slot in the ring in one batch, in at most two contiguous runs
+     */
+    private void refill() {
+        int tail = (head + size) & mask;
+        int free = ring.length - size;
+        int firstRun = Math.min(free, ring.length - tail);
+        randomizer.fill(ring, tail, firstRun);
+        if (free > firstRun) {
+            randomizer.fill(ring, 0, free - firstRun);
+        }
+        size = ring.length;
+    }
+}
@@ -0,0 +1,166 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The numbers behind the difficulty curve: how long the player has for each piece, how placements are scored, how
+ * quickly levels go up and how many lives there are.
+ *
+ * The timer starts at {@code startDelay} and falls by {@code delayStep} each level, but never below
+ * {@code minimumDelay}. A placement clearing some lines scores
+ * {@code lines * blocks * pointsPerBlock * multiplier}, and the level goes up every {@code pointsPerLevel} points.
+ *
+ * Rules are written as comma separated {@code name=value} pairs, for example {@code startDelay=10000,lives=5}, with
+ * anything left out taken from {@link #STANDARD}. The game uses the rules in the tetrecs.rules system property if it is
+ * set. {@link RulesSweep} tries many sets of rules against simulated players.
+ *
+ * @param startDelay milliseconds to place a piece at level 0
+ * @param delayStep milliseconds taken off the timer each level
+ * @param minimumDelay shortest the timer can get, in milliseconds
+ * @param pointsPerLevel points needed for each level
+ * @param pointsPerBlock points for each block cleared, before the line count and multiplier
+ * @param lives lives at the start of a game
+ */
+public record Rules(int startDelay, int delayStep, int minimumDelay, int pointsPerLevel, int pointsPerBlock,
+                    int lives) {
+
+    private static final Logger logger = LogManager.getLogger(Rules.class);
+
+    /**
+     * The rules of the original game
+     */
+    public static final Rules STANDARD = new Rules(12000, 500, 2500, 1000, 10, 3);
+
+    /**
+     * Names of every parameter, in the order they are written
+     */
+    public static final String[] NAMES = {
+            "startDelay", "delayStep", "minimumDelay", "pointsPerLevel", "pointsPerBlock", "lives"
+    };
+
+    private static Rules configured;
+
+    /**
+     * Create a set of rules
+     */
+    public Rules {
+        if (startDelay < 1 || delayStep < 0 || minimumDelay < 1 || pointsPerLevel < 1 || pointsPerBlock < 0
+                || lives < 1) {
+            throw new IllegalArgumentException("Invalid rules: " + format(startDelay, delayStep, minimumDelay,
+                    pointsPerLevel, pointsPerBlock, lives));
+        }
+    }
+
+    /**
+     * Get the rules new games are played with: those in the tetrecs.rules system property, or the standard rules
+     * @return the rules
+     */
+    public static synchronized Rules getDefault() {
+        if (configured == null) {
+            configured = STANDARD;
+            var property = System.getProperty("tetrecs.rules");
+            if (property != null) {
+                try {
+                    configured = parse(property);
+                    logger.info("Playing with rules {}", configured.format());
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Ignoring tetrecs.rules: {}", e.getMessage());
+                }
+            }
+        }
+        return configured;
+    }
+
+    /**
+     * Read rules written as {@code name=value} pairs, taking anything left out from the standard rules
+     * @param text the rules
+     * @return the rules
+     * @throws IllegalArgumentException if a name is unknown or a value is not a valid number
+     */
+    public static Rules parse(String text) {
+        var rules = STANDARD;
+        for (String pair : text.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected name=value: " + pair.trim());
+            }
+            try {
+                rules = rules.with(pair.substring(0, equals).trim(), Integer.parseInt(pair.substring(equals + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + pair.trim());
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Copy these rules with one parameter changed
+     * @param name the parameter, one of {@link #NAMES}
+     * @param value its new value
+     * @return the new rules
+     * @throws IllegalArgumentException if the name is unknown or the rules would be invalid
+     */
+    public Rules with(String name, int value) {
+        return switch (name) {
+            case "startDelay" -> new Rules(value, delayStep, minimumDelay, pointsPerLevel, pointsPerBlock, lives);
+            case "delayStep" -> new Rules(startDelay, value, minimumDelay, pointsPerLevel, pointsPerBlock, lives);
+            case "minimumDelay" -> new Rules(startDelay, delayStep, value, pointsPerLevel, pointsPerBlock, lives);
+            case "pointsPerLevel" -> new Rules(startDelay, delayStep, minimumDelay, value, pointsPerBlock, lives);
+            case "pointsPerBlock" -> new Rules(startDelay, delayStep, minimumDelay, pointsPerLevel, value, lives);
+            case "lives" -> new Rules(startDelay, delayStep, minimumDelay, pointsPerLevel, pointsPerBlock, value);
+            default -> throw new IllegalArgumentException("Unknown rule: " + name);
+        };
+    }
+
+    /**
+     * Get the time allowed to place a piece
+     * @param level the current level
+     * @return milliseconds
+     */
+    public int timerDelay(int level) {
+        return Math.max(minimumDelay, startDelay - delayStep * level);
+    }
+
+    /**
+     * Get the points for a placement
+     * @param lines number of lines cleared
+     * @param blocks number of blocks cleared
+     * @param multiplier the current multiplier
+     * @return points, 0 if no lines were cleared
+     */
+    public int points(int lines, int blocks, int multiplier) {
+        return lines * blocks * pointsPerBlock * multiplier;
+    }
+
+    /**
+     * Get the level a score has earned
+     * @param score the score
+     * @return level
+     */
+    public int level(int score) {
+        return score / pointsPerLevel;
+    }
+
+    /**
+     * Write these rules as {@code name=value} pairs that {@link #parse(String)} reads back
+     * @return the rules as text
+     */
+    public String format() {
+        return format(startDelay, delayStep, minimumDelay, pointsPerLevel, pointsPerBlock, lives);
+    }
+
+    private static String format(int... values) {
+        var text = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(NAMES[i]).append('=').append(values[i]);
+        }
+        return text.toString();
+    }
+}
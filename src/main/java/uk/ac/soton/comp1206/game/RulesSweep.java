@@ -0,0 +1,302 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Tunes the difficulty curve by playing simulated games under every combination of candidate {@link Rules} and ranking
+ * them by how close sessions come to a target length and how widely scores spread.
+ *
+ * Each simulated player places pieces with {@link BoardSearch}, as the spectator bots do, but takes a random time to
+ * think about each move: log-normally distributed around a median thinking time. If the thought takes longer than the
+ * timer allows, or the piece does not fit anywhere, the player loses a life exactly as in {@link Game#timerExpired()}.
+ * Session length is the game time until the last life is lost. Every set of rules is played with the same pieces and
+ * thinking times, so differences between them come from the rules and not from luck.
+ *
+ * Games are shared out across every core. Sets are ranked by how far the median session is from the target, in bands
+ * of 5%, then by score spread, widest first, since a wider spread tells strong and weak play apart better.
+ *
+ * Usage: {@code RulesSweep [name=value,value,...]... [games=N] [target=seconds] [think=millis] [sigma=S] [seed=N]
+ * [top=N]}, where name is any of {@link Rules#NAMES}, for example
+ * {@code RulesSweep startDelay=10000,12000,14000 delayStep=250,500 pointsPerLevel=1000,2000 target=600}
+ */
+public class RulesSweep {
+
+    private static final Logger logger = LogManager.getLogger(RulesSweep.class);
+
+    private static final int COLS = 5;
+    private static final int ROWS = 5;
+
+    /**
+     * Pieces after which a game is cut short, in case some rules let the simulated player go on forever
+     */
+    private static final int MAX_PIECES = 20_000;
+
+    private final int games;
+    private final int thinkMillis;
+    private final double sigma;
+    private final long seed;
+
+    /**
+     * The outcome of one simulated game
+     */
+    record Session(int pieces, long millis, int score, int level) {
+    }
+
+    /**
+     * The outcomes of every game under one set of rules
+     */
+    record Outcome(Rules rules, double medianSeconds, double meanPieces, int medianScore, int lowScore,
+                   int highScore, double medianLevel) {
+
+        /**
+         * Range of the middle 80% of scores relative to the median
+         */
+        double spread() {
+            return (highScore - lowScore) / (double) Math.max(1, medianScore);
+        }
+
+        /**
+         * How far the median session is from the target, as a fraction of the target
+         */
+        double lengthError(double targetSeconds) {
+            return Math.abs(medianSeconds - targetSeconds) / targetSeconds;
+        }
+    }
+
+    /**
+     * Create a sweep
+     * @param games games played under each set of rules
+     * @param thinkMillis median time the simulated player takes over a move
+     * @param sigma spread of the thinking time, the standard deviation of its logarithm
+     * @param seed seed for the pieces and thinking times
+     */
+    public RulesSweep(int games, int thinkMillis, double sigma, long seed) {
+        this.games = games;
+        this.thinkMillis = thinkMillis;
+        this.sigma = sigma;
+        this.seed = seed;
+    }
+
+    /**
+     * Run a sweep and print the ranking
+     * @param args candidate values for each rule, and options
+     */
+    public static void main(String[] args) {
+        Configurator.setRootLevel(Level.WARN);
+        var candidates = new LinkedHashMap<String, int[]>();
+        var options = new LinkedHashMap<>(Map.of("games", "100", "target", "300", "think", "2500", "sigma", "0.6",
+                "seed", "1", "top", "10"));
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                System.err.println("Expected name=value: " + arg);
+                System.exit(2);
+            }
+            String name = arg.substring(0, equals);
+            String value = arg.substring(equals + 1);
+            if (options.containsKey(name)) {
+                options.put(name, value);
+            } else {
+                candidates.put(name, Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray());
+            }
+        }
+
+        List<Rules> grid;
+        try {
+            grid = grid(Rules.getDefault(), candidates);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        double target = Double.parseDouble(options.get("target"));
+        var sweep = new RulesSweep(Integer.parseInt(options.get("games")), Integer.parseInt(options.get("think")),
+                Double.parseDouble(options.get("sigma")), Long.parseLong(options.get("seed")));
+
+        System.out.printf(Locale.ROOT, "Playing %d games under each of %d sets of rules on %d cores%n", sweep.games,
+                grid.size(), Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        var outcomes = sweep.run(grid);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        outcomes.sort(ranking(target));
+        int top = Math.min(outcomes.size(), Integer.parseInt(options.get("top")));
+        System.out.printf("%n%-4s %9s %8s %8s %8s %8s %7s %6s  %s%n", "rank", "session", "pieces", "level", "p10",
+                "median", "p90", "spread", "rules");
+        for (int i = 0; i < top; i++) {
+            var outcome = outcomes.get(i);
+            System.out.printf(Locale.ROOT, "%-4d %8.0fs %8.1f %8.1f %8d %8d %7d %6.2f  %s%n", i + 1,
+                    outcome.medianSeconds(), outcome.meanPieces(), outcome.medianLevel(), outcome.lowScore(),
+                    outcome.medianScore(), outcome.highScore(), outcome.spread(), outcome.rules().format());
+        }
+        System.out.printf(Locale.ROOT, "%nTarget session %.0fs, %d games in %.1f s%n", target,
+                (long) sweep.games * grid.size(), seconds);
+    }
+
+    /**
+     * Every combination of the candidate values, with the other rules taken from the base rules
+     * @param base rules to start from
+     * @param candidates values to try for each named rule
+     * @return the sets of rules
+     * @throws IllegalArgumentException if a name is unknown or a combination is invalid
+     */
+    static List<Rules> grid(Rules base, Map<String, int[]> candidates) {
+        var grid = new ArrayList<Rules>();
+        grid.add(base);
+        for (var entry : candidates.entrySet()) {
+            var next = new ArrayList<Rules>();
+            for (var rules : grid) {
+                for (int value : entry.getValue()) {
+                    next.add(rules.with(entry.getKey(), value));
+                }
+            }
+            grid = next;
+        }
+        return grid;
+    }
+
+    /**
+     * Play every game under every set of rules
+     * @param grid the sets of rules
+     * @return one outcome for each set, in the same order
+     */
+    List<Outcome> run(List<Rules> grid) {
+        var sessions = new Session[grid.size()][games];
+        //One task per game rather than per set, so a set with long games does not hold up the rest
+        IntStream.range(0, grid.size() * games).parallel().forEach(task -> {
+            int set = task / games;
+            int game = task % games;
+            sessions[set][game] = play(grid.get(set), seed * 1_000_003 + game);
+        });
+
+        var outcomes = new ArrayList<Outcome>();
+        for (int set = 0; set < grid.size(); set++) {
+            outcomes.add(summarise(grid.get(set), sessions[set]));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Play one game to the end
+     * @param rules the rules
+     * @param gameSeed seed for the pieces and thinking times, the same for every set of rules
+     * @return how the game went
+     */
+    Session play(Rules rules, long gameSeed) {
+        var sequence = new PieceSequence(PieceRandomizer.create("uniform", gameSeed), PieceSequence.DEFAULT_LOOKAHEAD);
+        var thinking = new Random(gameSeed);
+        int[] cells = new int[COLS * ROWS];
+        var current = GamePiece.createPiece(sequence.next());
+        var following = GamePiece.createPiece(sequence.next());
+        int score = 0;
+        int level = 0;
+        int lives = rules.lives();
+        int multiplier = 1;
+        long millis = 0;
+        int pieces = 0;
+
+        while (lives > 0 && pieces < MAX_PIECES) {
+            int delay = rules.timerDelay(level);
+            long think = Math.round(thinkMillis * Math.exp(sigma * thinking.nextGaussian()));
+            var move = think < delay
+                    ? BoardSearch.best(cells, COLS, ROWS, current.getBlocks(), following.getBlocks(),
+                            GamePiece.createPiece(sequence.peek(0)).getBlocks(), () -> false)
+                    : null;
+            if (move == null) {
+                //Out of time, or nowhere to go: lose a life and the piece, as Game.timerExpired does
+                millis += delay;
+                lives--;
+                multiplier = 1;
+                current = following;
+                following = GamePiece.createPiece(sequence.next());
+                if (lives > 0) {
+                    current = following;
+                    following = GamePiece.createPiece(sequence.next());
+                }
+                continue;
+            }
+
+            millis += think;
+            pieces++;
+            if (move.swap()) {
+                var swapped = current;
+                current = following;
+                following = swapped;
+            }
+            BoardSearch.place(cells, COLS, BoardSearch.rotations(current.getBlocks())[move.rotation()], move.x(),
+                    move.y());
+            int lines = fullLines(cells);
+            if (lines > 0) {
+                int before = filled(cells);
+                BoardSearch.clearLines(cells, COLS, ROWS);
+                score += rules.points(lines, before - filled(cells), multiplier);
+                level = Math.max(level, rules.level(score));
+                multiplier++;
+            } else {
+                multiplier = 1;
+            }
+            current = following;
+            following = GamePiece.createPiece(sequence.next());
+        }
+        return new Session(pieces, millis, score, level);
+    }
+
+    private static Outcome summarise(Rules rules, Session[] sessions) {
+        long[] millis = Arrays.stream(sessions).mapToLong(Session::millis).sorted().toArray();
+        int[] scores = Arrays.stream(sessions).mapToInt(Session::score).sorted().toArray();
+        int[] levels = Arrays.stream(sessions).mapToInt(Session::level).sorted().toArray();
+        double pieces = Arrays.stream(sessions).mapToInt(Session::pieces).average().orElse(0);
+        return new Outcome(rules, millis[millis.length / 2] / 1000.0, pieces, scores[scores.length / 2],
+                scores[scores.length / 10], scores[scores.length * 9 / 10], levels[levels.length / 2]);
+    }
+
+    /**
+     * Closest median session to the target first, in bands of 5%, then widest score spread
+     */
+    static Comparator<Outcome> ranking(double targetSeconds) {
+        return Comparator.<Outcome>comparingLong(outcome -> Math.round(outcome.lengthError(targetSeconds) * 20))
+                .thenComparing(Comparator.comparingDouble(Outcome::spread).reversed());
+    }
+
+    private static int fullLines(int[] cells) {
+        int lines = 0;
+        for (int y = 0; y < ROWS; y++) {
+            boolean full = true;
+            for (int x = 0; x < COLS && full; x++) {
+                full = cells[y * COLS + x] != 0;
+            }
+            lines += full ? 1 : 0;
+        }
+        for (int x = 0; x < COLS; x++) {
+            boolean full = true;
+            for (int y = 0; y < ROWS && full; y++) {
+                full = cells[y * COLS + x] != 0;
+            }
+            lines += full ? 1 : 0;
+        }
+        return lines;
+    }
+
+    private static int filled(int[] cells) {
+        int filled = 0;
+        for (int cell : cells) {
+            if (cell != 0) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+}
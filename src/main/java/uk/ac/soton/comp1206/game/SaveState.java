@@ -0,0 +1,216 @@
+package uk.ac.soton.comp1206.game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything needed to carry on a game exactly where it stopped, with a compact binary encoding.
+ *
+ * Board cells and upcoming pieces are packed two to a byte as 4-bit nibbles, and each piece in hand is packed into one
+ * byte with its rotation, so a 5x5 game encodes to well under a hundred bytes. Decoding reads straight from a buffer,
+ * which can be a memory mapped file, without parsing any text. The arrays are owned by the save state and must not be
+ * modified.
+ *
+ * @param cols number of columns
+ * @param rows number of rows
+ * @param cells board contents, indexed by {@code y * cols + x}
+ * @param currentPiece piece number of the current piece
+ * @param currentRotation quarter turns of the current piece
+ * @param followingPiece piece number of the following piece
+ * @param followingRotation quarter turns of the following piece
+ * @param upcoming piece numbers already drawn from the randomizer, in order
+ * @param randomizer name of the randomizer
+ * @param randomizerState full state of the randomizer
+ * @param score the score
+ * @param level the level
+ * @param lives lives left
+ * @param multiplier the score multiplier
+ * @param aimX column of the keyboard aim
+ * @param aimY row of the keyboard aim
+ * @param remainingMillis time left to place the current piece
+ */
+public record SaveState(int cols, int rows, int[] cells,
+                        int currentPiece, int currentRotation,
+                        int followingPiece, int followingRotation,
+                        int[] upcoming, String randomizer, byte[] randomizerState,
+                        int score, int level, int lives, double multiplier,
+                        int aimX, int aimY, long remainingMillis) {
+
+    /**
+     * Version of the encoding, bumped whenever the layout changes
+     */
+    public static final int FORMAT = 1;
+
+    /**
+     * Capture the state of a game. Must be called on the thread that owns the game.
+     * @param game the game
+     * @return the save state
+     */
+    public static SaveState capture(Game game) {
+        var grid = game.getGrid();
+        int cols = grid.getCols();
+        int rows = grid.getRows();
+        int[] cells = new int[cols * rows];
+        BoardSearch.copy(grid, cells);
+
+        var sequence = game.getPieceSequence();
+        int[] upcoming = new int[sequence.getBuffered()];
+        for (int i = 0; i < upcoming.length; i++) {
+            upcoming[i] = sequence.peek(i);
+        }
+        var random = sequence.getRandomizer();
+        var state = ByteBuffer.allocate(random.getStateSize());
+        random.writeState(state);
+
+        var current = game.getCurrentPiece();
+        var following = game.getFollowingPiece();
+        return new SaveState(cols, rows, cells,
+                current.getValue() - 1, current.getRotation(),
+                following.getValue() - 1, following.getRotation(),
+                upcoming, random.getName(), state.array(),
+                game.getScore(), game.getLevel(), game.getLives(), game.getMultiplier(),
+                game.getAimX(), game.getAimY(),
+                TimeUnit.NANOSECONDS.toMillis(game.getClock().getRemainingNanos()));
+    }
+
+    /**
+     * Create a piece sequence that carries on dealing the saved pieces, for a game about to be restored
+     * @return the sequence
+     */
+    public PieceSequence createSequence() {
+        var random = PieceRandomizer.create(randomizer, 0);
+        random.readState(ByteBuffer.wrap(randomizerState));
+        int lookahead = Integer.getInteger("tetrecs.lookahead", PieceSequence.DEFAULT_LOOKAHEAD);
+        var sequence = new PieceSequence(random, lookahead);
+        sequence.restore(upcoming);
+        return sequence;
+    }
+
+    /**
+     * Get the number of bytes {@link #encode(ByteBuffer)} writes
+     * @return encoded size
+     */
+    public int encodedSize() {
+        return 1 + 2 + nibbleBytes(cells.length) + 2 + 1 + nibbleBytes(upcoming.length)
+                + 1 + randomizer.length() + 1 + randomizerState.length
+                + 4 + 4 + 1 + 8 + 2 + 4;
+    }
+
+    /**
+     * Write the encoded state at the buffer's position
+     * @param buffer destination, with at least {@link #encodedSize()} bytes remaining
+     */
+    public void encode(ByteBuffer buffer) {
+        if (cols > 255 || rows > 255 || upcoming.length > 255) {
+            throw new IllegalArgumentException("Game too large to save");
+        }
+        buffer.put((byte) FORMAT);
+        buffer.put((byte) cols).put((byte) rows);
+        putNibbles(buffer, cells);
+        buffer.put(packPiece(currentPiece, currentRotation));
+        buffer.put(packPiece(followingPiece, followingRotation));
+        buffer.put((byte) upcoming.length);
+        putNibbles(buffer, upcoming);
+
+        byte[] name = randomizer.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte) name.length).put(name);
+        buffer.put((byte) randomizerState.length).put(randomizerState);
+
+        buffer.putInt(score).putInt(level).put((byte) lives).putDouble(multiplier);
+        buffer.put((byte) aimX).put((byte) aimY);
+        buffer.putInt((int) Math.min(Integer.MAX_VALUE, remainingMillis));
+    }
+
+    /**
+     * Read an encoded state from the buffer's position
+     * @param buffer source
+     * @return the save state
+     * @throws IllegalArgumentException if the buffer does not hold a valid save state
+     */
+    public static SaveState decode(ByteBuffer buffer) {
+        try {
+            int format = buffer.get();
+            if (format != FORMAT) {
+                throw new IllegalArgumentException("Unknown save format: " + format);
+            }
+            int cols = buffer.get() & 0xFF;
+            int rows = buffer.get() & 0xFF;
+            int[] cells = getNibbles(buffer, cols * rows);
+            int current = buffer.get() & 0xFF;
+            int following = buffer.get() & 0xFF;
+            int[] upcoming = getNibbles(buffer, buffer.get() & 0xFF);
+
+            byte[] name = new byte[buffer.get() & 0xFF];
+            buffer.get(name);
+            byte[] randomizerState = new byte[buffer.get() & 0xFF];
+            buffer.get(randomizerState);
+
+            int score = buffer.getInt();
+            int level = buffer.getInt();
+            int lives = buffer.get();
+            double multiplier = buffer.getDouble();
+            int aimX = buffer.get() & 0xFF;
+            int aimY = buffer.get() & 0xFF;
+            long remainingMillis = buffer.getInt();
+
+            var state = new SaveState(cols, rows, cells,
+                    current >> 2, current & 3, following >> 2, following & 3,
+                    upcoming, new String(name, StandardCharsets.US_ASCII), randomizerState,
+                    score, level, lives, multiplier, aimX, aimY, remainingMillis);
+            state.validate();
+            return state;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Save state is truncated");
+        }
+    }
+
+    /**
+     * Check that pieces and aim are in range, so a corrupt save is rejected rather than restored
+     */
+    private void validate() {
+        if (cols == 0 || rows == 0 || aimX >= cols || aimY >= rows) {
+            throw new IllegalArgumentException("Bad board size or aim");
+        }
+        if (currentPiece >= GamePiece.PIECES || followingPiece >= GamePiece.PIECES) {
+            throw new IllegalArgumentException("Bad piece in hand");
+        }
+        for (int piece : upcoming) {
+            if (piece >= GamePiece.PIECES) {
+                throw new IllegalArgumentException("Bad upcoming piece: " + piece);
+            }
+        }
+    }
+
+    private static byte packPiece(int piece, int rotation) {
+        return (byte) (piece << 2 | (rotation & 3));
+    }
+
+    private static int nibbleBytes(int count) {
+        return (count + 1) / 2;
+    }
+
+    /**
+     * Write values from 0 to 15 two to a byte, the first in the low nibble
+     */
+    private static void putNibbles(ByteBuffer buffer, int[] values) {
+        for (int i = 0; i < values.length; i += 2) {
+            int low = values[i] & 0xF;
+            int high = i + 1 < values.length ? values[i + 1] & 0xF : 0;
+            buffer.put((byte) (high << 4 | low));
+        }
+    }
+
+    private static int[] getNibbles(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i += 2) {
+            int packed = buffer.get();
+            values[i] = packed & 0xF;
+            if (i + 1 < count) {
+                values[i + 1] = (packed >> 4) & 0xF;
+            }
+        }
+        return values;
+    }
+}
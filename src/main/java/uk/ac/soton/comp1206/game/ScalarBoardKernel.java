@@ -0,0 +1,63 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The board kernel used when the Vector API is not available: scores one board at a time.
+ */
+final class ScalarBoardKernel extends BoardKernel {
+
+    @Override
+    public void evaluate(int[] cells, int stride, int count, int cols, int rows, int[] scores) {
+        for (int board = 0; board < count; board++) {
+            int value = 0;
+            for (int y = 0; y < rows; y++) {
+                int filled = 0;
+                for (int x = 0; x < cols; x++) {
+                    if (cells[(y * cols + x) * stride + board] != 0) {
+                        filled++;
+                    }
+                }
+                value += lineValue(filled, cols);
+            }
+            for (int x = 0; x < cols; x++) {
+                int filled = 0;
+                for (int y = 0; y < rows; y++) {
+                    if (cells[(y * cols + x) * stride + board] != 0) {
+                        filled++;
+                    }
+                }
+                value += lineValue(filled, rows);
+            }
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    if (cells[(y * cols + x) * stride + board] == 0
+                            && blocked(cells, stride, board, cols, rows, x - 1, y)
+                            && blocked(cells, stride, board, cols, rows, x + 1, y)
+                            && blocked(cells, stride, board, cols, rows, x, y - 1)
+                            && blocked(cells, stride, board, cols, rows, x, y + 1)) {
+                        value -= 4;
+                    }
+                }
+            }
+            scores[board] = value;
+        }
+    }
+
+    @Override
+    public int lanes() {
+        return 1;
+    }
+
+    private static int lineValue(int filled, int length) {
+        if (filled == length - 1) {
+            return 6;
+        }
+        if (filled == length - 2) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static boolean blocked(int[] cells, int stride, int board, int cols, int rows, int x, int y) {
+        return x < 0 || x >= cols || y < 0 || y >= rows || cells[(y * cols + x) * stride + board] != 0;
+    }
+}
@@ -0,0 +1,194 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A precomputed table of every occupancy pattern of a small board, answering in constant time how likely the board is
+ * to survive and how many points the next piece is expected to clear from it.
+ *
+ * An occupancy pattern has bit {@code y * cols + x} set for every filled cell. Pieces are assumed to be drawn
+ * uniformly and placed as well as possible, without swapping. Three things are stored for each pattern:
+ * <ul>
+ *     <li>whether every piece has room, so the next piece cannot cost a life, as one bit</li>
+ *     <li>the chance of lasting the table's horizon of pieces without running out of room, as one byte</li>
+ *     <li>the average over all pieces of the most points the piece can score by clearing lines, as one byte</li>
+ * </ul>
+ * No board survives forever against the worst possible draws (three Plus pieces in a row cannot all fit on an empty
+ * 5x5 board), which is why survival is a chance over a fixed horizon rather than a yes or no.
+ *
+ * The table is written by {@link TablebaseGenerator} and memory mapped, so opening it costs nothing until patterns are
+ * looked up.
+ */
+public final class Tablebase {
+
+    private static final Logger logger = LogManager.getLogger(Tablebase.class);
+
+    static final int MAGIC = 0x54544253;
+    static final int FORMAT = 1;
+    static final int HEADER = 32;
+
+    /**
+     * Points represented by one unit of a stored value
+     */
+    static final int VALUE_UNIT = 10;
+
+    /**
+     * Stored value of a certain survival
+     */
+    static final int SURVIVAL_SCALE = 255;
+
+    private static Tablebase shared;
+    private static boolean sharedLoaded = false;
+
+    private final int cols;
+    private final int rows;
+    private final int horizon;
+    private final MappedByteBuffer table;
+    private final int survivalOffset;
+    private final int valuesOffset;
+
+    private Tablebase(int cols, int rows, int horizon, MappedByteBuffer table) {
+        this.cols = cols;
+        this.rows = rows;
+        this.horizon = horizon;
+        this.table = table;
+        this.survivalOffset = HEADER + bitmapBytes(cols * rows);
+        this.valuesOffset = survivalOffset + (1 << (cols * rows));
+    }
+
+    /**
+     * Open a table file
+     * @param file the table
+     * @return the table
+     * @throws IOException if the file cannot be read or is not a table
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT) {
+                throw new IOException("Not a tablebase");
+            }
+            int cols = mapped.getInt(8);
+            int rows = mapped.getInt(12);
+            if (cols < 1 || rows < 1 || cols * rows > TablebaseGenerator.MAX_CELLS
+                    || channel.size() < size(cols * rows)) {
+                throw new IOException("Tablebase is truncated");
+            }
+            return new Tablebase(cols, rows, mapped.getInt(16), mapped);
+        }
+    }
+
+    /**
+     * Get the table for the standard board, opening it on first use. The file is read from the tetrecs.tablebase
+     * system property, or tablebase-5x5.bin in the .tetrecs folder of the user's home directory.
+     * @return the table, or null if there is none
+     */
+    public static synchronized Tablebase getShared() {
+        if (!sharedLoaded) {
+            sharedLoaded = true;
+            var file = Path.of(System.getProperty("tetrecs.tablebase",
+                    Path.of(System.getProperty("user.home"), ".tetrecs", "tablebase-5x5.bin").toString()));
+            if (Files.exists(file)) {
+                try {
+                    shared = open(file);
+                    logger.info("Opened {}x{} tablebase {}", shared.cols, shared.rows, file);
+                } catch (IOException e) {
+                    logger.warn("Unable to open tablebase {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Whether this table is for boards of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     * @return true if boards of that size can be looked up
+     */
+    public boolean covers(int cols, int rows) {
+        return this.cols == cols && this.rows == rows;
+    }
+
+    /**
+     * Whether every piece has room on a board
+     * @param occupancy the occupancy pattern
+     * @return true if the next piece is sure to fit
+     */
+    public boolean fitsEveryPiece(int occupancy) {
+        return (table.get(HEADER + (occupancy >>> 3)) >> (occupancy & 7) & 1) != 0;
+    }
+
+    /**
+     * Get the chance of a board lasting the next {@link #getHorizon()} pieces without running out of room
+     * @param occupancy the occupancy pattern
+     * @return chance between 0 and 1
+     */
+    public double getSurvival(int occupancy) {
+        return (table.get(survivalOffset + occupancy) & 0xFF) / (double) SURVIVAL_SCALE;
+    }
+
+    /**
+     * Get the points the next piece is expected to score on a board, before the multiplier
+     * @param occupancy the occupancy pattern
+     * @return expected points
+     */
+    public double getExpectedClear(int occupancy) {
+        return (table.get(valuesOffset + occupancy) & 0xFF) * (double) VALUE_UNIT / GamePiece.PIECES;
+    }
+
+    /**
+     * Get the number of columns the table covers
+     * @return columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows the table covers
+     * @return rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of pieces the survival chance looks ahead
+     * @return horizon
+     */
+    public int getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Work out the occupancy pattern of a flat board
+     * @param cells the board, indexed by {@code y * cols + x}
+     * @return a bit set for every filled cell
+     */
+    public static int occupancy(int[] cells) {
+        int occupancy = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                occupancy |= 1 << i;
+            }
+        }
+        return occupancy;
+    }
+
+    static int bitmapBytes(int cells) {
+        return Math.max(Long.BYTES, (1 << cells) / 8);
+    }
+
+    static long size(int cells) {
+        return HEADER + bitmapBytes(cells) + 2 * (1L << cells);
+    }
+}
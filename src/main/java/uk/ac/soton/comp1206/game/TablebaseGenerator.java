@@ -0,0 +1,320 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@link Tablebase} by working through every occupancy pattern of a board, using every core.
+ *
+ * Each placement of each piece is turned into a bit mask first, so trying a placement is a single AND and clearing
+ * lines is a handful of mask tests. Survival chances are found one piece of lookahead at a time: a board's chance of
+ * lasting n pieces is the average over all pieces of the best chance of lasting n - 1 pieces after placing it. Each
+ * pass reads the previous pass's table and writes a new one, so boards can be shared out between threads freely.
+ *
+ * The 5x5 table needs about a gigabyte of heap while it is built. Usage:
+ * {@code TablebaseGenerator [output] [cols] [rows] [horizon]}, by default {@code tablebase-5x5.bin 5 5 3}
+ */
+public class TablebaseGenerator {
+
+    private static final Logger logger = LogManager.getLogger(TablebaseGenerator.class);
+
+    /**
+     * Largest board that can be tabulated, 2^25 patterns
+     */
+    public static final int MAX_CELLS = 25;
+
+    private final int cols;
+    private final int rows;
+    private final int patterns;
+
+    /**
+     * Placement masks for each piece, without duplicates
+     */
+    private final int[][] placements;
+    private final int[] rowMasks;
+    private final int[] colMasks;
+
+    /**
+     * Number of pieces the survival chance looks ahead
+     */
+    private final int horizon;
+
+    /**
+     * Chance of lasting the horizon for every pattern, filled in by {@link #solve()}
+     */
+    private float[] survival;
+
+    /**
+     * Create a generator for the given board size
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param horizon number of pieces the survival chance looks ahead, at least 1
+     */
+    public TablebaseGenerator(int cols, int rows, int horizon) {
+        if (cols * rows > MAX_CELLS) {
+            throw new IllegalArgumentException("Board too large to tabulate: " + cols + "x" + rows);
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.patterns = 1 << (cols * rows);
+        this.horizon = Math.max(1, Math.min(255, horizon));
+        this.placements = new int[GamePiece.PIECES][];
+        for (int piece = 0; piece < GamePiece.PIECES; piece++) {
+            placements[piece] = placements(GamePiece.createPiece(piece).getBlocks());
+        }
+        rowMasks = new int[rows];
+        for (int y = 0; y < rows; y++) {
+            rowMasks[y] = ((1 << cols) - 1) << (y * cols);
+        }
+        colMasks = new int[cols];
+        for (int x = 0; x < cols; x++) {
+            for (int y = 0; y < rows; y++) {
+                colMasks[x] |= 1 << (y * cols + x);
+            }
+        }
+    }
+
+    /**
+     * Generate a table
+     * @param args optional output file, columns, rows and horizon
+     * @throws IOException if the table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        var output = Path.of(args.length > 0 ? args[0] : "tablebase-5x5.bin");
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int horizon = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        var generator = new TablebaseGenerator(cols, rows, horizon);
+        long start = System.nanoTime();
+        generator.solve();
+        generator.write(output);
+        logger.info("Wrote {} in {} s", output, (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    /**
+     * Work out the chance of every board lasting the horizon
+     */
+    public void solve() {
+        //With no pieces to come, every board survives
+        var previous = new float[patterns];
+        var next = new float[patterns];
+        Arrays.fill(previous, 1);
+        for (int pass = 1; pass <= horizon; pass++) {
+            var from = previous;
+            var to = next;
+            IntStream.range(0, patterns).parallel().forEach(board -> to[board] = survival(from, board));
+            next = previous;
+            previous = to;
+
+            double total = 0;
+            for (float chance : previous) {
+                total += chance;
+            }
+            logger.info("Pass {}: average chance of lasting {} pieces is {}", pass, pass, total / patterns);
+        }
+        survival = previous;
+    }
+
+    /**
+     * Write the table, replacing any existing file only once it is complete
+     * @param file destination
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        if (survival == null) {
+            throw new IllegalStateException("Nothing to write until solved");
+        }
+        var bitmap = new long[Math.max(1, patterns / 64)];
+        IntStream.range(0, bitmap.length).parallel().forEach(word -> bitmap[word] = fits(word));
+        var chances = new byte[patterns];
+        IntStream.range(0, patterns).parallel().forEach(board ->
+                chances[board] = (byte) Math.round(survival[board] * Tablebase.SURVIVAL_SCALE));
+        var values = new byte[patterns];
+        IntStream.range(0, patterns).parallel().forEach(board -> values[board] = value(board));
+
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            var header = ByteBuffer.allocate(Tablebase.HEADER);
+            header.putInt(Tablebase.MAGIC).putInt(Tablebase.FORMAT).putInt(cols).putInt(rows).putInt(horizon);
+            header.rewind();
+            out.write(header);
+
+            //Little endian, so bit n of the table is bit (n % 8) of byte n / 8
+            var bits = ByteBuffer.allocate(Tablebase.bitmapBytes(cols * rows)).order(ByteOrder.LITTLE_ENDIAN);
+            bits.asLongBuffer().put(bitmap);
+            writeFully(out, bits);
+            writeFully(out, ByteBuffer.wrap(chances));
+            writeFully(out, ByteBuffer.wrap(values));
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The chance of a board lasting one more piece than the previous table looked ahead, with the best placement of
+     * whichever piece is drawn
+     */
+    private float survival(float[] previous, int board) {
+        float total = 0;
+        for (int[] piece : placements) {
+            float best = 0;
+            for (int mask : piece) {
+                if ((board & mask) == 0) {
+                    best = Math.max(best, previous[clear(board | mask)]);
+                    if (best == 1) {
+                        break;
+                    }
+                }
+            }
+            total += best;
+        }
+        return total / placements.length;
+    }
+
+    /**
+     * Which boards in a word of 64 have room for every piece
+     */
+    private long fits(int word) {
+        long bits = 0;
+        for (int i = 0; i < 64 && word * 64 + i < patterns; i++) {
+            int board = word * 64 + i;
+            boolean all = true;
+            for (int[] piece : placements) {
+                boolean any = false;
+                for (int mask : piece) {
+                    if ((board & mask) == 0) {
+                        any = true;
+                        break;
+                    }
+                }
+                if (!any) {
+                    all = false;
+                    break;
+                }
+            }
+            if (all) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * The total over every piece of the best points it can clear, in units of {@link Tablebase#VALUE_UNIT} and capped
+     * at 255
+     */
+    private byte value(int board) {
+        int total = 0;
+        for (int[] piece : placements) {
+            int best = 0;
+            for (int mask : piece) {
+                if ((board & mask) == 0) {
+                    best = Math.max(best, points(board | mask));
+                }
+            }
+            total += best;
+        }
+        return (byte) Math.min(255, total / Tablebase.VALUE_UNIT);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Remove every full row and column
+     */
+    private int clear(int board) {
+        return board & ~fullLines(board);
+    }
+
+    /**
+     * Points for the lines a board would clear, scored like Game.updateScore with no multiplier
+     */
+    private int points(int board) {
+        int full = fullLines(board);
+        if (full == 0) {
+            return 0;
+        }
+        int lines = 0;
+        for (int mask : rowMasks) {
+            if ((board & mask) == mask) {
+                lines++;
+            }
+        }
+        for (int mask : colMasks) {
+            if ((board & mask) == mask) {
+                lines++;
+            }
+        }
+        return lines * Integer.bitCount(full) * 10;
+    }
+
+    private int fullLines(int board) {
+        int full = 0;
+        for (int mask : rowMasks) {
+            if ((board & mask) == mask) {
+                full |= mask;
+            }
+        }
+        for (int mask : colMasks) {
+            if ((board & mask) == mask) {
+                full |= mask;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Every distinct cell mask a piece can cover on the board, over all rotations and positions
+     */
+    private int[] placements(int[][] blocks) {
+        var masks = IntStream.builder();
+        for (int[][] rotation : BoardSearch.rotations(blocks)) {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    int mask = mask(rotation, x, y);
+                    if (mask != 0) {
+                        masks.add(mask);
+                    }
+                }
+            }
+        }
+        return masks.build().distinct().toArray();
+    }
+
+    /**
+     * The cells a piece covers centred on (x, y), or 0 if part of it is off the board
+     */
+    private int mask(int[][] blocks, int x, int y) {
+        int mask = 0;
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                if (blocks[i][j] == 0) {
+                    continue;
+                }
+                int cellX = x + i - 1;
+                int cellY = y + j - 1;
+                if (cellX < 0 || cellX >= cols || cellY < 0 || cellY >= rows) {
+                    return 0;
+                }
+                mask |= 1 << (cellY * cols + cellX);
+            }
+        }
+        return mask;
+    }
+}
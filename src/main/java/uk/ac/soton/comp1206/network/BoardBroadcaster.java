@@ -0,0 +1,195 @@
+package uk.ac.soton.comp1206.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GridListener;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.GridChange;
+
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasts the state of a Grid to the other players in a channel as compact deltas rather than full boards.
+ *
+ * Cells that change in the Grid are marked dirty. Changes are coalesced and sent at most once per send interval, as
+ * a delta holding only the cells that changed since the previous version. Every few sends, or whenever a delta would be
+ * larger than the whole board, a keyframe holding every cell is sent instead so that late joiners and receivers that
+ * have missed a version can resynchronise.
+ *
+ * Messages are built on the broadcaster's own thread, so it never reads the Grid there. Instead it keeps its own copy
+ * of the cells, updated from each change set on the thread that changed the Grid, and encodes from that copy. It must
+ * be created on that same thread.
+ *
+ * The server relays BOARD messages to the rest of the channel over an ordered connection and has no way of routing
+ * acknowledgements back, so the last version sent is treated as the last acknowledged one. BoardDecoder is the
+ * receiving side.
+ *
+ * Messages look like {@code BOARD K<version> <hex cells>} for keyframes and
+ * {@code BOARD D<version> <index>:<hex value>,...} for deltas.
+ */
+public class BoardBroadcaster implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(BoardBroadcaster.class);
+
+    /**
+     * Default minimum time between two board messages
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    /**
+     * Default number of messages between keyframes
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 20;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Communicator communicator;
+    private final Grid grid;
+    private final long intervalMillis;
+    private final int keyframeInterval;
+
+    private final ScheduledExecutorService scheduler;
+    private final GridListener listener = this::gridChanged;
+
+    /**
+     * Cells changed since the last message, indexed by y * cols + x
+     */
+    private final BitSet dirty;
+
+    /**
+     * Copy of the grid's cells as of the last change set, indexed by y * cols + x. Guarded by this.
+     */
+    private final int[] cells;
+
+    private int version = 0;
+    private int sinceKeyframe = 0;
+    private boolean flushScheduled = false;
+    private long lastSent = 0;
+
+    /**
+     * Create a broadcaster for the given grid with the default send interval and keyframe interval
+     * @param communicator communicator to send board messages through
+     * @param grid grid to broadcast
+     */
+    public BoardBroadcaster(Communicator communicator, Grid grid) {
+        this(communicator, grid, DEFAULT_INTERVAL_MILLIS, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Create a broadcaster for the given grid
+     * @param communicator communicator to send board messages through
+     * @param grid grid to broadcast
+     * @param intervalMillis minimum time between two board messages
+     * @param keyframeInterval number of messages between keyframes
+     */
+    public BoardBroadcaster(Communicator communicator, Grid grid, long intervalMillis, int keyframeInterval) {
+        this.communicator = communicator;
+        this.grid = grid;
+        this.intervalMillis = intervalMillis;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.dirty = new BitSet(grid.getCols() * grid.getRows());
+        this.cells = new int[grid.getCols() * grid.getRows()];
+        for (int index = 0; index < cells.length; index++) {
+            cells[index] = grid.get(index % grid.getCols(), index / grid.getCols());
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "Board Broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //Watch the grid, receiving each move as one change set
+        grid.addListener(listener);
+    }
+
+    /**
+     * Send a keyframe straight away, for example when a game starts or a new player joins
+     */
+    public synchronized void sendKeyframe() {
+        sinceKeyframe = keyframeInterval;
+        send();
+    }
+
+    /**
+     * Copy the changed cells' new values, mark them dirty and make sure a flush is scheduled
+     * @param change the cells that changed
+     */
+    private synchronized void gridChanged(GridChange change) {
+        for (int i = 0; i < change.size(); i++) {
+            int index = change.getIndex(i);
+            cells[index] = change.getNewValue(i);
+            dirty.set(index);
+        }
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        long wait = Math.max(0, lastSent + intervalMillis - System.currentTimeMillis());
+        scheduler.schedule(this::flush, wait, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send everything that has changed since the last message
+     */
+    private synchronized void flush() {
+        flushScheduled = false;
+        if (!dirty.isEmpty()) {
+            send();
+        }
+    }
+
+    /**
+     * Build and send the next message, choosing between a delta and a keyframe
+     */
+    private void send() {
+        version++;
+        String message;
+        //A delta entry costs several characters, a keyframe one per cell
+        if (sinceKeyframe >= keyframeInterval || dirty.cardinality() * 4 >= cells.length) {
+            message = encodeKeyframe();
+            sinceKeyframe = 0;
+        } else {
+            message = encodeDelta();
+            sinceKeyframe++;
+        }
+        dirty.clear();
+        lastSent = System.currentTimeMillis();
+        communicator.send(message);
+    }
+
+    private String encodeKeyframe() {
+        var builder = new StringBuilder(16 + cells.length);
+        builder.append("BOARD K").append(version).append(' ');
+        for (int value : cells) {
+            builder.append(HEX[value & 0xF]);
+        }
+        return builder.toString();
+    }
+
+    private String encodeDelta() {
+        var builder = new StringBuilder(16 + dirty.cardinality() * 5);
+        builder.append("BOARD D").append(version).append(' ');
+        boolean first = true;
+        for (int index = dirty.nextSetBit(0); index >= 0; index = dirty.nextSetBit(index + 1)) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            builder.append(index).append(':').append(HEX[cells[index] & 0xF]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stop watching the grid and cancel any pending sends
+     */
+    @Override
+    public void close() {
+        grid.removeListener(listener);
+        scheduler.shutdownNow();
+        logger.info("Board broadcaster stopped after {} versions", version);
+    }
+}
@@ -0,0 +1,148 @@
+package uk.ac.soton.comp1206.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.BitSet;
+
+/**
+ * Rebuilds another player's board from the messages sent by their BoardBroadcaster.
+ *
+ * Keyframes replace the whole board. Deltas are only applied if they follow on directly from the version currently
+ * held; if a version has been missed the board is marked out of date and deltas are ignored until the next keyframe.
+ * The older plain format of space separated values is still understood as a full board.
+ *
+ * Only the cells touched by the last message are reported as changed, so receivers can repaint just those.
+ */
+public class BoardDecoder {
+
+    private static final Logger logger = LogManager.getLogger(BoardDecoder.class);
+
+    private final int cols;
+    private final int rows;
+    private final int[] cells;
+    private final BitSet changed;
+
+    private int version = -1;
+    private boolean synced = false;
+
+    /**
+     * Create a decoder for a board of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public BoardDecoder(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cells = new int[cols * rows];
+        this.changed = new BitSet(cols * rows);
+    }
+
+    /**
+     * Apply the board part of a BOARD message, that is everything after {@code BOARD <player>:}
+     * @param payload the board payload
+     * @return true if any cell changed
+     */
+    public boolean apply(String payload) {
+        changed.clear();
+        if (payload.isEmpty()) {
+            return false;
+        }
+        try {
+            switch (payload.charAt(0)) {
+                case 'K' -> applyKeyframe(payload);
+                case 'D' -> applyDelta(payload);
+                default -> applyLegacy(payload);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Malformed board message: {}", payload);
+            synced = false;
+        }
+        return !changed.isEmpty();
+    }
+
+    private void applyKeyframe(String payload) {
+        int space = payload.indexOf(' ');
+        int newVersion = Integer.parseInt(payload, 1, space, 10);
+        for (int i = 0; i < cells.length; i++) {
+            set(i, Character.digit(payload.charAt(space + 1 + i), 16));
+        }
+        version = newVersion;
+        synced = true;
+    }
+
+    private void applyDelta(String payload) {
+        int space = payload.indexOf(' ');
+        int newVersion = Integer.parseInt(payload, 1, space, 10);
+        if (!synced || newVersion != version + 1) {
+            //Missed an update, wait for the next keyframe
+            synced = false;
+            return;
+        }
+        int position = space + 1;
+        while (position < payload.length()) {
+            int colon = payload.indexOf(':', position);
+            int index = Integer.parseInt(payload, position, colon, 10);
+            set(index, Character.digit(payload.charAt(colon + 1), 16));
+            position = colon + 3;
+        }
+        version = newVersion;
+    }
+
+    private void applyLegacy(String payload) {
+        String[] values = payload.trim().split(" ");
+        for (int i = 0; i < cells.length && i < values.length; i++) {
+            set(i, Integer.parseInt(values[i]));
+        }
+        synced = false;
+    }
+
+    private void set(int index, int value) {
+        if (cells[index] != value) {
+            cells[index] = value;
+            changed.set(index);
+        }
+    }
+
+    /**
+     * Get the value of a cell
+     * @param x column
+     * @param y row
+     * @return the value
+     */
+    public int get(int x, int y) {
+        return cells[y * cols + x];
+    }
+
+    /**
+     * Get the cells changed by the last message, indexed by y * cols + x. The set is reused between messages.
+     * @return changed cells
+     */
+    public BitSet getChanged() {
+        return changed;
+    }
+
+    /**
+     * Whether the board is known to be up to date
+     * @return true if the last keyframe and every delta since have been applied
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Get the number of columns
+     * @return columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows
+     * @return rows
+     */
+    public int getRows() {
+        return rows;
+    }
+}
@@ -1,17 +1,44 @@
 package uk.ac.soton.comp1206.network;
 
 import com.neovisionaries.ws.client.*;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.storage.Outbox;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
  *
+ * Messages arrive on the web socket's reader thread. Listeners added with {@link #addListener} are UI listeners: the
+ * reader thread queues each message, and the queue is delivered to them on the JavaFX thread in batches, with one
+ * delivery scheduled however many messages arrive while the JavaFX thread is busy. Within a batch, a state message
+ * that a later one in the same batch replaces, such as an earlier score for the same player, is dropped. Listeners
+ * added with {@link #addDirectListener} are called on the reader thread straight away, for work that does not touch
+ * the scene graph.
+ *
+ * Messages that must not be lost, such as high scores, are sent with {@link #sendReliably} through an {@link Outbox}
+ * on disk. They are sent in batches whenever the connection is up, and only removed from the outbox once delivered: a
+ * high score when the server's NEWSCORE reply arrives, anything else once its frame has been written to the socket.
+ * With an outbox set, a dropped connection is reconnected in the background and anything not yet delivered is sent
+ * again, so the game never waits on the network.
+ *
  * YOU DO NOT NEED TO WORRY ABOUT THIS CLASS! Leave it be :-)
  */
 public class Communicator {
@@ -19,11 +46,68 @@ public class Communicator {
     private static final Logger logger = LogManager.getLogger(Communicator.class);
 
     /**
-     * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
+     * Most messages delivered in one batch, so a flood is spread over several pulses rather than stalling one
+     */
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages on
+     * the JavaFX thread. Listeners are added and cleared on the JavaFX thread while messages arrive on the reader
+     * thread, so the list is copied on write.
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private final List<CommunicationsListener> handlers = new CopyOnWriteArrayList<>();
 
-    private WebSocket ws = null;
+    /**
+     * Listeners called on the reader thread as each message arrives
+     */
+    private final List<CommunicationsListener> directHandlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Messages waiting to be delivered to the UI listeners
+     */
+    private final Queue<String> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+    private final Executor uiThread;
+    private final Runnable deliver = this::deliver;
+
+    /**
+     * The batch being delivered and the last position of each state message in it, only used on the UI thread
+     */
+    private final List<String> batch = new ArrayList<>(MAX_BATCH);
+    private final Map<String, Integer> latest = new HashMap<>();
+
+    /**
+     * Most outbox messages waiting for delivery at once
+     */
+    private static final int OUTBOX_BATCH = 32;
+
+    /**
+     * Time after which an outbox message not yet acknowledged is sent again
+     */
+    private static final long RESEND_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    /**
+     * How often the connection is checked, and the longest wait between reconnection attempts
+     */
+    private static final long CHECK_SECONDS = 5;
+    private static final long MAX_RECONNECT_SECONDS = 60;
+
+    private volatile Outbox outbox;
+    private final Object outboxLock = new Object();
+    private ScheduledExecutorService outboxThread;
+
+    /**
+     * Outbox messages sent and not yet acknowledged: when each was sent, and the reply or the written frame that will
+     * acknowledge it
+     */
+    private final Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> awaitingReply = new ConcurrentHashMap<>();
+    private final Map<String, Long> awaitingFrame = new ConcurrentHashMap<>();
+
+    private long reconnectSeconds = CHECK_SECONDS;
+    private long nextReconnect = 0;
+
+    private volatile WebSocket ws = null;
 
     /**
      * Create a new communicator to the given web socket server
@@ -31,6 +115,17 @@ public class Communicator {
      * @param server server to connect to
      */
     public Communicator(String server) {
+        this(server, Platform::runLater);
+    }
+
+    /**
+     * Create a new communicator to the given web socket server, delivering to UI listeners on the given thread
+     *
+     * @param server server to connect to
+     * @param uiThread runs message deliveries on the thread UI listeners expect
+     */
+    public Communicator(String server, Executor uiThread) {
+        this.uiThread = uiThread;
 
         try {
             var socketFactory = new WebSocketFactory();
@@ -72,6 +167,31 @@ public class Communicator {
                 }
             });
 
+            //Outbox delivery, these listeners are carried over when the socket is recreated to reconnect
+            ws.addListener(new WebSocketAdapter() {
+                @Override
+                public void onConnected(WebSocket websocket, Map<String, List<String>> headers) {
+                    drainOutbox();
+                }
+                @Override
+                public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+                                           WebSocketFrame clientCloseFrame, boolean closedByServer) {
+                    //Anything in flight may not have arrived, so it is all sent again after reconnecting
+                    sentAt.clear();
+                    awaitingReply.clear();
+                    awaitingFrame.clear();
+                }
+                @Override
+                public void onFrameSent(WebSocket websocket, WebSocketFrame frame) {
+                    if (frame.isTextFrame() && !awaitingFrame.isEmpty()) {
+                        var id = awaitingFrame.remove(frame.getPayloadText());
+                        if (id != null) {
+                            delivered(id);
+                        }
+                    }
+                }
+            });
+
         } catch (Exception e){
             logger.error("Socket error: " + e.getMessage());
             e.printStackTrace();
@@ -93,7 +213,131 @@ public class Communicator {
     }
 
     /**
-     * Add a new listener to receive messages from the server
+     * Send a message that must not be lost. It is kept in the outbox until it has been delivered, and sent again after
+     * the connection drops or the game restarts. Never waits for the network.
+     *
+     * @param message Message to send
+     */
+    public void sendReliably(String message) {
+        var outbox = this.outbox;
+        if (outbox == null) {
+            logger.warn("No outbox, sending {} directly", message);
+            send(message);
+            return;
+        }
+        //Adding calls back to drainOutbox, which sends it straight away if the connection is up
+        outbox.add(message);
+    }
+
+    /**
+     * Deliver messages from an outbox, including any left over from earlier sessions. While an outbox is set, a dropped
+     * connection is reconnected in the background.
+     *
+     * @param outbox the outbox
+     */
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+        outbox.setOnAdded(this::drainOutbox);
+        if (outboxThread == null) {
+            outboxThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "Communicator Outbox");
+                thread.setDaemon(true);
+                return thread;
+            });
+            outboxThread.scheduleWithFixedDelay(this::checkConnection, CHECK_SECONDS, CHECK_SECONDS, TimeUnit.SECONDS);
+        }
+        drainOutbox();
+    }
+
+    /**
+     * Send the oldest undelivered outbox messages that are not already waiting to be acknowledged, if connected
+     */
+    private void drainOutbox() {
+        var outbox = this.outbox;
+        var socket = ws;
+        if (outbox == null || socket == null || !socket.isOpen()) {
+            return;
+        }
+        synchronized (outboxLock) {
+            long now = System.nanoTime();
+            for (var message : outbox.getUndelivered(OUTBOX_BATCH)) {
+                var sent = sentAt.get(message.id());
+                if (sent != null && now - sent < RESEND_NANOS) {
+                    continue;
+                }
+                var reply = expectedReply(message.text());
+                var awaiting = reply == null ? awaitingFrame : awaitingReply;
+                var key = reply == null ? message.text() : reply;
+                var other = awaiting.putIfAbsent(key, message.id());
+                if (other != null && other != message.id()) {
+                    //An identical message is on its way, so this one waits until that is acknowledged
+                    continue;
+                }
+                sentAt.put(message.id(), now);
+                logger.info("Sending from outbox: " + message.text());
+                socket.sendText(message.text());
+            }
+        }
+    }
+
+    /**
+     * An outbox message has arrived, remove it from the outbox and send the next
+     */
+    private void delivered(long id) {
+        sentAt.remove(id);
+        var outbox = this.outbox;
+        if (outbox != null && outbox.acknowledge(id)) {
+            drainOutbox();
+        }
+    }
+
+    /**
+     * Get the reply from the server that confirms a message arrived
+     *
+     * @param message the message sent
+     * @return the reply, or null if the server does not reply to it
+     */
+    static String expectedReply(String message) {
+        if (message.startsWith("HISCORE ")) {
+            return "NEWSCORE " + message.substring(8);
+        }
+        return null;
+    }
+
+    /**
+     * Reconnect if the connection has dropped, backing off while it stays down, and resend anything not acknowledged
+     * in time. Runs on the outbox thread.
+     */
+    private void checkConnection() {
+        try {
+            var socket = ws;
+            if (socket.isOpen()) {
+                reconnectSeconds = CHECK_SECONDS;
+                drainOutbox();
+                return;
+            }
+            if (socket.getState() != WebSocketState.CLOSED || System.nanoTime() < nextReconnect) {
+                return;
+            }
+            try {
+                logger.info("Reconnecting to {}", socket.getURI());
+                var fresh = socket.recreate();
+                ws = fresh;
+                fresh.connect();
+                logger.info("Reconnected, {} messages waiting in the outbox", outbox.size());
+                reconnectSeconds = CHECK_SECONDS;
+            } catch (WebSocketException | IOException e) {
+                logger.warn("Unable to reconnect: {}", e.getMessage());
+                reconnectSeconds = Math.min(MAX_RECONNECT_SECONDS, reconnectSeconds * 2);
+                nextReconnect = System.nanoTime() + TimeUnit.SECONDS.toNanos(reconnectSeconds);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Connection check failed", e);
+        }
+    }
+
+    /**
+     * Add a new listener to receive messages from the server on the JavaFX thread
      * @param listener the listener to add
      */
     public void addListener(CommunicationsListener listener) {
@@ -101,13 +345,33 @@ public class Communicator {
     }
 
     /**
-     * Clear all current listeners
+     * Add a new listener to receive every message from the server on the web socket's reader thread, as soon as it
+     * arrives. The listener must be thread safe, quick and must not touch the scene graph.
+     * @param listener the listener to add
+     */
+    public void addDirectListener(CommunicationsListener listener) {
+        this.directHandlers.add(listener);
+    }
+
+    /**
+     * Remove a listener added with {@link #addListener} or {@link #addDirectListener}
+     * @param listener the listener to remove
+     */
+    public void removeListener(CommunicationsListener listener) {
+        this.handlers.remove(listener);
+        this.directHandlers.remove(listener);
+    }
+
+    /**
+     * Clear all current listeners, of both kinds. Messages already queued for the UI listeners are dropped.
      */
     public void clearListeners() {
         this.handlers.clear();
+        this.directHandlers.clear();
+        this.inbox.clear();
     }
 
-    /** Receive a message from the server. Relay to any attached listeners
+    /** Receive a message from the server. Relay to any direct listeners and queue it for the UI listeners
      *
      * @param websocket the socket
      * @param message the message that was received
@@ -115,9 +379,84 @@ public class Communicator {
     private void receive(WebSocket websocket, String message) {
         logger.info("Received: " + message);
 
-        for(CommunicationsListener handler : handlers) {
+        if (!awaitingReply.isEmpty()) {
+            var id = awaitingReply.remove(message);
+            if (id != null) {
+                delivered(id);
+            }
+        }
+
+        for(CommunicationsListener handler : directHandlers) {
             handler.receiveCommunication(message);
         }
+
+        if (handlers.isEmpty()) {
+            return;
+        }
+        inbox.add(message);
+        if (deliveryScheduled.compareAndSet(false, true)) {
+            uiThread.execute(deliver);
+        }
+    }
+
+    /**
+     * Deliver a batch of queued messages to the UI listeners, on the UI thread
+     */
+    private void deliver() {
+        //Cleared first, so a message arriving from now on schedules another delivery rather than being missed
+        deliveryScheduled.set(false);
+
+        String message;
+        while (batch.size() < MAX_BATCH && (message = inbox.poll()) != null) {
+            batch.add(message);
+        }
+
+        //Find the last of each kind of state message, earlier ones are out of date before they are shown
+        latest.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            var key = stateKey(batch.get(i));
+            if (key != null) {
+                latest.put(key, i);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            message = batch.get(i);
+            var key = stateKey(message);
+            if (key != null && latest.get(key) != i) {
+                continue;
+            }
+            for (CommunicationsListener handler : handlers) {
+                handler.receiveCommunication(message);
+            }
+        }
+        batch.clear();
+
+        //More arrived than one batch holds
+        if (!inbox.isEmpty() && deliveryScheduled.compareAndSet(false, true)) {
+            uiThread.execute(deliver);
+        }
+    }
+
+    /**
+     * Identify a message that only carries the latest state of something, so a later message with the same key
+     * replaces it
+     *
+     * @param message the message
+     * @return the key, or null if every message of this kind matters, such as chat or board updates
+     */
+    static String stateKey(String message) {
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+        return switch (command) {
+            case "HISCORES", "CHANNELS", "USERS", "SCORES" -> command;
+            case "SCORE", "LIVES" -> {
+                //Per player: everything up to the colon, such as "SCORE alice"
+                int colon = message.indexOf(':', space);
+                yield colon < 0 ? null : message.substring(0, colon);
+            }
+            default -> null;
+        };
     }
 
 }
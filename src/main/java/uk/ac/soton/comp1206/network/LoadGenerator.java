@@ -0,0 +1,345 @@
+package uk.ac.soton.comp1206.network;
+
+import com.neovisionaries.ws.client.WebSocket;
+import com.neovisionaries.ws.client.WebSocketAdapter;
+import com.neovisionaries.ws.client.WebSocketFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens a large number of simulated TetrECS clients against a server and reports message throughput and round trip
+ * latency percentiles.
+ *
+ * Clients are grouped into channels and loop over request/response commands (PIECE, HISCORES, USERS, SCORES), timing
+ * each round trip. Every few requests a client also sends a BOARD update, which the server fans out to the rest of its
+ * channel, so the run exercises broadcast traffic as well.
+ *
+ * The protocol has no request ids, so a reply is matched by its command word. To keep that honest, nothing but BOARD
+ * broadcasts may reach a client while it is being timed: after everyone has joined, each client makes a LIST round trip
+ * and discards everything before the reply, such as user lists sent as others joined, and no client parts its channel
+ * until every client has finished.
+ *
+ * Usage: {@code LoadGenerator [clients] [seconds] [channelSize] [server]}. If no server is given, an embedded
+ * LocalServer is started.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LogManager.getLogger(LoadGenerator.class);
+
+    /**
+     * The request/response pairs the clients cycle through
+     */
+    private static final String[][] REQUESTS = {
+            {"PIECE", "PIECE"},
+            {"HISCORES", "HISCORES"},
+            {"USERS", "USERS"},
+            {"SCORES", "SCORES"}
+    };
+
+    /**
+     * How many requests a client makes between each board broadcast
+     */
+    private static final int BOARD_EVERY = 4;
+
+    /**
+     * Stack size for client driver threads
+     */
+    private static final long DRIVER_STACK_SIZE = 128 * 1024;
+
+    private final String server;
+    private final int clients;
+    private final int channelSize;
+    private final long durationNanos;
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong strays = new AtomicLong();
+
+    /**
+     * Create a new load generator
+     * @param server web socket URI to connect to
+     * @param clients number of simulated clients
+     * @param channelSize number of clients sharing each channel
+     * @param seconds how long to run for once all clients are connected
+     */
+    public LoadGenerator(String server, int clients, int channelSize, int seconds) {
+        this.server = server;
+        this.clients = clients;
+        this.channelSize = Math.max(1, channelSize);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Results of a load generator run
+     * @param clients number of clients that completed the run
+     * @param seconds measured duration in seconds
+     * @param sent messages sent by clients
+     * @param received messages received by clients
+     * @param latencies sorted round trip latencies in nanoseconds
+     * @param failures number of clients that failed to connect or timed out
+     */
+    public record Report(int clients, double seconds, long sent, long received, long[] latencies, int failures) {
+
+        /**
+         * Get a latency percentile
+         * @param percentile percentile between 0 and 100
+         * @return latency in microseconds, or 0 if nothing was measured
+         */
+        public double percentileMicros(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            index = Math.max(0, Math.min(latencies.length - 1, index));
+            return latencies[index] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "clients=%d failures=%d duration=%.1fs%n"
+                            + "sent=%d (%.0f msg/s) received=%d (%.0f msg/s) round trips=%d (%.0f/s)%n"
+                            + "latency us: p50=%.0f p90=%.0f p99=%.0f p99.9=%.0f max=%.0f",
+                    clients, failures, seconds,
+                    sent, sent / seconds, received, received / seconds, latencies.length, latencies.length / seconds,
+                    percentileMicros(50), percentileMicros(90), percentileMicros(99), percentileMicros(99.9),
+                    percentileMicros(100));
+        }
+    }
+
+    /**
+     * Connect every client, run the workload and collect the results
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for clients
+     */
+    public Report run() throws InterruptedException {
+        var threadCount = new AtomicInteger();
+        ExecutorService drivers = Executors.newFixedThreadPool(clients, runnable -> {
+            var thread = new Thread(null, runnable, "LoadClient-" + threadCount.incrementAndGet(), DRIVER_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        var connected = new CountDownLatch(clients);
+        var go = new CountDownLatch(1);
+        var stopped = new CountDownLatch(clients);
+        var finished = new CountDownLatch(clients);
+        var results = new long[clients][];
+
+        //Joining clients wait for their channel's host to create it
+        int channelCount = (clients + channelSize - 1) / channelSize;
+        var created = new CountDownLatch[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            created[i] = new CountDownLatch(1);
+        }
+
+        for (int i = 0; i < clients; i++) {
+            final int id = i;
+            drivers.execute(() -> {
+                var client = new SimulatedClient(id);
+                try {
+                    results[id] = client.run(created[id / channelSize], connected, go, stopped);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    logger.warn("Client {} failed: {}", id, e.getMessage());
+                } finally {
+                    //Never leave other clients waiting on a failed one
+                    created[id / channelSize].countDown();
+                    if (!client.connected) {
+                        connected.countDown();
+                    }
+                    if (!client.stopped) {
+                        stopped.countDown();
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        logger.info("{} clients connected, running for {}s", clients - failures.get(),
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        long start = System.nanoTime();
+        go.countDown();
+        finished.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        drivers.shutdownNow();
+        if (strays.get() > 0) {
+            logger.warn("{} unexpected messages arrived while clients were waiting for replies", strays.get());
+        }
+
+        int total = 0;
+        for (long[] result : results) {
+            total += result == null ? 0 : result.length;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (long[] result : results) {
+            if (result != null) {
+                System.arraycopy(result, 0, latencies, offset, result.length);
+                offset += result.length;
+            }
+        }
+        Arrays.sort(latencies);
+
+        return new Report(clients - failures.get(), seconds, messagesSent.get(), messagesReceived.get(), latencies,
+                failures.get());
+    }
+
+    /**
+     * A single simulated client, driving one web socket connection
+     */
+    private class SimulatedClient {
+
+        private final int id;
+        private final BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        private long[] latencies = new long[1024];
+        private int count = 0;
+        private boolean connected = false;
+        private boolean stopped = false;
+        private boolean timing = false;
+
+        SimulatedClient(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Connect, join a channel, wait for the start signal and then loop until the run is over
+         * @return the measured round trip latencies
+         */
+        long[] run(CountDownLatch created, CountDownLatch connected, CountDownLatch go, CountDownLatch stopped)
+                throws Exception {
+            WebSocket ws = new WebSocketFactory().setConnectionTimeout(10_000).createSocket(server);
+            ws.addListener(new WebSocketAdapter() {
+                @Override
+                public void onTextMessage(WebSocket websocket, String message) {
+                    messagesReceived.incrementAndGet();
+                    inbox.add(message);
+                }
+            });
+            ws.connect();
+
+            try {
+                String channel = "load" + (id / channelSize);
+                send(ws, "NICK load" + id);
+                await("NICK");
+                if (id % channelSize == 0) {
+                    send(ws, "CREATE " + channel);
+                    await("JOIN");
+                    created.countDown();
+                } else {
+                    created.await();
+                    send(ws, "JOIN " + channel);
+                    await("JOIN");
+                }
+                this.connected = true;
+                connected.countDown();
+                go.await();
+
+                //Every join has been answered, and the server tells the rest of a channel before answering the joiner,
+                //so anything sent to this client about the joins is ahead of this reply
+                send(ws, "LIST");
+                await("CHANNELS");
+                timing = true;
+
+                String board = "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0";
+                long deadline = System.nanoTime() + durationNanos;
+                int request = 0;
+                while (System.nanoTime() < deadline) {
+                    if (request % BOARD_EVERY == BOARD_EVERY - 1) {
+                        send(ws, "BOARD " + board);
+                    }
+                    String[] pair = REQUESTS[request++ % REQUESTS.length];
+                    long sent = System.nanoTime();
+                    send(ws, pair[0]);
+                    await(pair[1]);
+                    record(System.nanoTime() - sent);
+                }
+                //Parting sends the rest of the channel a user list, so wait until nobody is still timing
+                timing = false;
+                this.stopped = true;
+                stopped.countDown();
+                stopped.await();
+                send(ws, "PART");
+            } finally {
+                ws.disconnect();
+            }
+            return Arrays.copyOf(latencies, count);
+        }
+
+        private void send(WebSocket ws, String message) {
+            messagesSent.incrementAndGet();
+            ws.sendText(message);
+        }
+
+        /**
+         * Wait for the next message with the given command word, skipping broadcasts from other clients
+         */
+        private void await(String command) throws Exception {
+            while (true) {
+                String message = inbox.poll(10, TimeUnit.SECONDS);
+                if (message == null) {
+                    throw new IllegalStateException("Timed out waiting for " + command);
+                }
+                if (message.startsWith(command)
+                        && (message.length() == command.length() || message.charAt(command.length()) == ' ')) {
+                    return;
+                }
+                if (message.startsWith("ERROR")) {
+                    throw new IllegalStateException(message);
+                }
+                if (timing && !message.startsWith("BOARD ")) {
+                    strays.incrementAndGet();
+                }
+            }
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+    }
+
+    /**
+     * Run the load generator from the commandline
+     * @param args [clients] [seconds] [channelSize] [server]
+     * @throws Exception if the run fails
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int channelSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        LocalServer embedded = null;
+        String server;
+        if (args.length > 3) {
+            server = args[3];
+        } else {
+            embedded = new LocalServer(0);
+            embedded.start();
+            server = embedded.getUri();
+        }
+
+        try {
+            var report = new LoadGenerator(server, clients, channelSize, seconds).run();
+            System.out.println(report);
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+}
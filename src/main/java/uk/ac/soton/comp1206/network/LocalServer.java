@@ -0,0 +1,564 @@
+package uk.ac.soton.comp1206.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embeddable stand-in for the TetrECS web socket server. Implements the same text protocol the Communicator speaks
+ * (high scores, channels, chat, piece sequences and score/lives/board broadcasts) so the game and its networking can
+ * be run and benchmarked without the university server.
+ *
+ * Each connection is served by its own small-stack daemon thread, so a few hundred simulated clients are cheap.
+ *
+ * Can be started from the commandline: {@code LocalServer [port]}
+ */
+public class LocalServer implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(LocalServer.class);
+
+    /**
+     * Stack size for connection threads. Connections only parse short text frames, so this can be kept small.
+     */
+    private static final long CONNECTION_STACK_SIZE = 128 * 1024;
+
+    /**
+     * Maximum number of high scores kept
+     */
+    private static final int MAX_HISCORES = 100;
+
+    private final int requestedPort;
+    private ServerSocket serverSocket;
+    private final ExecutorService connectionThreads;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final List<String[]> hiscores = new ArrayList<>();
+    private final AtomicInteger nextPlayer = new AtomicInteger(1);
+
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    /**
+     * Create a new server which will listen on the given port once started
+     * @param port port to listen on, or 0 to pick any free port
+     */
+    public LocalServer(int port) {
+        this.requestedPort = port;
+        var threadCount = new AtomicInteger();
+        this.connectionThreads = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(null, runnable, "LocalServer-" + threadCount.incrementAndGet(), CONNECTION_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start listening for connections on a background thread
+     * @throws IOException if the port cannot be bound
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort), 256);
+        running = true;
+
+        var acceptor = new Thread(this::acceptLoop, "LocalServer-Accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Local server listening on {}", getUri());
+    }
+
+    /**
+     * Get the address clients should connect to
+     * @return web socket URI of this server
+     */
+    public String getUri() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * Get the port this server is bound to
+     * @return port
+     */
+    public int getPort() {
+        return serverSocket == null ? requestedPort : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the total number of messages received from clients
+     * @return messages received
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    /**
+     * Get the total number of messages sent to clients
+     * @return messages sent
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * Stop the server and close every connection
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Error closing server socket: {}", e.getMessage());
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connectionThreads.shutdownNow();
+        logger.info("Local server stopped");
+    }
+
+    /**
+     * Accept new connections until the server is closed
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                var connection = new Connection(socket, "Player" + nextPlayer.getAndIncrement());
+                connections.add(connection);
+                connectionThreads.execute(connection);
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle a single protocol message from a connection
+     * @param from the sending connection
+     * @param message the message
+     */
+    private void handle(Connection from, String message) {
+        messagesReceived.incrementAndGet();
+
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+        String args = space < 0 ? "" : message.substring(space + 1);
+
+        switch (command) {
+            case "HISCORES" -> from.send("HISCORES " + formatHiscores(args.equals("UNIQUE")));
+            case "HISCORE" -> {
+                String[] parts = args.split(":", 2);
+                if (parts.length != 2 || !isInteger(parts[1])) {
+                    from.send("ERROR Invalid score");
+                    return;
+                }
+                addHiscore(parts[0], parts[1]);
+                from.send("NEWSCORE " + parts[0] + ":" + parts[1]);
+            }
+            case "LIST" -> from.send("CHANNELS " + String.join("\n", channels.keySet()));
+            case "CREATE" -> createChannel(from, args);
+            case "JOIN" -> joinChannel(from, args);
+            case "PART" -> {
+                leaveChannel(from);
+                from.send("PARTED");
+            }
+            case "NICK" -> {
+                if (args.isBlank() || args.contains(":")) {
+                    from.send("ERROR Invalid nickname");
+                    return;
+                }
+                String old = from.nickname;
+                from.nickname = args;
+                from.send("NICK " + args);
+                var channel = from.channel;
+                if (channel != null) {
+                    channel.broadcast("NICK " + old + ":" + args, from);
+                }
+            }
+            case "USERS" -> {
+                var channel = from.channel;
+                if (channel == null) {
+                    from.send("ERROR Not in a channel");
+                } else {
+                    from.send(channel.users());
+                }
+            }
+            case "MSG" -> {
+                var channel = from.channel;
+                if (channel == null) {
+                    from.send("ERROR Not in a channel");
+                } else {
+                    channel.broadcast("MSG " + from.nickname + ":" + args, null);
+                }
+            }
+            case "START" -> {
+                var channel = from.channel;
+                if (channel == null || channel.host != from) {
+                    from.send("ERROR Only the host can start the game");
+                } else {
+                    channel.started = true;
+                    channel.broadcast("START", null);
+                }
+            }
+            case "PIECE" -> from.send("PIECE " + from.nextPiece());
+            case "SCORE" -> {
+                if (!isInteger(args)) {
+                    from.send("ERROR Invalid score");
+                    return;
+                }
+                from.score = Integer.parseInt(args);
+                broadcastStatus(from, "SCORE " + from.nickname + ":" + args);
+            }
+            case "LIVES" -> {
+                if (!isInteger(args)) {
+                    from.send("ERROR Invalid lives");
+                    return;
+                }
+                from.lives = Integer.parseInt(args);
+                broadcastStatus(from, "LIVES " + from.nickname + ":" + args);
+            }
+            case "SCORES" -> {
+                var channel = from.channel;
+                if (channel == null) {
+                    from.send("ERROR Not in a channel");
+                } else {
+                    from.send(channel.scores());
+                }
+            }
+            case "BOARD" -> broadcastStatus(from, "BOARD " + from.nickname + ":" + args);
+            case "DIE" -> {
+                from.lives = -1;
+                broadcastStatus(from, "DIE " + from.nickname);
+            }
+            case "QUIT" -> from.close();
+            default -> from.send("ERROR Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Send a status update from a player to the rest of their channel, if they are in one
+     */
+    private void broadcastStatus(Connection from, String message) {
+        var channel = from.channel;
+        if (channel != null) {
+            channel.broadcast(message, from);
+        }
+    }
+
+    private void createChannel(Connection from, String name) {
+        if (name.isBlank()) {
+            from.send("ERROR Invalid channel name");
+            return;
+        }
+        var channel = new Channel(name, from);
+        if (channels.putIfAbsent(name, channel) != null) {
+            from.send("ERROR Channel already exists: " + name);
+            return;
+        }
+        leaveChannel(from);
+        channel.add(from);
+        from.send("JOIN " + name);
+        from.send("HOST");
+        from.send(channel.users());
+    }
+
+    private void joinChannel(Connection from, String name) {
+        var channel = channels.get(name);
+        if (channel == null) {
+            from.send("ERROR No such channel: " + name);
+            return;
+        }
+        if (channel.started) {
+            from.send("ERROR Game already in progress");
+            return;
+        }
+        leaveChannel(from);
+        channel.add(from);
+        //Tell the rest of the channel before answering the joiner, so anyone who has seen the JOIN reply knows the
+        //other members have been sent the new user list
+        String users = channel.users();
+        channel.broadcast(users, from);
+        from.send("JOIN " + name);
+        from.send(users);
+    }
+
+    private void leaveChannel(Connection from) {
+        var channel = from.channel;
+        if (channel == null) {
+            return;
+        }
+        from.channel = null;
+        if (channel.remove(from)) {
+            channels.remove(channel.name, channel);
+        } else {
+            channel.broadcast(channel.users(), null);
+        }
+    }
+
+    private void addHiscore(String name, String score) {
+        synchronized (hiscores) {
+            int value = Integer.parseInt(score);
+            int index = 0;
+            while (index < hiscores.size() && Integer.parseInt(hiscores.get(index)[1]) >= value) {
+                index++;
+            }
+            hiscores.add(index, new String[]{name, score});
+            if (hiscores.size() > MAX_HISCORES) {
+                hiscores.remove(hiscores.size() - 1);
+            }
+        }
+    }
+
+    private String formatHiscores(boolean unique) {
+        var builder = new StringBuilder();
+        var seen = new HashSet<String>();
+        synchronized (hiscores) {
+            for (String[] entry : hiscores) {
+                if (unique && !seen.add(entry[0])) {
+                    continue;
+                }
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                builder.append(entry[0]).append(':').append(entry[1]);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isInteger(String value) {
+        try {
+            Integer.parseInt(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A multiplayer channel. Every member of a channel is dealt the same piece sequence.
+     */
+    private final class Channel {
+
+        private final String name;
+        private final List<Connection> members = new ArrayList<>();
+        private final List<Integer> pieces = new ArrayList<>();
+        private final Random random = new Random();
+        private Connection host;
+        private volatile boolean started = false;
+
+        Channel(String name, Connection host) {
+            this.name = name;
+            this.host = host;
+        }
+
+        synchronized void add(Connection connection) {
+            members.add(connection);
+            connection.channel = this;
+            connection.pieceIndex = 0;
+        }
+
+        /**
+         * Remove a member, handing over the host role if needed
+         * @return true if the channel is now empty
+         */
+        synchronized boolean remove(Connection connection) {
+            members.remove(connection);
+            if (host == connection && !members.isEmpty()) {
+                host = members.get(0);
+                host.send("HOST");
+            }
+            return members.isEmpty();
+        }
+
+        synchronized int pieceAt(int index) {
+            while (pieces.size() <= index) {
+                pieces.add(random.nextInt(GamePiece.PIECES));
+            }
+            return pieces.get(index);
+        }
+
+        synchronized String users() {
+            var builder = new StringBuilder("USERS ");
+            for (int i = 0; i < members.size(); i++) {
+                if (i > 0) {
+                    builder.append('\n');
+                }
+                builder.append(members.get(i).nickname);
+            }
+            return builder.toString();
+        }
+
+        synchronized String scores() {
+            var builder = new StringBuilder("SCORES ");
+            for (int i = 0; i < members.size(); i++) {
+                var member = members.get(i);
+                if (i > 0) {
+                    builder.append('\n');
+                }
+                builder.append(member.nickname).append(':').append(member.score).append(':')
+                        .append(member.lives < 0 ? "DEAD" : String.valueOf(member.lives));
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Send a message to every member of the channel
+         * @param message message to send
+         * @param except a member to skip, or null to send to everyone
+         */
+        void broadcast(String message, Connection except) {
+            Connection[] targets;
+            synchronized (this) {
+                targets = members.toArray(new Connection[0]);
+            }
+            for (Connection target : targets) {
+                if (target != except) {
+                    target.send(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single client connection
+     */
+    private final class Connection implements Runnable {
+
+        private final Socket socket;
+        private final Random random = new Random();
+        private OutputStream out;
+
+        private volatile String nickname;
+        private volatile Channel channel;
+        private volatile int score = 0;
+        private volatile int lives = 3;
+        private int pieceIndex = 0;
+
+        Connection(Socket socket, String nickname) {
+            this.socket = socket;
+            this.nickname = nickname;
+        }
+
+        @Override
+        public void run() {
+            try (socket) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+                WebSocketFrames.acceptHandshake(in, out);
+
+                var message = new ByteArrayOutputStream();
+                while (running) {
+                    var frame = WebSocketFrames.readFrame(in);
+                    switch (frame.opcode()) {
+                        case WebSocketFrames.OP_TEXT, WebSocketFrames.OP_CONTINUATION -> {
+                            message.write(frame.payload());
+                            if (frame.fin()) {
+                                handle(this, message.toString(StandardCharsets.UTF_8));
+                                message.reset();
+                            }
+                        }
+                        case WebSocketFrames.OP_PING -> write(WebSocketFrames.OP_PONG, frame.payload());
+                        case WebSocketFrames.OP_CLOSE -> {
+                            write(WebSocketFrames.OP_CLOSE, frame.payload());
+                            return;
+                        }
+                        default -> {
+                            //Ignore pongs and binary frames
+                        }
+                    }
+                }
+            } catch (SocketException | EOFException e) {
+                //Client went away
+            } catch (IOException e) {
+                logger.warn("Connection error for {}: {}", nickname, e.getMessage());
+            } finally {
+                leaveChannel(this);
+                connections.remove(this);
+            }
+        }
+
+        int nextPiece() {
+            var current = channel;
+            if (current == null) {
+                return random.nextInt(GamePiece.PIECES);
+            }
+            return current.pieceAt(pieceIndex++);
+        }
+
+        void send(String message) {
+            try {
+                write(WebSocketFrames.OP_TEXT, message.getBytes(StandardCharsets.UTF_8));
+                messagesSent.incrementAndGet();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void write(int opcode, byte[] payload) throws IOException {
+            var stream = out;
+            if (stream == null) {
+                return;
+            }
+            synchronized (stream) {
+                WebSocketFrames.writeFrame(stream, opcode, payload);
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Already closed
+            }
+        }
+    }
+
+    /**
+     * Run the local server standalone until the process is stopped
+     * @param args optional port number, defaults to 9700
+     * @throws Exception if the server cannot start
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9700;
+        var server = new LocalServer(port);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+}
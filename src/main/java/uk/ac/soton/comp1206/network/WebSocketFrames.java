@@ -0,0 +1,187 @@
+package uk.ac.soton.comp1206.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Minimal server side implementation of the WebSocket wire format (RFC 6455), enough to talk to the Communicator.
+ *
+ * Only text, close, ping and pong frames are understood. Frames sent by the server are never masked, frames received
+ * from clients always are.
+ */
+final class WebSocketFrames {
+
+    /**
+     * Magic value appended to the client key during the opening handshake
+     */
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    private WebSocketFrames() {
+    }
+
+    /**
+     * A single decoded frame
+     * @param fin whether this is the final fragment of a message
+     * @param opcode the frame opcode
+     * @param payload the unmasked payload
+     */
+    record Frame(boolean fin, int opcode, byte[] payload) {
+    }
+
+    /**
+     * Read the HTTP upgrade request from a client and reply with the switching protocols response.
+     * @param in socket input
+     * @param out socket output
+     * @throws IOException if the request is not a WebSocket upgrade or the socket fails
+     */
+    static void acceptHandshake(InputStream in, OutputStream out) throws IOException {
+        String key = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            out.write("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            throw new IOException("Not a WebSocket upgrade request");
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Work out the Sec-WebSocket-Accept value for a given client key
+     * @param key the client key
+     * @return the accept value
+     */
+    static String acceptKey(String key) {
+        try {
+            var sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * Read one frame from the stream, unmasking the payload if needed
+     * @param in socket input
+     * @return the frame
+     * @throws IOException if the stream ends or fails
+     */
+    static Frame readFrame(InputStream in) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        boolean masked = (b1 & 0x80) != 0;
+
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = ((long) readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Frame too large: " + length);
+        }
+
+        byte[] mask = new byte[4];
+        if (masked) {
+            readFully(in, mask);
+        }
+        byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+        return new Frame(fin, opcode, payload);
+    }
+
+    /**
+     * Write a single unmasked frame. Callers must serialise writes to the same stream.
+     * @param out socket output
+     * @param opcode the frame opcode
+     * @param payload the payload
+     * @throws IOException if the socket fails
+     */
+    static void writeFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+        int length = payload.length;
+        byte[] header;
+        if (length < 126) {
+            header = new byte[]{(byte) (0x80 | opcode), (byte) length};
+        } else if (length <= 0xFFFF) {
+            header = new byte[]{(byte) (0x80 | opcode), 126, (byte) (length >>> 8), (byte) length};
+        } else {
+            header = new byte[10];
+            header[0] = (byte) (0x80 | opcode);
+            header[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                header[9 - i] = (byte) ((long) length >>> (8 * i));
+            }
+        }
+        out.write(header);
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Read a CRLF terminated line from the handshake
+     */
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = readByte(in)) != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package uk.ac.soton.comp1206.scene;
 
 import javafx.scene.Scene;
-import javafx.scene.paint.Color;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -24,23 +23,42 @@ public abstract class BaseScene {
     }
 
     /**
-     * Initialise this scene. Called after creation
+     * Initialise this scene. Called after creation, and again every time a reusable scene is shown
      */
     public abstract void initialise();
 
     /**
-     * Build the layout of the scene
+     * Build the layout of the scene. Called once, before the scene is first shown
      */
     public abstract void build();
 
     /**
-     * Create a new JavaFX scene using the root contained within this scene
+     * Whether the scene can be shown again after the player leaves it, keeping the layout it built. Scenes that hold a
+     * game are made fresh every time.
+     * @return true if the window may keep and reuse this scene
+     */
+    public boolean isReusable() {
+        return false;
+    }
+
+    /**
+     * Whether the layout has been built yet
+     * @return true once build has been called
+     */
+    public boolean isBuilt() {
+        return root != null;
+    }
+
+    /**
+     * Show the root contained within this scene in the window's JavaFX scene. The window keeps one JavaFX scene for
+     * every game scene, so its stylesheet is only loaded once.
      * @return JavaFX scene
      */
     public Scene setScene() {
-        var previous = gameWindow.getScene();
-        Scene scene = new Scene(root, previous.getWidth(), previous.getHeight(), Color.BLACK);
-        scene.getStylesheets().add(getClass().getResource("/style/game.css").toExternalForm());
+        Scene scene = gameWindow.getScene();
+        // Key handlers belong to the game scene that set them, so the previous one's must not carry over
+        scene.setOnKeyPressed(null);
+        scene.setRoot(root);
         this.scene = scene;
         return scene;
     }
@@ -1,19 +1,17 @@
 
 package uk.ac.soton.comp1206.scene;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.scene.control.Label;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
-import javafx.util.Duration;
+import javafx.scene.transform.Scale;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.GameBlock;
@@ -21,8 +19,17 @@ import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
 import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.game.BoardSearch;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameCommand;
+import uk.ac.soton.comp1206.game.GameState;
 import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.HintEngine;
+import uk.ac.soton.comp1206.game.SaveState;
+import uk.ac.soton.comp1206.storage.AutoSave;
+import uk.ac.soton.comp1206.storage.EventLog;
+import uk.ac.soton.comp1206.storage.Leaderboard;
+import uk.ac.soton.comp1206.storage.Outbox;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -33,6 +40,27 @@ import uk.ac.soton.comp1206.ui.GameWindow;
 public class ChallengeScene extends BaseScene implements NextPieceListener {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
+
+    /**
+     * Width of the timer bar when the countdown is full
+     */
+    private static final int TIMER_WIDTH = 300;
+
+    /**
+     * Number of pieces shown after the following piece, read from the piece sequence's lookahead
+     */
+    private static final int UPCOMING_SHOWN = 3;
+
+    /**
+     * Colours the timer bar passes through from green to red, worked out once rather than every frame
+     */
+    private static final Color[] TIMER_COLOURS = new Color[65];
+
+    static {
+        for (int shade = 0; shade < TIMER_COLOURS.length; shade++) {
+            TIMER_COLOURS[shade] = Color.GREEN.interpolate(Color.RED, shade / (double) (TIMER_COLOURS.length - 1));
+        }
+    }
     // The game instance
     protected Game game;
 
@@ -42,14 +70,42 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
     // The piece board for the following piece
     private final PieceBoard followingPieceBoard;
 
+    // Small piece boards for the pieces queued after the following piece
+    private final PieceBoard[] upcomingBoards = new PieceBoard[UPCOMING_SHOWN];
+
     // The game board where the pieces are played
     private GameBoard gameBoard;
 
     // The timer bar that displays the remaining time
     private Rectangle timerBar;
 
-    // The timeline that controls the game timer
-    private Timeline timeline;
+    // Shown over the board once the game is over and the final score has been ranked
+    private Label gameOverLabel;
+
+    // Samples the game clock every frame, redrawing the timer bar when it visibly changes
+    private AnimationTimer timerAnimation;
+
+    // Shrinks the timer bar without changing its size, so the layout is not redone every frame
+    private final Scale timerScale = new Scale(1, 1, 0, 0);
+    private int timerPixels = -1;
+    private int timerShade = -1;
+
+    // Works out placement hints in the background
+    private HintEngine hintEngine;
+
+    // Whether placement hints are shown
+    private boolean hintsEnabled = false;
+
+    // The saved game to carry on from, or null for a new game
+    private final SaveState resume;
+
+    // Records what happens in this session, or null if the log could not be created
+    private EventLog eventLog;
+
+    /**
+     * Number of board and piece changes when the hint was last refreshed
+     */
+    private long hintMoves = -1;
 
     /**
      * Create a new Single Player challenge scene
@@ -57,10 +113,24 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
      * @param gameWindow the Game Window
      */
     public ChallengeScene(GameWindow gameWindow) {
+        this(gameWindow, null);
+    }
+
+    /**
+     * Create a Single Player challenge scene carrying on from a saved game
+     *
+     * @param gameWindow the Game Window
+     * @param resume the saved game, or null for a new game
+     */
+    public ChallengeScene(GameWindow gameWindow, SaveState resume) {
         super(gameWindow);
+        this.resume = resume;
         logger.info("Creating Challenge Scene");
         this.pieceBoard = new PieceBoard(3, 3, 150, 150);
         this.followingPieceBoard = new PieceBoard(3, 3, 150, 150);
+        for (int i = 0; i < UPCOMING_SHOWN; i++) {
+            upcomingBoards[i] = new PieceBoard(3, 3, 45, 45);
+        }
         setupGame();
 
     }
@@ -84,11 +154,17 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
         // Create a BorderPane to hold the main game content
         var mainPane = new BorderPane();
         challengePane.getChildren().add(mainPane);
+        // Hidden until the game is over
+        gameOverLabel = new Label();
+        gameOverLabel.getStyleClass().add("bigtitle");
+        gameOverLabel.setVisible(false);
+        challengePane.getChildren().add(gameOverLabel);
         // Create a GameBoard instance with the game grid and window dimensions
         var board = new GameBoard(game.getGrid(), gameWindow.getWidth() / 2, gameWindow.getWidth() / 2);
         // Set the on-right-click event handler to rotate the next piece
         board.setOnRightClicked(this::rotateNextPiece);
         mainPane.setCenter(board);
+        gameBoard = board;
 
         //Handle block on gameboard grid being clicked
         board.setOnBlockClick(this::blockClicked);
@@ -98,7 +174,8 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
         mainPane.setBottom(timerBar); // Add timer bar to the layout
         // Position both PieceBoards in the scene
         VBox rightPanel = new VBox(10); // Vertical Box with spacing of 10
-        rightPanel.getChildren().addAll(pieceBoard, followingPieceBoard);
+        HBox upcomingPanel = new HBox(7.5, upcomingBoards);
+        rightPanel.getChildren().addAll(pieceBoard, followingPieceBoard, upcomingPanel);
         mainPane.setRight(rightPanel);
     }
 
@@ -106,37 +183,42 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
      * Sets up the timer bar for visualizing the remaining time in the game.
      */
     private void setupTimerBar() {
-        /* Create a new Rectangle for the timer bar with an initial width
-         of 300 pixels and a height of 20 pixels.
+        /* Create a new Rectangle for the timer bar, 300 pixels wide and 20 pixels high.
          The color is set to green initially.
          */
-        timerBar = new Rectangle(0, 0, 300, 20);  // Initial width, adjust as needed
-        timerBar.setFill(Color.GREEN);  // Initial color, changes based on time left
+        timerBar = new Rectangle(0, 0, TIMER_WIDTH, 20);
+        timerBar.setFill(TIMER_COLOURS[0]);  // Initial color, changes based on time left
 
         /*
-         Create a new Timeline with two KeyFrames.
-         The first KeyFrame has a Duration of zero and
-         sets the width and fill properties of the timerBar.
-         The second KeyFrame has a Duration based on the game's
-         timer delay (in seconds) and sets the width and fill properties
-         of the timerBar to 0 and red, respectively.
+         The bar keeps its full size and is shrunk by a scale transform instead. Changing the width
+         of the rectangle would change its layout bounds and lay out the whole BorderPane again every
+         frame, a transform only moves pixels.
          */
-        timeline = new Timeline(new KeyFrame(
-                Duration.ZERO,
-                new KeyValue(timerBar.widthProperty(), 300),
-                new KeyValue(timerBar.fillProperty(), Color.GREEN)
-        ), new KeyFrame(
-                Duration.seconds(game.getTimerDelay() / 1000),
-                new KeyValue(timerBar.widthProperty(), 0),
-                new KeyValue(timerBar.fillProperty(), Color.RED)
-        ));
-
-        // Set the cycle count of the Timeline to Animation.INDEFINITE to continuously animate the timer bar.
-        timeline.setCycleCount(Animation.INDEFINITE);
-    }
-
-
+        timerBar.getTransforms().add(timerScale);
 
+        /*
+         Sample the game clock once per frame. The clock is the single source of truth for the
+         countdown, so the bar shrinks from full width and green to nothing and red in step with
+         the real deadline. The bar is only touched when it would look different, so frames where
+         it has not moved a whole pixel leave nothing to redraw.
+         */
+        timerAnimation = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                double remaining = game.getClock().getRemainingFraction();
+                int pixels = (int) Math.round(TIMER_WIDTH * remaining);
+                if (pixels != timerPixels) {
+                    timerPixels = pixels;
+                    timerScale.setX(pixels / (double) TIMER_WIDTH);
+                }
+                int shade = (int) Math.round((1 - remaining) * (TIMER_COLOURS.length - 1));
+                if (shade != timerShade) {
+                    timerShade = shade;
+                    timerBar.setFill(TIMER_COLOURS[shade]);
+                }
+            }
+        };
+    }
 
     /**
      * Sets up the UI elements for the game, including the stats box and labels.
@@ -173,7 +255,7 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
      * @param gameBlock the Game Block that was clocked
      */
     private void blockClicked(GameBlock gameBlock) {
-        game.blockClicked(gameBlock);
+        game.getActor().submit(new GameCommand.Place(gameBlock.getX(), gameBlock.getY()));
     }
 
     /**
@@ -183,11 +265,22 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
         logger.info("Starting a new challenge");
 
         //Start new game
-        game = new Game(5, 5);
+        if (hintEngine != null) {
+            hintEngine.close();
+        }
+        game = resume == null ? new Game(5, 5) : new Game(5, 5, resume.createSequence());
+        game.setAutoSave(AutoSave.getLocal());
+        hintEngine = new HintEngine(game);
+        hintEngine.setOnHint(this::showHint);
+        hintMoves = -1;
+        game.getActor().setOnStateChanged(this::stateChanged);
         game.setNextPieceListener(this);
         // Triggers the first piece generation
         game.spawnPiece();  // This initializes the first piece
         game.spawnPiece();  // This initializes the following piece
+        if (resume != null) {
+            game.restore(resume);
+        }
         nextPiece(game.getFollowingPiece());  // Manually trigger the initial display update
         // Set a LineClearedListener for the game to handle faded-out blocks
         game.setLineClearedListener(clearedBlocks -> {
@@ -199,24 +292,12 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
         game.setOnGameLoopListener(new GameLoopListener() {
             @Override
             public void onGameLoopStart() {
-                Platform.runLater(() -> {
-                    if (timeline != null) {  // Ensure the timeline is initialized
-                        timerBar.setWidth(300); // Reset the timer bar width
-                        timerBar.setFill(Color.GREEN); // Reset the color to green
-                        timeline.playFromStart(); // Start the timeline animation
-                    }
-                });
+                logger.info("New countdown started");
             }
 
             @Override
             public void onGameLoopEnd() {
-                Platform.runLater(() -> {
-                    if (timeline != null) {  // Ensure the timeline is initialized
-                        timeline.stop(); // Stop the timeline
-                        timerBar.setWidth(300); // Reset the width for a new start
-                        timerBar.setFill(Color.GREEN); // Reset the color for clarity
-                    }
-                });
+                logger.info("Countdown ended");
             }
 
 
@@ -231,27 +312,41 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
     public void initialise() {
         game.setNextPieceListener(this::nextPiece);
         logger.info("Initialising Challenge");
+        eventLog = EventLog.openSession(5, 5);
+        game.setEventLog(eventLog);
+        game.setOutbox(Outbox.getLocal());
+        // Load every known score in the background, so the final score can be ranked without a wait, and merge in the
+        // server's high scores when they arrive
+        Leaderboard.load();
+        gameWindow.getCommunicator().addListener(this::receiveCommunication);
+        gameWindow.getCommunicator().send("HISCORES");
+        game.finalRankProperty().addListener((observable, oldRank, rank) -> showFinalRank(rank.intValue()));
         game.start();
+        timerAnimation.start(); // Follow the game clock on the timer bar
         Multimedia.playBackgroundMusic("/music/game.wav"); // Play background music for the game scene
 
+        // Player input is queued for the game actor, which carries it out in batches
+        var actor = game.getActor();
         scene.setOnKeyPressed(event -> {
             KeyCode code = event.getCode();
             if (code == KeyCode.ESCAPE) {
                 shutdownChallenge();
             } else if (code == KeyCode.R) {
-                game.swapCurrentPiece();
+                actor.submit(GameCommand.SWAP);
+            } else if (code == KeyCode.H) {
+                toggleHints();
             } else if (code == KeyCode.ENTER) {
-                game.dropPieceAtAim();
+                actor.submit(GameCommand.PLACE_AT_AIM);
             } else if (code == KeyCode.UP || code == KeyCode.W) {
-                game.moveAim(0, -1); // Move aim up
+                actor.submit(new GameCommand.MoveAim(0, -1)); // Move aim up
             } else if (code == KeyCode.DOWN || code == KeyCode.S) {
-                game.moveAim(0, 1); // Move aim down
+                actor.submit(new GameCommand.MoveAim(0, 1)); // Move aim down
             } else if (code == KeyCode.LEFT || code == KeyCode.A) {
-                game.moveAim(-1, 0); // Move aim left
+                actor.submit(new GameCommand.MoveAim(-1, 0)); // Move aim left
             } else if (code == KeyCode.RIGHT || code == KeyCode.D) {
-                game.moveAim(1, 0); // Move aim right
+                actor.submit(new GameCommand.MoveAim(1, 0)); // Move aim right
             } else if (code == KeyCode.Q || code == KeyCode.E || code == KeyCode.Z || code == KeyCode.C) {
-                game.rotateCurrentPiece();
+                actor.submit(GameCommand.ROTATE);
             }
         });
     }
@@ -263,6 +358,12 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
     public void shutdownChallenge() {
         // Stop timers, release resources, save state, etc.
         logger.info("Shutting down the challenge");
+        hintEngine.close();
+        timerAnimation.stop();
+        game.stopGame();
+        if (eventLog != null) {
+            eventLog.close();
+        }
         gameWindow.startMenu();
     }
 
@@ -273,7 +374,89 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
      */
     private void rotateNextPiece(GameBlock block) {
         // Rotate the current piece
-        game.rotateCurrentPiece();
+        game.getActor().submit(GameCommand.ROTATE);
+    }
+
+    /**
+     * Called after the game actor has carried out a batch of input
+     *
+     * @param state the state of the game after the batch
+     */
+    private void stateChanged(GameState state) {
+        // Aim movement alone does not change the hint
+        if (state.moves() != hintMoves) {
+            hintMoves = state.moves();
+            refreshHint();
+        }
+    }
+
+    /**
+     * Turn placement hints on or off
+     */
+    private void toggleHints() {
+        hintsEnabled = !hintsEnabled;
+        logger.info("Hints {}", hintsEnabled ? "enabled" : "disabled");
+        if (hintsEnabled) {
+            hintEngine.refresh();
+        } else {
+            hintEngine.cancel();
+            if (gameBoard != null) {
+                gameBoard.clearHint();
+            }
+        }
+    }
+
+    /**
+     * Start a new hint search if hints are on. The search runs in the background.
+     */
+    private void refreshHint() {
+        if (hintsEnabled) {
+            hintEngine.refresh();
+        }
+    }
+
+    /**
+     * Outline the suggested placement on the board
+     *
+     * @param hint the suggested move, or null if there is none
+     */
+    private void showHint(BoardSearch.Move hint) {
+        if (gameBoard == null || !hintsEnabled) {
+            return;
+        }
+        if (hint == null) {
+            gameBoard.clearHint();
+            return;
+        }
+        GamePiece piece = hint.swap() ? game.getFollowingPiece() : game.getCurrentPiece();
+        int[][] blocks = BoardSearch.rotations(piece.getBlocks())[hint.rotation()];
+        gameBoard.showHint(blocks, hint.x(), hint.y());
+    }
+
+    /**
+     * Handle a message from the server, merging high scores into the leaderboard
+     *
+     * @param message the message
+     */
+    private void receiveCommunication(String message) {
+        if (message.startsWith("HISCORES ")) {
+            String scores = message.substring("HISCORES ".length());
+            Leaderboard.load().thenAccept(leaderboard ->
+                    logger.info("Merged {} remote scores into the leaderboard", leaderboard.addHiscores(scores)));
+        }
+    }
+
+    /**
+     * Show the final score's place among every known score
+     *
+     * @param rank the rank, 1 being the best
+     */
+    private void showFinalRank(int rank) {
+        if (rank <= 0) {
+            return;
+        }
+        gameOverLabel.setText("Game Over\nRank " + rank + " of " + game.getRankedAmong());
+        gameOverLabel.setVisible(true);
     }
 
     /**
@@ -289,7 +472,16 @@ public class ChallengeScene extends BaseScene implements NextPieceListener {
             pieceBoard.displayPiece(game.getCurrentPiece());
             // Display the following piece on the following piece board
             followingPieceBoard.displayPiece(game.getFollowingPiece());
-            logger.info("Display updated with current and following pieces.");
+            // Display the pieces queued after them
+            var sequence = game.getPieceSequence();
+            for (int i = 0; i < UPCOMING_SHOWN; i++) {
+                boolean known = i < sequence.getLookahead();
+                upcomingBoards[i].setVisible(known);
+                if (known) {
+                    upcomingBoards[i].displayPiece(GamePiece.createPiece(sequence.peek(i)));
+                }
+            }
+            logger.info("Display updated with current, following and upcoming pieces.");
         });
     }
 }
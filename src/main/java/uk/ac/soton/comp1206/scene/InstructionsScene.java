@@ -11,6 +11,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.PieceBoard;
 import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.ui.AssetPack;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -76,7 +77,7 @@ public class InstructionsScene extends BaseScene {
 
 
         // Load and display the instructions image
-        ImageView imageView = new ImageView(new Image(getClass().getResourceAsStream("/images/instructions.png")));
+        ImageView imageView = new ImageView(new Image(AssetPack.open("/images/Instructions.png")));
         imageView.setFitWidth(gameWindow.getWidth() * 0.7); // Set width to 70% of window
         imageView.setPreserveRatio(true);
         instructionsBox.getChildren().add(imageView);
@@ -89,7 +90,16 @@ public class InstructionsScene extends BaseScene {
     }
 
     /**
-     * Initializes the scene. This method is called after the scene is constructed.
+     * The instructions never change, so they are built once and shown again
+     * @return true
+     */
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
+
+    /**
+     * Initializes the scene. This method is called after the scene is constructed, and each time it is shown again.
      */
     @Override
     public void initialise() {
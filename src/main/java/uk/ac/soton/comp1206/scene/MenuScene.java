@@ -11,8 +11,10 @@ import javafx.scene.text.Text;
 import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.storage.AutoSave;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.QualityController;
 
 /**
  * The main menu of the game. Provides a gateway to the rest of the game.
@@ -21,6 +23,9 @@ public class MenuScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
 
+    private StackPane menuPane;
+    private Button resumeButton;
+
     /**
      * Create a new menu scene
      * @param gameWindow the Game Window this will be displayed in
@@ -40,7 +45,7 @@ public class MenuScene extends BaseScene {
         root = new GamePane(gameWindow.getWidth(),gameWindow.getHeight());
         root.getStyleClass().add("gamepane"); // Ensure the game pane has black background
 
-        StackPane menuPane = new StackPane();
+        menuPane = new StackPane();
         menuPane.setMaxHeight(gameWindow.getHeight());
         menuPane.getStyleClass().add("menu-background");
         root.getChildren().add(menuPane);
@@ -61,6 +66,18 @@ public class MenuScene extends BaseScene {
         playButton.setOnAction(this::startGame);
         menuBox.getChildren().add(playButton);
 
+        //Offer to carry on a game that was interrupted, only shown while there is a save (see initialise)
+        resumeButton = new Button("Resume");
+        resumeButton.getStyleClass().add("menuButton");
+        resumeButton.setOnAction(this::resumeGame);
+        resumeButton.managedProperty().bind(resumeButton.visibleProperty());
+        menuBox.getChildren().add(resumeButton);
+
+        Button spectateButton = new Button("Spectate");
+        spectateButton.getStyleClass().add("menuButton");
+        spectateButton.setOnAction(e -> gameWindow.startSpectator());
+        menuBox.getChildren().add(spectateButton);
+
         Button settingsButton = new Button("Settings");
         settingsButton.getStyleClass().add("menuButton");
         settingsButton.setOnAction(this::showSettings);
@@ -75,18 +92,22 @@ public class MenuScene extends BaseScene {
         exitButton.getStyleClass().add("menuButton");
         exitButton.setOnAction(e -> System.exit(0));
         menuBox.getChildren().add(exitButton);
+    }
 
-
-
-
-        applyFadeInTransition(menuPane);
+    /**
+     * The menu is kept and shown again whenever the player comes back to it
+     * @return true
+     */
+    @Override
+    public boolean isReusable() {
+        return true;
     }
 
     /**
      * Shows the settings for the game
      */
     private void showSettings(ActionEvent actionEvent) {
-        gameWindow.loadScene(new SettingsScene(gameWindow));
+        gameWindow.startSettings();
         logger.info("Settings button clicked");
 
     }
@@ -97,7 +118,7 @@ public class MenuScene extends BaseScene {
      * @param event the event triggered when the button is pressed
      */
     private void showInstructions(ActionEvent event) {
-        gameWindow.loadScene(new InstructionsScene(gameWindow));
+        gameWindow.startInstructions();
     }
 
     /**
@@ -110,6 +131,16 @@ public class MenuScene extends BaseScene {
         logger.info("Initialising Menu");
         Multimedia.playBackgroundMusic("/music/menu.mp3");
 
+        //A game may have been saved or finished since the menu was last shown, the save is memory mapped so checking
+        //is cheap
+        var autoSave = AutoSave.getLocal();
+        resumeButton.setVisible(autoSave != null && autoSave.hasSave());
+
+        // The fade in is skipped at lower quality, where it costs slow machines a stuttering half second
+        if (QualityController.getQuality().hasMenuFade()) {
+            applyFadeInTransition(menuPane);
+        }
+
         // Listen for keyboard events
         scene.setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ESCAPE) {
@@ -145,4 +176,17 @@ public class MenuScene extends BaseScene {
         gameWindow.startChallenge();
     }
 
+    /**
+     * Handle when the Resume button is pressed
+     * @param event event
+     */
+    private void resumeGame(ActionEvent event) {
+        var state = AutoSave.getLocal().load();
+        if (state == null) {
+            gameWindow.startChallenge();
+        } else {
+            gameWindow.resumeChallenge(state);
+        }
+    }
+
 }
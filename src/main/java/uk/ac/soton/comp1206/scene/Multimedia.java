@@ -3,6 +3,9 @@ package uk.ac.soton.comp1206.scene;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The Multimedia class handles playing audio and background music for the game.
  */
@@ -10,6 +13,27 @@ public class Multimedia {
     private static MediaPlayer audioPlayer;
     private static MediaPlayer musicPlayer;
 
+    /**
+     * Media already looked up, so each sound is found on the classpath and opened once rather than on every play
+     */
+    private static final Map<String, Media> media = new HashMap<>();
+
+    /**
+     * Get the media for a classpath resource, looking it up the first time
+     *
+     * @param resourcePath The classpath resource path of the file.
+     * @return the media
+     */
+    private static Media media(String resourcePath) {
+        var found = media.get(resourcePath);
+        if (found == null) {
+            // The media player reads the file itself from a URL, so it cannot be served from the asset pack
+            found = new Media(Multimedia.class.getResource(resourcePath).toExternalForm());
+            media.put(resourcePath, found);
+        }
+        return found;
+    }
+
     /**
      * Plays an audio file once. This method is typically used for sound effects
      *
@@ -18,7 +42,7 @@ public class Multimedia {
     public static void playAudio(String resourcePath) {
         try {
             // Loading media from classpath resources
-            Media sound = new Media(Multimedia.class.getResource(resourcePath).toExternalForm());
+            Media sound = media(resourcePath);
             if (audioPlayer != null) {
                 audioPlayer.stop(); // Stop any currently playing audio
             }
@@ -39,7 +63,7 @@ public class Multimedia {
     public static void playBackgroundMusic(String resourcePath) {
         try {
             // Loading music from classpath resources
-            Media music = new Media(Multimedia.class.getResource(resourcePath).toExternalForm());
+            Media music = media(resourcePath);
             if (musicPlayer != null) {
                 musicPlayer.stop(); // Stop any currently playing music
             }
@@ -2,20 +2,29 @@ package uk.ac.soton.comp1206.scene;
 
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.ToggleButton;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ui.AssetPack;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.ui.QualityController;
+import uk.ac.soton.comp1206.ui.RenderQuality;
 
 public class SettingsScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(SettingsScene.class);
 
+    private static final String AUTOMATIC = "Automatic";
+
+    private ChoiceBox<String> qualityChoice;
+
     /**
      * Constructs a new Settings scene with the specified GameWindow.
      */
@@ -25,9 +34,21 @@ public class SettingsScene extends BaseScene {
 
     }
 
+    /**
+     * Show the current render quality, which may have been changed since the settings were last open
+     */
     @Override
     public void initialise() {
+        qualityChoice.setValue(QualityController.isAutomatic() ? AUTOMATIC : QualityController.getQuality().toString());
+    }
 
+    /**
+     * The settings are kept and shown again, with the choices the player made
+     * @return true
+     */
+    @Override
+    public boolean isReusable() {
+        return true;
     }
     /**
      * Build the Settings layout
@@ -56,8 +77,8 @@ public class SettingsScene extends BaseScene {
 
         // Create a toggle button for muting music
         ToggleButton muteButton = new ToggleButton();
-        Image muteImage = new Image(getClass().getResourceAsStream("/images/volume-silent-line-icon.png"));
-        Image unmuteImage = new Image(getClass().getResourceAsStream("/images/volume-full-line-icon.png"));
+        Image muteImage = new Image(AssetPack.open("/images/volume-silent-line-icon.png"));
+        Image unmuteImage = new Image(AssetPack.open("/images/volume-full-line-icon.png"));
         muteButton.setMinWidth(gameWindow.getWidth() * 0.5);
         muteButton.setGraphic(new ImageView(unmuteImage)); // Default to unmuted
 
@@ -74,6 +95,27 @@ public class SettingsScene extends BaseScene {
 
         settingsBox.getChildren().add(muteButton);
 
+        // Render quality, automatic by default so slow machines drop effects when frames are late
+        Text qualityTitle = new Text("Graphics");
+        qualityTitle.getStyleClass().add("heading");
+        settingsBox.getChildren().add(qualityTitle);
+
+        qualityChoice = new ChoiceBox<>();
+        qualityChoice.getItems().add(AUTOMATIC);
+        for (RenderQuality level : RenderQuality.values()) {
+            qualityChoice.getItems().add(level.toString());
+        }
+        qualityChoice.setMinWidth(gameWindow.getWidth() * 0.5);
+        qualityChoice.setValue(QualityController.isAutomatic() ? AUTOMATIC : QualityController.getQuality().toString());
+        qualityChoice.setOnAction(e -> {
+            int chosen = qualityChoice.getSelectionModel().getSelectedIndex();
+            if (chosen <= 0) {
+                QualityController.setAutomatic();
+            } else {
+                QualityController.setQuality(RenderQuality.values()[chosen - 1]);
+            }
+        });
+        settingsBox.getChildren().add(qualityChoice);
 
     }
 }
@@ -0,0 +1,240 @@
+package uk.ac.soton.comp1206.scene;
+
+import javafx.scene.input.KeyCode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.BoardWall;
+import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.game.BoardSearch;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.PieceSequence;
+import uk.ac.soton.comp1206.network.BoardDecoder;
+import uk.ac.soton.comp1206.ui.GamePane;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Spectator scene shows many live boards at once on a single BoardWall.
+ *
+ * Boards broadcast by players in multiplayer games are shown first, in the order they appear. Every other tile is
+ * filled by a local bot that plays its own game, so the wall is never empty. The number of boards comes from the
+ * tetrecs.spectate.boards system property, between 1 and 100, 36 by default.
+ *
+ * The server only relays boards within a channel, so the scene joins the channel named by the tetrecs.spectate.channel
+ * system property, and parts it again on leaving. The server only lets a channel be joined before its game starts, and
+ * counts the spectator as one of its members. Without the property no channel is joined and only bots are shown.
+ */
+public class SpectatorScene extends BaseScene {
+
+    private static final Logger logger = LogManager.getLogger(SpectatorScene.class);
+
+    private static final int COLS = 5;
+    private static final int ROWS = 5;
+
+    /**
+     * Time between bot moves, in milliseconds
+     */
+    private static final long BOT_INTERVAL = 250;
+
+    private final int tiles = Math.max(1, Math.min(100, Integer.getInteger("tetrecs.spectate.boards", 36)));
+
+    private final String channel = System.getProperty("tetrecs.spectate.channel");
+
+    private final CommunicationsListener listener = this::receiveCommunication;
+
+    private BoardWall wall;
+    private Bot[] bots;
+    private ScheduledExecutorService botThread;
+
+    /**
+     * Boards broadcast by other players, by nickname
+     */
+    private final Map<String, Remote> remotes = new ConcurrentHashMap<>();
+
+    /**
+     * Tiles below this index show remote players, bots only play on the rest
+     */
+    private final AtomicInteger remoteTiles = new AtomicInteger(0);
+
+    /**
+     * A board broadcast by another player
+     */
+    private record Remote(String name, int tile, BoardDecoder decoder) {
+    }
+
+    /**
+     * Create a new spectator scene
+     *
+     * @param gameWindow the game window
+     */
+    public SpectatorScene(GameWindow gameWindow) {
+        super(gameWindow);
+        logger.info("Creating Spectator Scene");
+    }
+
+    /**
+     * Build the wall of boards
+     */
+    @Override
+    public void build() {
+        root = new GamePane(gameWindow.getWidth(), gameWindow.getHeight());
+        root.getStyleClass().add("gamepane");
+
+        wall = new BoardWall(tiles, COLS, ROWS, gameWindow.getWidth(), gameWindow.getHeight());
+        root.getChildren().add(wall);
+
+        bots = new Bot[tiles];
+        for (int tile = 0; tile < tiles; tile++) {
+            bots[tile] = new Bot(tile);
+            wall.setLabel(tile, "Bot " + (tile + 1));
+        }
+    }
+
+    /**
+     * Start the bots and listen for board broadcasts
+     */
+    @Override
+    public void initialise() {
+        logger.info("Initialising Spectator with {} boards", tiles);
+        //Boards are decoded on the reader thread, the wall collects updates from any thread and draws them once a pulse
+        gameWindow.getCommunicator().addDirectListener(listener);
+        if (channel != null && !channel.isBlank()) {
+            gameWindow.getCommunicator().send("JOIN " + channel);
+        }
+
+        botThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "Spectator Bots");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        botThread.scheduleAtFixedRate(this::stepBots, 0, BOT_INTERVAL, TimeUnit.MILLISECONDS);
+
+        scene.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ESCAPE) {
+                shutdown();
+            }
+        });
+    }
+
+    /**
+     * Stop the bots, stop listening for boards and go back to the menu
+     */
+    private void shutdown() {
+        logger.info("Leaving spectator, {} cells drawn", wall.getCellsPainted());
+        botThread.shutdownNow();
+        gameWindow.getCommunicator().removeListener(listener);
+        if (channel != null && !channel.isBlank()) {
+            gameWindow.getCommunicator().send("PART");
+        }
+        gameWindow.startMenu();
+    }
+
+    /**
+     * Handle a message from the server, picking out board broadcasts
+     *
+     * @param message the message
+     */
+    private void receiveCommunication(String message) {
+        if (message.startsWith("ERROR ")) {
+            logger.warn("Server refused: {}", message.substring(6));
+            return;
+        }
+        if (!message.startsWith("BOARD ")) {
+            return;
+        }
+        int colon = message.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        String player = message.substring(6, colon);
+        var remote = remotes.computeIfAbsent(player, name -> {
+            int tile = remoteTiles.getAndIncrement();
+            if (tile >= tiles) {
+                return null;
+            }
+            return new Remote(name, tile, new BoardDecoder(COLS, ROWS));
+        });
+        if (remote == null) {
+            //Wall is full
+            return;
+        }
+        //Label the tile with every message, in case a bot that was mid move when the tile was claimed labelled it
+        wall.setLabel(remote.tile(), remote.name());
+        if (remote.decoder().apply(message.substring(colon + 1))) {
+            int[] cells = new int[COLS * ROWS];
+            for (int y = 0; y < ROWS; y++) {
+                for (int x = 0; x < COLS; x++) {
+                    cells[y * COLS + x] = remote.decoder().get(x, y);
+                }
+            }
+            wall.update(remote.tile(), cells);
+        }
+    }
+
+    /**
+     * Let every bot not displaced by a remote player make one move
+     */
+    private void stepBots() {
+        try {
+            for (int tile = remoteTiles.get(); tile < tiles; tile++) {
+                bots[tile].step();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Bot failed", e);
+        }
+    }
+
+    /**
+     * A local bot playing its own game with the placement search
+     */
+    private class Bot {
+        private final int tile;
+        private final int[] cells = new int[COLS * ROWS];
+        private final PieceSequence sequence = PieceSequence.createDefault();
+        private GamePiece current = GamePiece.createPiece(sequence.next());
+        private GamePiece following = GamePiece.createPiece(sequence.next());
+        private int score = 0;
+        private int games = 1;
+
+        Bot(int tile) {
+            this.tile = tile;
+        }
+
+        void step() {
+            var after = GamePiece.createPiece(sequence.peek(0)).getBlocks();
+            var move = BoardSearch.best(cells, COLS, ROWS, current.getBlocks(), following.getBlocks(), after,
+                    () -> false);
+            if (move == null) {
+                //Nowhere to go: start a new game
+                Arrays.fill(cells, 0);
+                score = 0;
+                games++;
+            } else {
+                if (move.swap()) {
+                    var swapped = current;
+                    current = following;
+                    following = swapped;
+                }
+                var blocks = BoardSearch.rotations(current.getBlocks())[move.rotation()];
+                BoardSearch.place(cells, COLS, blocks, move.x(), move.y());
+                score += BoardSearch.clearLines(cells, COLS, ROWS);
+                current = following;
+                following = GamePiece.createPiece(sequence.next());
+            }
+            if (tile < remoteTiles.get()) {
+                //A remote player claimed this tile while the bot was thinking
+                return;
+            }
+            wall.update(tile, cells.clone());
+            wall.setLabel(tile, "Bot " + (tile + 1) + " #" + games + ": " + score);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.SaveState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the game in progress on disk, so it can be resumed after the game is closed or the machine loses power.
+ *
+ * The save file is memory mapped and holds two fixed size slots. Each save goes to the older slot with a sequence
+ * number and a CRC32 checksum, so a save torn by a power cut leaves the previous one intact. Loading reads the newest
+ * valid slot straight from the mapping, which takes microseconds.
+ *
+ * Saving is write-behind: {@link #save(SaveState)} encodes the state and hands it to a background thread, which writes
+ * and forces only the latest state if several arrive while it is busy. The game thread never waits for the disk.
+ */
+public class AutoSave implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(AutoSave.class);
+
+    private static final int SLOT_MAGIC = 0x54534156;
+
+    /**
+     * A slot header: magic, sequence number, payload length and CRC32 of the payload
+     */
+    private static final int SLOT_HEADER = 4 + 8 + 4 + 4;
+
+    /**
+     * Size of each slot, header included
+     */
+    private static final int SLOT_SIZE = 1024;
+
+    private static final String SAVE_FILE = "autosave.bin";
+
+    /**
+     * Queued by clear to wipe both slots
+     */
+    private static final byte[] CLEAR = new byte[0];
+
+    private static AutoSave local;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Latest encoded state not yet written, or CLEAR. Guarded by this.
+     */
+    private byte[] pending;
+    private long sequence = 0;
+    private long requested = 0;
+    private long written = 0;
+
+    /**
+     * Open (or create) the save file in the given directory
+     * @param directory directory holding the save file
+     * @throws IOException if the file cannot be opened
+     */
+    public AutoSave(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        channel = FileChannel.open(directory.resolve(SAVE_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * SLOT_SIZE);
+        for (int slot = 0; slot < 2; slot++) {
+            if (isValid(slot)) {
+                sequence = Math.max(sequence, mapped.getLong(slot * SLOT_SIZE + 4));
+            }
+        }
+
+        writer = new Thread(this::writeLoop, "Auto Save Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Get the shared save file in the user's home directory, opening it on first use
+     * @return the local auto save, or null if it cannot be opened
+     */
+    public static synchronized AutoSave getLocal() {
+        if (local == null) {
+            try {
+                local = new AutoSave(Path.of(System.getProperty("user.home"), ".tetrecs"));
+                Runtime.getRuntime().addShutdownHook(new Thread(local::close));
+            } catch (IOException e) {
+                logger.error("Unable to open auto save: {}", e.getMessage());
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Save a game. The state is encoded straight away and written to disk in the background, replacing any save still
+     * waiting to be written.
+     * @param state the game to save
+     */
+    public void save(SaveState state) {
+        var buffer = ByteBuffer.allocate(state.encodedSize());
+        state.encode(buffer);
+        if (buffer.capacity() > SLOT_SIZE - SLOT_HEADER) {
+            logger.warn("Game is too large to auto save ({} bytes)", buffer.capacity());
+            return;
+        }
+        submit(buffer.array());
+    }
+
+    /**
+     * Remove the saved game, for example once it has finished
+     */
+    public void clear() {
+        submit(CLEAR);
+    }
+
+    /**
+     * Read the newest saved game
+     * @return the saved game, or null if there is none or both slots are unreadable
+     */
+    public synchronized SaveState load() {
+        long start = System.nanoTime();
+        for (int slot : slotsNewestFirst()) {
+            if (!isValid(slot)) {
+                continue;
+            }
+            int offset = slot * SLOT_SIZE;
+            int length = mapped.getInt(offset + 12);
+            try {
+                var state = SaveState.decode(mapped.slice(offset + SLOT_HEADER, length));
+                logger.info("Loaded saved game in {} us", (System.nanoTime() - start) / 1000);
+                return state;
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring unreadable save in slot {}: {}", slot, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether there is a saved game to resume
+     * @return true if a slot holds a valid save
+     */
+    public synchronized boolean hasSave() {
+        return isValid(0) || isValid(1);
+    }
+
+    /**
+     * Wait until everything saved so far has been written to disk
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (written < requested && running) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Write out anything pending, stop the writer thread and close the file
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            writer.join(5000);
+            byte[] remaining;
+            synchronized (this) {
+                remaining = pending;
+                pending = null;
+            }
+            if (remaining != null) {
+                write(remaining);
+            }
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing auto save: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void submit(byte[] encoded) {
+        pending = encoded;
+        requested++;
+        notifyAll();
+    }
+
+    /**
+     * Background loop: wait for a save, then write whichever one is newest
+     */
+    private void writeLoop() {
+        while (running) {
+            byte[] next;
+            long upTo;
+            synchronized (this) {
+                while (pending == null && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                next = pending;
+                pending = null;
+                upTo = requested;
+            }
+            if (next == null) {
+                return;
+            }
+            try {
+                write(next);
+            } catch (IOException e) {
+                logger.error("Unable to auto save: {}", e.getMessage());
+            }
+            synchronized (this) {
+                written = upTo;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write an encoded state into the older slot, or wipe both slots, and force it to disk
+     */
+    private void write(byte[] encoded) throws IOException {
+        synchronized (this) {
+            if (encoded == CLEAR) {
+                mapped.putInt(0, 0);
+                mapped.putInt(SLOT_SIZE, 0);
+            } else {
+                sequence++;
+                int offset = (int) (sequence & 1) * SLOT_SIZE;
+                var crc = new CRC32();
+                crc.update(encoded);
+                //Invalidate the slot first, so a torn write can never look like a finished one
+                mapped.putInt(offset, 0);
+                mapped.put(offset + SLOT_HEADER, encoded);
+                mapped.putLong(offset + 4, sequence).putInt(offset + 12, encoded.length);
+                mapped.putInt(offset + 16, (int) crc.getValue());
+                mapped.putInt(offset, SLOT_MAGIC);
+            }
+        }
+        //Forcing happens outside the lock so loading is never held up by the disk
+        mapped.force();
+    }
+
+    private boolean isValid(int slot) {
+        int offset = slot * SLOT_SIZE;
+        if (mapped.getInt(offset) != SLOT_MAGIC) {
+            return false;
+        }
+        int length = mapped.getInt(offset + 12);
+        if (length <= 0 || length > SLOT_SIZE - SLOT_HEADER) {
+            return false;
+        }
+        byte[] payload = new byte[length];
+        mapped.get(offset + SLOT_HEADER, payload);
+        var crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == mapped.getInt(offset + 16);
+    }
+
+    private int[] slotsNewestFirst() {
+        return mapped.getLong(4) >= mapped.getLong(SLOT_SIZE + 4) ? new int[]{0, 1} : new int[]{1, 0};
+    }
+}
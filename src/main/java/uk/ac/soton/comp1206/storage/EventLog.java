@@ -0,0 +1,343 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A compact binary log of everything that happens in one session, for working out how people really play.
+ *
+ * The file starts with a {@link #HEADER} byte header, followed by fixed size {@link #RECORD} byte records, so any
+ * record can be found by its index and a large log can be split between threads without reading it first (see
+ * {@link EventLogAnalyzer}). Each record is laid out as:
+ * <pre>
+ * 0  type        1  piece value   2  rotation   3  x      4  y
+ * 5  level       6  lines         7  blocks     8  millis (int)   12 value (int)
+ * </pre>
+ * Millis is game time, so pauses are not counted. What value holds depends on the type of event.
+ *
+ * Recording is write-behind: the game thread copies the record into a buffer, and a background thread writes the
+ * buffer out while the game carries on with a second one. Recording never allocates or waits for the disk. If the
+ * disk falls so far behind that both buffers are full, events are dropped and counted rather than holding up the game.
+ */
+public class EventLog implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(EventLog.class);
+
+    static final int MAGIC = 0x544C4F47;
+    static final int FORMAT = 1;
+
+    /**
+     * Size of the file header: magic, format, columns, rows, start time and record size
+     */
+    public static final int HEADER = 32;
+
+    /**
+     * Size of every record
+     */
+    public static final int RECORD = 16;
+
+    /**
+     * A game started. Value is the score it started with, which is only non-zero for a resumed game.
+     */
+    public static final byte GAME_START = 1;
+
+    /**
+     * A piece was placed centred on (x, y). Millis is how long the player took, value is the score beforehand.
+     */
+    public static final byte PLACE = 2;
+
+    /**
+     * A placement cleared lines. Level is the level it was made at, value is the points it scored.
+     */
+    public static final byte CLEAR = 3;
+
+    /**
+     * The player ran out of time. Millis is the time they had, value is the lives left.
+     */
+    public static final byte EXPIRE = 4;
+
+    /**
+     * The current and following pieces were swapped. Piece and rotation are the new current piece.
+     */
+    public static final byte SWAP = 5;
+
+    /**
+     * The player reached a new level. Value is the score.
+     */
+    public static final byte LEVEL_UP = 6;
+
+    /**
+     * The game ended. Value is the final score.
+     */
+    public static final byte GAME_OVER = 7;
+
+    /**
+     * Records each buffer can hold before the writer has to catch up
+     */
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Filled by the game thread. Guarded by this.
+     */
+    private ByteBuffer filling = ByteBuffer.allocate(BUFFER_RECORDS * RECORD);
+
+    /**
+     * Written by the writer thread while the game fills the other buffer
+     */
+    private ByteBuffer draining = ByteBuffer.allocate(BUFFER_RECORDS * RECORD);
+
+    /**
+     * Whether the writer thread is writing the draining buffer. Guarded by this.
+     */
+    private boolean writing = false;
+
+    private long recorded = 0;
+    private long dropped = 0;
+
+    /**
+     * Create a new log file for a session on a board of the given size
+     * @param file the file to write, replaced if it exists
+     * @param cols number of columns
+     * @param rows number of rows
+     * @throws IOException if the file cannot be created
+     */
+    public EventLog(Path file, int cols, int rows) throws IOException {
+        this.file = file;
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        var header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(FORMAT).putInt(cols).putInt(rows).putLong(System.currentTimeMillis())
+                .putInt(RECORD);
+        header.rewind();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        writer = new Thread(this::writeLoop, "Event Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start a new log in the logs folder of the .tetrecs folder in the user's home directory, named after the time
+     * @param cols number of columns
+     * @param rows number of rows
+     * @return the log, or null if it cannot be created
+     */
+    public static EventLog openSession(int cols, int rows) {
+        var name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".tlog";
+        var file = Path.of(System.getProperty("user.home"), ".tetrecs", "logs", name);
+        try {
+            var log = new EventLog(file, cols, rows);
+            logger.info("Logging events to {}", file);
+            return log;
+        } catch (IOException e) {
+            logger.error("Unable to create event log {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Record the start of a game
+     * @param level starting level
+     * @param score starting score
+     */
+    public void gameStarted(int level, int score) {
+        record(GAME_START, 0, 0, 0, 0, level, 0, 0, 0, score);
+    }
+
+    /**
+     * Record a placement
+     * @param piece value of the piece
+     * @param rotation rotation of the piece
+     * @param x column of the centre of the piece
+     * @param y row of the centre of the piece
+     * @param level level it was placed at
+     * @param millis game time taken to place it
+     * @param score score before it was placed
+     */
+    public void placed(int piece, int rotation, int x, int y, int level, int millis, int score) {
+        record(PLACE, piece, rotation, x, y, level, 0, 0, millis, score);
+    }
+
+    /**
+     * Record lines being cleared
+     * @param lines number of lines
+     * @param blocks number of blocks
+     * @param level level the placement was made at
+     * @param points points scored
+     */
+    public void cleared(int lines, int blocks, int level, int points) {
+        record(CLEAR, 0, 0, 0, 0, level, lines, blocks, 0, points);
+    }
+
+    /**
+     * Record the player running out of time
+     * @param level level at the time
+     * @param millis game time the player had
+     * @param lives lives left
+     */
+    public void expired(int level, int millis, int lives) {
+        record(EXPIRE, 0, 0, 0, 0, level, 0, 0, millis, lives);
+    }
+
+    /**
+     * Record a swap
+     * @param piece value of the new current piece
+     * @param rotation rotation of the new current piece
+     * @param level level at the time
+     */
+    public void swapped(int piece, int rotation, int level) {
+        record(SWAP, piece, rotation, 0, 0, level, 0, 0, 0, 0);
+    }
+
+    /**
+     * Record a new level
+     * @param level the new level
+     * @param score score on reaching it
+     */
+    public void levelUp(int level, int score) {
+        record(LEVEL_UP, 0, 0, 0, 0, level, 0, 0, 0, score);
+    }
+
+    /**
+     * Record the end of a game
+     * @param level final level
+     * @param score final score
+     */
+    public void gameOver(int level, int score) {
+        record(GAME_OVER, 0, 0, 0, 0, level, 0, 0, 0, score);
+    }
+
+    /**
+     * Get the file being written
+     * @return log file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Get the number of events dropped because the disk could not keep up
+     * @return dropped events
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Wait until every event recorded so far has been written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        while ((filling.position() > 0 || writing) && running) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Write out anything pending, stop the writer thread and close the file
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            writer.join(5000);
+            synchronized (this) {
+                write(filling);
+            }
+            channel.close();
+            logger.info("Closed event log {} with {} events, {} dropped", file, recorded, dropped);
+        } catch (IOException e) {
+            logger.error("Error closing event log: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void record(byte type, int piece, int rotation, int x, int y, int level, int lines,
+                                     int blocks, int millis, int value) {
+        if (!running) {
+            return;
+        }
+        if (filling.remaining() < RECORD) {
+            dropped++;
+            return;
+        }
+        boolean wasEmpty = filling.position() == 0;
+        filling.put(type).put((byte) piece).put((byte) rotation).put((byte) x).put((byte) y)
+                .put((byte) Math.min(level, 255)).put((byte) lines).put((byte) Math.min(blocks, 255))
+                .putInt(millis).putInt(value);
+        recorded++;
+        if (wasEmpty) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Background loop: wait for events, swap buffers and write out the full one
+     */
+    private void writeLoop() {
+        while (running) {
+            ByteBuffer full;
+            synchronized (this) {
+                while (filling.position() == 0 && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                full = filling;
+                filling = draining;
+                draining = full;
+                writing = true;
+            }
+            try {
+                write(full);
+            } catch (IOException e) {
+                logger.error("Unable to write event log: {}", e.getMessage());
+                full.clear();
+            }
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
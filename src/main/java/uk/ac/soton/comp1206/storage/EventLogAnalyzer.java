@@ -0,0 +1,316 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Reports how people play from any number of {@link EventLog} files: how often each piece is used, how often
+ * placements clear lines at each level, and how long players take over each move.
+ *
+ * Logs are never loaded into memory. Every file is cut into chunks of whole records, each chunk is memory mapped and
+ * scanned on its own, and the counts from all chunks are added together, so gigabytes of logs are spread across every
+ * core. Records are fixed size, so a chunk can start anywhere without reading what comes before it.
+ *
+ * Usage: {@code EventLogAnalyzer [file or directory...]}, by default the logs folder of the .tetrecs folder in the
+ * user's home directory. Directories are searched for .tlog files.
+ */
+public class EventLogAnalyzer {
+
+    private static final Logger logger = LogManager.getLogger(EventLogAnalyzer.class);
+
+    /**
+     * Records scanned by one task, 64MB of log
+     */
+    private static final long CHUNK_RECORDS = 4L << 20;
+
+    /**
+     * Width of each bucket of the move time distribution
+     */
+    private static final int BUCKET_MILLIS = 10;
+
+    /**
+     * Number of move time buckets, the last one holding every move of 30 seconds or more
+     */
+    private static final int BUCKETS = 3000;
+
+    private static final int LEVELS = 256;
+
+    /**
+     * Part of one log file
+     */
+    record Chunk(Path file, long offset, long records) {
+    }
+
+    /**
+     * Totals from some part of the logs. Totals from different parts are combined with {@link #merge(Stats)}.
+     */
+    static final class Stats {
+        long records = 0;
+        long games = 0;
+        long finishedGames = 0;
+        long finalScores = 0;
+        long swaps = 0;
+        final long[] pieces = new long[GamePiece.PIECES + 1];
+        final long[] swappedTo = new long[GamePiece.PIECES + 1];
+        final long[] placements = new long[LEVELS];
+        final long[] clears = new long[LEVELS];
+        final long[] lines = new long[LEVELS];
+        final long[] expiries = new long[LEVELS];
+        final long[] moveTimes = new long[BUCKETS];
+        long moves = 0;
+        long moveMillis = 0;
+
+        void add(ByteBuffer log, int offset) {
+            records++;
+            int type = log.get(offset);
+            int piece = log.get(offset + 1) & 0xFF;
+            int level = log.get(offset + 5) & 0xFF;
+            int millis = log.getInt(offset + 8);
+            int value = log.getInt(offset + 12);
+            switch (type) {
+                case EventLog.GAME_START -> games++;
+                case EventLog.GAME_OVER -> {
+                    finishedGames++;
+                    finalScores += value;
+                }
+                case EventLog.PLACE -> {
+                    if (piece < pieces.length) {
+                        pieces[piece]++;
+                    }
+                    placements[level]++;
+                    move(millis);
+                }
+                case EventLog.CLEAR -> {
+                    clears[level]++;
+                    lines[level] += log.get(offset + 6) & 0xFF;
+                }
+                case EventLog.EXPIRE -> {
+                    expiries[level]++;
+                    move(millis);
+                }
+                case EventLog.SWAP -> {
+                    swaps++;
+                    if (piece < swappedTo.length) {
+                        swappedTo[piece]++;
+                    }
+                }
+                default -> {
+                    //Level ups and any newer event types are only counted
+                }
+            }
+        }
+
+        private void move(int millis) {
+            int clamped = Math.max(0, millis);
+            moveTimes[Math.min(BUCKETS - 1, clamped / BUCKET_MILLIS)]++;
+            moves++;
+            moveMillis += clamped;
+        }
+
+        Stats merge(Stats other) {
+            records += other.records;
+            games += other.games;
+            finishedGames += other.finishedGames;
+            finalScores += other.finalScores;
+            swaps += other.swaps;
+            moves += other.moves;
+            moveMillis += other.moveMillis;
+            addAll(pieces, other.pieces);
+            addAll(swappedTo, other.swappedTo);
+            addAll(placements, other.placements);
+            addAll(clears, other.clears);
+            addAll(lines, other.lines);
+            addAll(expiries, other.expiries);
+            addAll(moveTimes, other.moveTimes);
+            return this;
+        }
+
+        private static void addAll(long[] into, long[] from) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += from[i];
+            }
+        }
+
+        /**
+         * The move time below which the given fraction of moves fall, to the nearest bucket
+         */
+        int percentile(double fraction) {
+            long target = (long) Math.ceil(moves * fraction);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += moveTimes[bucket];
+                if (seen >= target && seen > 0) {
+                    return (bucket + 1) * BUCKET_MILLIS;
+                }
+            }
+            return BUCKETS * BUCKET_MILLIS;
+        }
+    }
+
+    /**
+     * Analyse logs and print the report
+     * @param args log files or directories of them
+     * @throws IOException if the logs cannot be listed
+     */
+    public static void main(String[] args) throws IOException {
+        var paths = new ArrayList<Path>();
+        for (String arg : args) {
+            paths.add(Path.of(arg));
+        }
+        if (paths.isEmpty()) {
+            paths.add(Path.of(System.getProperty("user.home"), ".tetrecs", "logs"));
+        }
+
+        long start = System.nanoTime();
+        var chunks = chunks(paths);
+        var stats = analyse(chunks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report(stats);
+        System.out.printf(Locale.ROOT, "%nScanned %d events (%.1f MB) in %d chunks in %.2f s%n", stats.records,
+                stats.records * (double) EventLog.RECORD / (1 << 20), chunks.size(), seconds);
+    }
+
+    /**
+     * Add up every event in the given chunks, one chunk per task
+     * @param chunks the chunks
+     * @return the totals
+     */
+    static Stats analyse(List<Chunk> chunks) {
+        return chunks.parallelStream()
+                .map(EventLogAnalyzer::scan)
+                .reduce(Stats::merge)
+                .orElseGet(Stats::new);
+    }
+
+    /**
+     * Cut every log under the given paths into chunks of whole records, skipping files that are not logs
+     * @param paths files or directories
+     * @return the chunks
+     * @throws IOException if a directory cannot be listed
+     */
+    static List<Chunk> chunks(List<Path> paths) throws IOException {
+        var files = new ArrayList<Path>();
+        for (var path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> found = Files.walk(path)) {
+                    found.filter(file -> file.getFileName().toString().endsWith(".tlog")).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+
+        var chunks = new ArrayList<Chunk>();
+        var header = ByteBuffer.allocate(EventLog.HEADER);
+        for (var file : files) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                    //Keep reading until the header is complete or the file ends
+                }
+                if (header.hasRemaining() || header.getInt(0) != EventLog.MAGIC
+                        || header.getInt(24) != EventLog.RECORD) {
+                    logger.warn("Skipping {}, not an event log", file);
+                    continue;
+                }
+                //A log still being written can end part way through a record, which is left out
+                long records = (channel.size() - EventLog.HEADER) / EventLog.RECORD;
+                for (long first = 0; first < records; first += CHUNK_RECORDS) {
+                    chunks.add(new Chunk(file, EventLog.HEADER + first * EventLog.RECORD,
+                            Math.min(CHUNK_RECORDS, records - first)));
+                }
+            } catch (IOException e) {
+                logger.warn("Skipping {}: {}", file, e.getMessage());
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Map one chunk and add up its events
+     */
+    private static Stats scan(Chunk chunk) {
+        var stats = new Stats();
+        try (var channel = FileChannel.open(chunk.file(), StandardOpenOption.READ)) {
+            var log = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset(), chunk.records() * EventLog.RECORD);
+            int end = log.capacity();
+            for (int offset = 0; offset < end; offset += EventLog.RECORD) {
+                stats.add(log, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + chunk.file(), e);
+        }
+        return stats;
+    }
+
+    private static void report(Stats stats) {
+        System.out.printf(Locale.ROOT, "Games started %d, finished %d, average final score %.0f%n", stats.games,
+                stats.finishedGames, stats.finishedGames == 0 ? 0.0 : stats.finalScores / (double) stats.finishedGames);
+
+        long placed = 0;
+        for (long count : stats.pieces) {
+            placed += count;
+        }
+        System.out.printf("%nPiece usage%n%-16s %10s %8s %10s%n", "piece", "placed", "share", "swapped to");
+        for (int value = 1; value < stats.pieces.length; value++) {
+            System.out.printf(Locale.ROOT, "%-16s %10d %7.2f%% %10d%n", GamePiece.createPiece(value - 1),
+                    stats.pieces[value], placed == 0 ? 0.0 : 100.0 * stats.pieces[value] / placed,
+                    stats.swappedTo[value]);
+        }
+        System.out.printf(Locale.ROOT, "%d swaps, %.2f per placement%n", stats.swaps,
+                placed == 0 ? 0.0 : stats.swaps / (double) placed);
+
+        System.out.printf("%nClears by level%n%-6s %10s %10s %8s %10s %10s%n", "level", "placed", "clears", "rate",
+                "lines", "timeouts");
+        for (int level = 0; level < LEVELS; level++) {
+            if (stats.placements[level] == 0 && stats.expiries[level] == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-6d %10d %10d %7.2f%% %10d %10d%n", level, stats.placements[level],
+                    stats.clears[level],
+                    stats.placements[level] == 0 ? 0.0 : 100.0 * stats.clears[level] / stats.placements[level],
+                    stats.lines[level], stats.expiries[level]);
+        }
+
+        System.out.printf(Locale.ROOT, "%nTime per move (%d moves, timeouts included)%n", stats.moves);
+        if (stats.moves > 0) {
+            System.out.printf(Locale.ROOT, "mean %.0f ms, p50 %d ms, p90 %d ms, p99 %d ms%n",
+                    stats.moveMillis / (double) stats.moves, stats.percentile(0.5), stats.percentile(0.9),
+                    stats.percentile(0.99));
+            int perRow = 1000 / BUCKET_MILLIS;
+            long peak = 1;
+            for (int second = 0; second < BUCKETS / perRow; second++) {
+                peak = Math.max(peak, secondTotal(stats, second, perRow));
+            }
+            for (int second = 0; second < BUCKETS / perRow; second++) {
+                long count = secondTotal(stats, second, perRow);
+                if (count == 0) {
+                    continue;
+                }
+                String label = second == BUCKETS / perRow - 1 ? (second + "s+") : (second + "-" + (second + 1) + "s");
+                System.out.printf(Locale.ROOT, "%-7s %10d %s%n", label, count, "#".repeat((int) (40 * count / peak)));
+            }
+        }
+    }
+
+    private static long secondTotal(Stats stats, int second, int perRow) {
+        long total = 0;
+        for (int bucket = second * perRow; bucket < (second + 1) * perRow; bucket++) {
+            total += stats.moveTimes[bucket];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,342 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A leaderboard of every known score, local and remote, that answers rank queries in logarithmic time.
+ *
+ * Scores are kept in an order statistic tree (a treap where every node also stores the size of its subtree), ordered
+ * from highest to lowest score and then by arrival. Inserting, finding the rank of a score and fetching the score at a
+ * rank all take O(log n) expected time, and reading k neighbouring scores takes O(log n + k), however many scores are
+ * held.
+ *
+ * The leaderboard is safe to use from several threads: inserts from finished games take the write lock, queries share
+ * the read lock. Building the shared leaderboard reads the whole local score store, so it should be started early with
+ * {@link #load()}, which does it on a background thread, rather than on the JavaFX thread at the end of a game.
+ */
+public class Leaderboard {
+
+    private static final Logger logger = LogManager.getLogger(Leaderboard.class);
+
+    private static Leaderboard shared;
+    private static CompletableFuture<Leaderboard> loading;
+
+    /**
+     * A node in the tree
+     */
+    private static final class Node {
+        final ScoreEntry entry;
+        final long order;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(ScoreEntry entry, long order) {
+            this.entry = entry;
+            this.order = order;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+    private long nextOrder = 0;
+
+    /**
+     * Number of scores held for each name and score, so the same remote scores received again are not added twice
+     */
+    private final Map<String, Integer> held = new HashMap<>();
+
+    /**
+     * Get the shared leaderboard, loading every score from the local score store on first use
+     * @return the shared leaderboard
+     */
+    public static synchronized Leaderboard getShared() {
+        if (shared == null) {
+            shared = new Leaderboard();
+            var store = ScoreStore.getLocal();
+            if (store != null) {
+                store.forEach(shared::add);
+            }
+            logger.info("Loaded leaderboard with {} scores", shared.size());
+        }
+        return shared;
+    }
+
+    /**
+     * Start loading the shared leaderboard on a background thread, if it is not already loaded or loading
+     * @return completes with the shared leaderboard once it is loaded
+     */
+    public static synchronized CompletableFuture<Leaderboard> load() {
+        if (loading == null) {
+            loading = CompletableFuture.supplyAsync(Leaderboard::getShared, runnable -> {
+                var thread = new Thread(runnable, "Leaderboard Loader");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return loading;
+    }
+
+    /**
+     * Add a score
+     * @param entry the score
+     * @return the rank of the new score, 1 being the best
+     */
+    public int add(ScoreEntry entry) {
+        lock.writeLock().lock();
+        try {
+            insert(entry);
+            return countHigher(entry.score()) + 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merge in the scores from a HISCORES message received from the server. The server sends its whole list every
+     * time, and it includes scores this player submitted, so a name and score is only added as many times as it
+     * appears in the message beyond the copies already held.
+     * @param scores the message body, one name:score pair per line
+     * @return number of scores added
+     */
+    public int addHiscores(String scores) {
+        var wanted = new LinkedHashMap<String, Integer>();
+        for (String line : scores.split("\n")) {
+            int colon = line.lastIndexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            try {
+                int score = Integer.parseInt(line.substring(colon + 1).trim());
+                wanted.merge(key(line.substring(0, colon), score), 1, Integer::sum);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring malformed score: {}", line);
+            }
+        }
+
+        int added = 0;
+        lock.writeLock().lock();
+        try {
+            for (var want : wanted.entrySet()) {
+                String key = want.getKey();
+                int colon = key.lastIndexOf(':');
+                var entry = new ScoreEntry(key.substring(0, colon), Integer.parseInt(key.substring(colon + 1)), 0);
+                for (int i = held.getOrDefault(key, 0); i < want.getValue(); i++) {
+                    insert(entry);
+                    added++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return added;
+    }
+
+    /**
+     * Get the rank a score has, or would have, on the leaderboard
+     * @param score the score
+     * @return 1 plus the number of strictly higher scores
+     */
+    public int rankOf(int score) {
+        lock.readLock().lock();
+        try {
+            return countHigher(score) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the score held at a given rank
+     * @param rank rank, starting at 1
+     * @return the score at that rank, or null if there is no such rank
+     */
+    public ScoreEntry get(int rank) {
+        lock.readLock().lock();
+        try {
+            int index = rank - 1;
+            if (index < 0 || index >= size(root)) {
+                return null;
+            }
+            Node node = root;
+            while (true) {
+                int leftSize = size(node.left);
+                if (index < leftSize) {
+                    node = node.left;
+                } else if (index == leftSize) {
+                    return node.entry;
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the best scores
+     * @param count maximum number of scores
+     * @return scores from highest to lowest
+     */
+    public List<ScoreEntry> top(int count) {
+        return range(1, count);
+    }
+
+    /**
+     * Get the scores around a rank, for example to show a player's neighbours on the leaderboard
+     * @param rank the central rank, starting at 1
+     * @param radius how many scores either side to include
+     * @return scores from highest to lowest
+     */
+    public List<ScoreEntry> around(int rank, int radius) {
+        int from = Math.max(1, rank - radius);
+        return range(from, rank + radius - from + 1);
+    }
+
+    /**
+     * Get a run of consecutive scores
+     * @param fromRank first rank to include, starting at 1
+     * @param count maximum number of scores
+     * @return scores from highest to lowest
+     */
+    public List<ScoreEntry> range(int fromRank, int count) {
+        lock.readLock().lock();
+        try {
+            var result = new ArrayList<ScoreEntry>(Math.max(0, Math.min(count, size(root))));
+            collect(root, fromRank - 1, fromRank - 1 + count, 0, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of scores held
+     * @return number of scores
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert an entry, with the write lock held
+     */
+    private void insert(ScoreEntry entry) {
+        root = insert(root, new Node(entry, nextOrder++));
+        held.merge(key(entry.name(), entry.score()), 1, Integer::sum);
+    }
+
+    /**
+     * Key for counting copies of a score. Names are sent to the server with colons replaced, so match them that way.
+     */
+    private static String key(String name, int score) {
+        return name.replace(':', '_') + ":" + score;
+    }
+
+    /**
+     * Count the scores strictly higher than the given score
+     */
+    private int countHigher(int score) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.entry.score() > score) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collect the entries whose in-order index falls in [from, to), skipping subtrees entirely outside the range
+     * @param offset in-order index of the first entry in this subtree
+     */
+    private static void collect(Node node, int from, int to, int offset, List<ScoreEntry> out) {
+        while (node != null && offset < to) {
+            int index = offset + size(node.left);
+            if (from < index) {
+                collect(node.left, from, to, offset, out);
+            }
+            if (index >= from && index < to) {
+                out.add(node.entry);
+            }
+            //Continue down the right subtree iteratively
+            offset = index + 1;
+            node = index + 1 < to ? node.right : null;
+        }
+    }
+
+    /**
+     * Whether a sorts before b: higher scores first, then earlier arrivals
+     */
+    private static boolean before(Node a, Node b) {
+        if (a.entry.score() != b.entry.score()) {
+            return a.entry.score() > b.entry.score();
+        }
+        return a.order < b.order;
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        node.size++;
+        if (before(inserted, node)) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        left.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        right.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return right;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,366 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A durable queue of messages for the server that must not be lost, such as high score submissions, kept until the
+ * server has acknowledged them. Messages survive the connection dropping, the game being closed and the machine losing
+ * power, and are sent again once the game is back online.
+ *
+ * Adding and acknowledging messages are appended to a log file as records, each with a CRC32 checksum so a record torn
+ * by a crash is cut off when the outbox is next opened. Replaying the log gives back every message added and not yet
+ * acknowledged. Records are written by a background thread in batches, with one fsync per batch, so the caller never
+ * waits for the disk. Once every message has been acknowledged the log is emptied.
+ *
+ * Acknowledging is idempotent: acknowledging a message twice, or one the outbox no longer holds, does nothing, so a
+ * duplicate acknowledgement from the server is harmless.
+ */
+public class Outbox implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(Outbox.class);
+
+    /**
+     * A record header: payload length and CRC32 of the payload
+     */
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * A payload starts with the record type and the message id, then the message for an add
+     */
+    private static final int PAYLOAD_HEADER = 1 + 8;
+
+    /**
+     * Longest message held, in UTF-8 bytes
+     */
+    public static final int MAX_MESSAGE_BYTES = 4096;
+
+    private static final byte ADD = 1;
+    private static final byte ACK = 2;
+
+    private static final String LOG_FILE = "outbox.log";
+
+    /**
+     * A message waiting for the server
+     * @param id identifies the message to {@link #acknowledge(long)}
+     * @param text the message
+     */
+    public record Message(long id, String text) {
+    }
+
+    /**
+     * A record waiting to be written
+     */
+    private record Record(byte type, long id, byte[] text) {
+    }
+
+    /**
+     * Queued by close to wake the writer thread up without interrupting it mid write
+     */
+    private static final Record STOP = new Record((byte) 0, 0, null);
+
+    private static Outbox local;
+
+    private final FileChannel log;
+    private final BlockingQueue<Record> records = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile Runnable onAdded;
+
+    /**
+     * Messages added and not yet acknowledged, oldest first. Guarded by this.
+     */
+    private final Map<Long, String> undelivered = new LinkedHashMap<>();
+
+    private long nextId = 1;
+    private long appended = 0;
+    private long written = 0;
+
+    /**
+     * Open (or create) an outbox in the given directory
+     * @param directory directory holding the log
+     * @throws IOException if the outbox cannot be opened
+     */
+    public Outbox(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+
+        writer = new Thread(this::writeLoop, "Outbox Writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Opened outbox in {} with {} messages waiting", directory, size());
+    }
+
+    /**
+     * Get the shared outbox in the user's home directory, opening it on first use
+     * @return the local outbox, or null if it cannot be opened
+     */
+    public static synchronized Outbox getLocal() {
+        if (local == null) {
+            try {
+                local = new Outbox(Path.of(System.getProperty("user.home"), ".tetrecs"));
+                Runtime.getRuntime().addShutdownHook(new Thread(local::close));
+            } catch (IOException e) {
+                logger.error("Unable to open outbox: {}", e.getMessage());
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Set what to call when a message is added, such as the communicator sending it if it is online
+     * @param onAdded called on the thread adding the message, after it is held
+     */
+    public void setOnAdded(Runnable onAdded) {
+        this.onAdded = onAdded;
+    }
+
+    /**
+     * Hold a message until it is acknowledged. It is written to disk in the background.
+     * @param text the message
+     * @return the message
+     * @throws IllegalArgumentException if the message is longer than {@link #MAX_MESSAGE_BYTES}
+     */
+    public Message add(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_MESSAGE_BYTES) {
+            throw new IllegalArgumentException("Message too long for the outbox: " + bytes.length + " bytes");
+        }
+        Message message;
+        synchronized (this) {
+            message = new Message(nextId++, text);
+            undelivered.put(message.id(), text);
+            appended++;
+            records.add(new Record(ADD, message.id(), bytes));
+        }
+        var listener = onAdded;
+        if (listener != null) {
+            listener.run();
+        }
+        return message;
+    }
+
+    /**
+     * Mark a message as delivered, so it is never sent again. Does nothing if it already has been.
+     * @param id the message's id
+     * @return true if the message was waiting, false if it had already been acknowledged
+     */
+    public synchronized boolean acknowledge(long id) {
+        if (undelivered.remove(id) == null) {
+            return false;
+        }
+        appended++;
+        records.add(new Record(ACK, id, null));
+        return true;
+    }
+
+    /**
+     * Get the messages still waiting, oldest first
+     * @param max most messages to return
+     * @return the messages
+     */
+    public synchronized List<Message> getUndelivered(int max) {
+        var messages = new ArrayList<Message>(Math.min(max, undelivered.size()));
+        for (var entry : undelivered.entrySet()) {
+            if (messages.size() >= max) {
+                break;
+            }
+            messages.add(new Message(entry.getKey(), entry.getValue()));
+        }
+        return messages;
+    }
+
+    /**
+     * Get the number of messages still waiting
+     * @return number of messages
+     */
+    public synchronized int size() {
+        return undelivered.size();
+    }
+
+    /**
+     * Wait until everything added and acknowledged so far has been written to disk
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (written < appended && running) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Write out anything pending, stop the writer thread and close the log
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        records.add(STOP);
+        try {
+            writer.join(5000);
+            //Anything the writer did not get to
+            var remaining = new ArrayList<Record>();
+            records.drainTo(remaining);
+            remaining.remove(STOP);
+            if (!remaining.isEmpty()) {
+                writeBatch(remaining);
+            }
+            log.close();
+        } catch (IOException e) {
+            logger.error("Error closing outbox: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Background loop: take every record waiting, write them as one batch, then empty the log if nothing is left
+     */
+    private void writeLoop() {
+        var batch = new ArrayList<Record>();
+        while (running) {
+            try {
+                var first = records.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                records.drainTo(batch);
+                boolean stopping = batch.remove(STOP);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+                batch.clear();
+                if (stopping) {
+                    return;
+                }
+                truncateIfDelivered();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("Unable to write outbox: {}", e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Append a batch of records to the log and force them to disk
+     */
+    private void writeBatch(List<Record> batch) throws IOException {
+        int size = 0;
+        for (Record record : batch) {
+            size += RECORD_HEADER + PAYLOAD_HEADER + (record.text() == null ? 0 : record.text().length);
+        }
+        var buffer = ByteBuffer.allocate(size);
+        var crc = new CRC32();
+        for (Record record : batch) {
+            int payloadLength = PAYLOAD_HEADER + (record.text() == null ? 0 : record.text().length);
+            int start = buffer.position();
+            buffer.putInt(payloadLength).putInt(0);
+            buffer.put(record.type()).putLong(record.id());
+            if (record.text() != null) {
+                buffer.put(record.text());
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), start + RECORD_HEADER, payloadLength);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        buffer.flip();
+        log.position(log.size());
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+
+        synchronized (this) {
+            written += batch.size();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Empty the log once every message in it has been acknowledged. Records still queued are written after this, so
+     * nothing waiting is lost.
+     */
+    private void truncateIfDelivered() throws IOException {
+        synchronized (this) {
+            if (!undelivered.isEmpty() || log.size() == 0) {
+                return;
+            }
+            log.truncate(0);
+        }
+        log.force(true);
+    }
+
+    /**
+     * Replay the log on open, keeping messages not acknowledged and cutting off anything torn or corrupt
+     */
+    private void recover() throws IOException {
+        long size = log.size();
+        var buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while (buffer.hasRemaining() && log.read(buffer, buffer.position()) > 0) {
+            //Keep reading until the whole log is in memory
+        }
+        buffer.flip();
+
+        var crc = new CRC32();
+        long valid = 0;
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int start = buffer.position();
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength < PAYLOAD_HEADER || payloadLength > PAYLOAD_HEADER + MAX_MESSAGE_BYTES
+                    || buffer.remaining() < payloadLength) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), start + RECORD_HEADER, payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            byte type = buffer.get();
+            long id = buffer.getLong();
+            byte[] text = new byte[payloadLength - PAYLOAD_HEADER];
+            buffer.get(text);
+
+            valid = buffer.position();
+            nextId = Math.max(nextId, id + 1);
+            if (type == ADD) {
+                undelivered.put(id, new String(text, StandardCharsets.UTF_8));
+            } else if (type == ACK) {
+                undelivered.remove(id);
+            }
+        }
+
+        if (valid < size) {
+            logger.warn("Outbox has {} bytes of torn or corrupt data, truncating", size - valid);
+            log.truncate(valid);
+            log.force(true);
+        }
+    }
+}
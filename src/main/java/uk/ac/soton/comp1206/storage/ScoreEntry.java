@@ -0,0 +1,19 @@
+package uk.ac.soton.comp1206.storage;
+
+/**
+ * A single recorded score
+ * @param name the player name
+ * @param score the final score
+ * @param timestamp when the game finished, in milliseconds since the epoch
+ */
+public record ScoreEntry(String name, int score, long timestamp) {
+
+    /**
+     * Return the score in the name:score form used by the TetrECS protocol
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        return name + ":" + score;
+    }
+}
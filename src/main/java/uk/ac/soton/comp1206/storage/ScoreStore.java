@@ -0,0 +1,566 @@
+package uk.ac.soton.comp1206.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A durable local high score store for finished games.
+ *
+ * New scores are appended to a log file. Each record carries a sequence number and a CRC32 checksum, so a record torn
+ * by a crash or power cut is detected and cut off when the store is next opened. Scores are written by a background
+ * thread in batches, with one fsync per batch rather than one per score.
+ *
+ * Once the log grows past a threshold it is compacted: the log is merged with the previous snapshot into a new snapshot
+ * of fixed size records sorted by score. The snapshot is memory mapped when the store is opened, so queries read
+ * straight from it without parsing the whole history. Snapshots are written to a new generation file and never
+ * overwritten, and they record the last sequence number they contain, so a crash at any point during compaction leaves
+ * a consistent store.
+ */
+public class ScoreStore implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(ScoreStore.class);
+
+    /**
+     * Number of log records after which the log is compacted into a new snapshot
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 512;
+
+    private static final int SNAPSHOT_MAGIC = 0x54534E50;
+    private static final int SNAPSHOT_FORMAT = 1;
+    private static final int SNAPSHOT_HEADER = 32;
+
+    /**
+     * Longest stored name, in UTF-8 bytes
+     */
+    private static final int NAME_BYTES = 31;
+
+    /**
+     * A snapshot record: score, timestamp, name length and name bytes
+     */
+    private static final int RECORD_SIZE = 4 + 8 + 1 + NAME_BYTES;
+
+    /**
+     * A log record header: payload length and CRC32 of the payload
+     */
+    private static final int LOG_HEADER = 8;
+
+    private static final String LOG_FILE = "scores.log";
+    private static final String SNAPSHOT_PREFIX = "scores-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    /**
+     * Queued by close to wake the writer thread up without interrupting it mid write
+     */
+    private static final ScoreEntry STOP = new ScoreEntry("", 0, 0);
+
+    private static ScoreStore local;
+
+    private final Path directory;
+    private final int compactThreshold;
+    private final FileChannel log;
+
+    private final BlockingQueue<ScoreEntry> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Scores in the log and not yet in the snapshot, sorted from highest to lowest. Guarded by this.
+     */
+    private final List<ScoreEntry> tail = new ArrayList<>();
+
+    private MappedByteBuffer snapshot;
+    private int snapshotCount = 0;
+    private long snapshotSequence = 0;
+    private Path snapshotFile;
+
+    private long nextSequence;
+    private int logRecords = 0;
+    private long written = 0;
+    private long appended = 0;
+
+    /**
+     * Open (or create) a score store in the given directory with the default compaction threshold
+     * @param directory directory holding the log and snapshots
+     * @throws IOException if the store cannot be opened
+     */
+    public ScoreStore(Path directory) throws IOException {
+        this(directory, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Open (or create) a score store in the given directory
+     * @param directory directory holding the log and snapshots
+     * @param compactThreshold number of log records after which the log is compacted
+     * @throws IOException if the store cannot be opened
+     */
+    public ScoreStore(Path directory, int compactThreshold) throws IOException {
+        this.directory = directory;
+        this.compactThreshold = Math.max(1, compactThreshold);
+        Files.createDirectories(directory);
+
+        openSnapshot();
+        log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        nextSequence = snapshotSequence + 1;
+        recoverLog();
+
+        writer = new Thread(this::writeLoop, "Score Store Writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Opened score store in {} with {} scores", directory, size());
+    }
+
+    /**
+     * Get the shared store in the user's home directory, opening it on first use
+     * @return the local score store, or null if it cannot be opened
+     */
+    public static synchronized ScoreStore getLocal() {
+        if (local == null) {
+            try {
+                local = new ScoreStore(Path.of(System.getProperty("user.home"), ".tetrecs", "scores"));
+                Runtime.getRuntime().addShutdownHook(new Thread(local::close));
+            } catch (IOException e) {
+                logger.error("Unable to open local score store: {}", e.getMessage());
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Record a new score. The score is visible to queries straight away and written to disk in the background.
+     * @param name player name
+     * @param score final score
+     * @return the recorded entry
+     */
+    public ScoreEntry add(String name, int score) {
+        var entry = new ScoreEntry(name, score, System.currentTimeMillis());
+        synchronized (this) {
+            insertSorted(tail, entry);
+            appended++;
+            pending.add(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Wait until every score added so far has been written to disk
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (written < appended && running) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Get the highest scores
+     * @param count maximum number of scores to return
+     * @return scores from highest to lowest
+     */
+    public synchronized List<ScoreEntry> getTopScores(int count) {
+        var result = new ArrayList<ScoreEntry>(Math.min(count, size()));
+        int s = 0;
+        int t = 0;
+        while (result.size() < count && (s < snapshotCount || t < tail.size())) {
+            if (t >= tail.size() || (s < snapshotCount && snapshotScore(s) >= tail.get(t).score())) {
+                result.add(readSnapshot(s++));
+            } else {
+                result.add(tail.get(t++));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the rank a score would have among every stored score
+     * @param score the score
+     * @return 1 for the best score, counting every strictly higher score
+     */
+    public synchronized int rankOf(int score) {
+        //Binary search for the first snapshot record at or below the score
+        int low = 0;
+        int high = snapshotCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (snapshotScore(mid) > score) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int higher = low;
+        for (ScoreEntry entry : tail) {
+            if (entry.score() <= score) {
+                break;
+            }
+            higher++;
+        }
+        return higher + 1;
+    }
+
+    /**
+     * Visit every stored score, from the snapshot and then the log
+     * @param visitor called once per score
+     */
+    public synchronized void forEach(Consumer<ScoreEntry> visitor) {
+        for (int i = 0; i < snapshotCount; i++) {
+            visitor.accept(readSnapshot(i));
+        }
+        tail.forEach(visitor);
+    }
+
+    /**
+     * Get the total number of stored scores
+     * @return number of scores
+     */
+    public synchronized int size() {
+        return snapshotCount + tail.size();
+    }
+
+    /**
+     * Write out anything pending, stop the writer thread and close the log
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        pending.add(STOP);
+        try {
+            writer.join(5000);
+            //Anything the writer did not get to
+            var remaining = new ArrayList<ScoreEntry>();
+            pending.drainTo(remaining);
+            remaining.remove(STOP);
+            if (!remaining.isEmpty()) {
+                writeBatch(remaining);
+            }
+            log.close();
+        } catch (IOException e) {
+            logger.error("Error closing score store: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Background loop: take everything pending, write it as one batch, then compact if needed
+     */
+    private void writeLoop() {
+        var batch = new ArrayList<ScoreEntry>();
+        while (running) {
+            try {
+                var first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch);
+                boolean stopping = batch.remove(STOP);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+                batch.clear();
+                if (stopping) {
+                    return;
+                }
+                if (logRecords >= compactThreshold) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("Unable to write scores: {}", e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Append a batch of records to the log and force them to disk
+     */
+    private void writeBatch(List<ScoreEntry> batch) throws IOException {
+        var buffer = ByteBuffer.allocate(batch.size() * (LOG_HEADER + 8 + 8 + 4 + 1 + NAME_BYTES));
+        var crc = new CRC32();
+        for (ScoreEntry entry : batch) {
+            byte[] name = encodeName(entry.name());
+            int payloadLength = 8 + 8 + 4 + 1 + name.length;
+            int start = buffer.position();
+            buffer.putInt(payloadLength).putInt(0);
+            buffer.putLong(nextSequence++).putLong(entry.timestamp()).putInt(entry.score());
+            buffer.put((byte) name.length).put(name);
+
+            crc.reset();
+            crc.update(buffer.array(), start + LOG_HEADER, payloadLength);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        buffer.flip();
+        log.position(log.size());
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+        logRecords += batch.size();
+
+        synchronized (this) {
+            written += batch.size();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Replay the log on open, keeping records newer than the snapshot and cutting off anything torn or corrupt
+     */
+    private void recoverLog() throws IOException {
+        long size = log.size();
+        var buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while (buffer.hasRemaining() && log.read(buffer, buffer.position()) > 0) {
+            //Keep reading until the whole log is in memory
+        }
+        buffer.flip();
+
+        var crc = new CRC32();
+        long valid = 0;
+        while (buffer.remaining() >= LOG_HEADER) {
+            int start = buffer.position();
+            int payloadLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payloadLength < 21 || payloadLength > 21 + NAME_BYTES || buffer.remaining() < payloadLength) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), start + LOG_HEADER, payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long sequence = buffer.getLong();
+            long timestamp = buffer.getLong();
+            int score = buffer.getInt();
+            byte[] name = new byte[buffer.get() & 0xFF];
+            buffer.get(name);
+
+            valid = buffer.position();
+            logRecords++;
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (sequence > snapshotSequence) {
+                insertSorted(tail, new ScoreEntry(new String(name, StandardCharsets.UTF_8), score, timestamp));
+            }
+        }
+
+        if (valid < size) {
+            logger.warn("Score log has {} bytes of torn or corrupt data, truncating", size - valid);
+            log.truncate(valid);
+            log.force(true);
+        }
+    }
+
+    /**
+     * Merge the snapshot and the log into a new snapshot generation and start a fresh log
+     */
+    private void compact() throws IOException {
+        var logged = new ArrayList<ScoreEntry>();
+        Set<ScoreEntry> loggedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        long sequence = nextSequence - 1;
+        int total;
+        synchronized (this) {
+            //Scores still pending are in the tail but not yet in the log, so keep them out of the snapshot
+            Set<ScoreEntry> unwritten = Collections.newSetFromMap(new IdentityHashMap<>());
+            unwritten.addAll(pending);
+            for (ScoreEntry entry : tail) {
+                if (!unwritten.contains(entry)) {
+                    logged.add(entry);
+                    loggedSet.add(entry);
+                }
+            }
+            total = snapshotCount + logged.size();
+        }
+
+        Path file = directory.resolve(SNAPSHOT_PREFIX + sequence + SNAPSHOT_SUFFIX);
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (var out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            var header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+            header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_FORMAT).putInt(total).putLong(sequence);
+            header.rewind();
+            out.write(header);
+
+            var buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            int s = 0;
+            int t = 0;
+            while (s < snapshotCount || t < logged.size()) {
+                ScoreEntry next;
+                synchronized (this) {
+                    next = t >= logged.size() || (s < snapshotCount && snapshotScore(s) >= logged.get(t).score())
+                            ? readSnapshot(s++) : logged.get(t++);
+                }
+                writeRecord(buffer, next);
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    out.write(buffer);
+                    buffer.clear();
+                }
+            }
+            buffer.flip();
+            out.write(buffer);
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+
+        //The new snapshot is durable, so the log can be emptied
+        Path previous;
+        synchronized (this) {
+            previous = snapshotFile;
+            mapSnapshot(file);
+            tail.removeIf(loggedSet::contains);
+        }
+        log.truncate(0);
+        log.force(true);
+        logRecords = 0;
+        if (previous != null) {
+            deleteQuietly(previous);
+        }
+        logger.info("Compacted score store to {} scores", total);
+    }
+
+    /**
+     * Find and map the newest valid snapshot generation, removing older ones
+     */
+    private void openSnapshot() throws IOException {
+        var snapshots = new ArrayList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (file.toString().endsWith(".tmp")) {
+                    deleteQuietly(file);
+                } else if (file.toString().endsWith(SNAPSHOT_SUFFIX)) {
+                    snapshots.add(file);
+                }
+            }
+        }
+        snapshots.sort((a, b) -> Long.compare(generation(b), generation(a)));
+        for (Path file : snapshots) {
+            if (snapshotFile == null) {
+                try {
+                    mapSnapshot(file);
+                    continue;
+                } catch (IOException e) {
+                    logger.warn("Ignoring unreadable snapshot {}: {}", file, e.getMessage());
+                }
+            }
+            deleteQuietly(file);
+        }
+    }
+
+    private void mapSnapshot(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < SNAPSHOT_HEADER || mapped.getInt(0) != SNAPSHOT_MAGIC
+                    || mapped.getInt(4) != SNAPSHOT_FORMAT) {
+                throw new IOException("Not a score snapshot");
+            }
+            int count = mapped.getInt(8);
+            if (SNAPSHOT_HEADER + (long) count * RECORD_SIZE > channel.size()) {
+                throw new IOException("Snapshot is truncated");
+            }
+            snapshot = mapped;
+            snapshotCount = count;
+            snapshotSequence = mapped.getLong(12);
+            snapshotFile = file;
+        }
+    }
+
+    private int snapshotScore(int index) {
+        return snapshot.getInt(SNAPSHOT_HEADER + index * RECORD_SIZE);
+    }
+
+    private ScoreEntry readSnapshot(int index) {
+        int offset = SNAPSHOT_HEADER + index * RECORD_SIZE;
+        int score = snapshot.getInt(offset);
+        long timestamp = snapshot.getLong(offset + 4);
+        byte[] name = new byte[snapshot.get(offset + 12) & 0xFF];
+        snapshot.get(offset + 13, name);
+        return new ScoreEntry(new String(name, StandardCharsets.UTF_8), score, timestamp);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, ScoreEntry entry) {
+        byte[] name = encodeName(entry.name());
+        int start = buffer.position();
+        buffer.putInt(entry.score()).putLong(entry.timestamp()).put((byte) name.length).put(name);
+        buffer.position(start + RECORD_SIZE);
+    }
+
+    /**
+     * Encode a name as UTF-8, shortening it to fit a record without splitting a character
+     */
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = name.length();
+        while (bytes.length > NAME_BYTES) {
+            length--;
+            if (Character.isLowSurrogate(name.charAt(length)) && length > 0) {
+                length--;
+            }
+            bytes = name.substring(0, length).getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * Insert a score into a list sorted from highest to lowest, after any equal scores
+     */
+    private static void insertSorted(List<ScoreEntry> list, ScoreEntry entry) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).score() >= entry.score()) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        list.add(low, entry);
+    }
+
+    private static long generation(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            //Still mapped on some platforms, it will be cleaned up next time the store is opened
+            logger.debug("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+}
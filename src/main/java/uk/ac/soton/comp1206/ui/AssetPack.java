@@ -0,0 +1,273 @@
+package uk.ac.soton.comp1206.ui;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the game's images and styles out of a single memory mapped pack file, built by {@link AssetPacker}, instead
+ * of looking each one up on the classpath. Inside a jar every classpath lookup searches the jar and inflates the entry,
+ * whereas the pack is mapped once and each asset is a slice of the mapping, read straight from the page cache.
+ *
+ * The pack is looked for in the file named by the tetrecs.assets system property, or beside the jar the game is
+ * running from. If there is no pack, or an asset is not in it, the asset is loaded from the classpath as before, so
+ * running from the IDE or from target/classes needs no pack.
+ *
+ * Stylesheets and the images they refer to are loaded by JavaFX from URLs, so assets in the pack are also served from
+ * {@value #PROTOCOL} URLs. Relative URLs in a stylesheet resolve against the stylesheet's URL, so they stay in the pack.
+ */
+public final class AssetPack {
+
+    private static final Logger logger = LogManager.getLogger(AssetPack.class);
+
+    static final int MAGIC = 0x5450414B;
+    static final int FORMAT = 1;
+
+    /**
+     * Name of the pack file
+     */
+    public static final String FILE_NAME = "assets.pack";
+
+    /**
+     * Protocol of URLs served from the pack
+     */
+    public static final String PROTOCOL = "tetrecs-asset";
+
+    /**
+     * An asset's place in the pack
+     */
+    private record Entry(int offset, int length) {
+    }
+
+    private static AssetPack pack;
+    private static boolean searched = false;
+    private static boolean urls = false;
+
+    private final Path file;
+    private final ByteBuffer mapped;
+    private final Map<String, Entry> entries;
+
+    private AssetPack(Path file, ByteBuffer mapped, Map<String, Entry> entries) {
+        this.file = file;
+        this.mapped = mapped;
+        this.entries = entries;
+    }
+
+    /**
+     * Get the pack, finding and mapping it the first time
+     * @return the pack, or null if there is none
+     */
+    public static synchronized AssetPack get() {
+        if (!searched) {
+            searched = true;
+            var file = locate();
+            if (file != null) {
+                try {
+                    pack = open(file);
+                    logger.info("Mapped {} assets from {}", pack.entries.size(), file);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Unable to use asset pack {}, loading assets from the classpath: {}", file,
+                            e.getMessage());
+                }
+            }
+            if (pack != null) {
+                try {
+                    URL.setURLStreamHandlerFactory(protocol -> PROTOCOL.equals(protocol) ? new Handler() : null);
+                    urls = true;
+                } catch (Error e) {
+                    //Something else in the JVM has already set the factory, so stylesheets come from the classpath
+                    logger.warn("Unable to serve asset URLs from the pack: {}", e.getMessage());
+                }
+            }
+        }
+        return pack;
+    }
+
+    /**
+     * Map a pack file and read its index
+     * @param file the pack
+     * @return the pack
+     * @throws IOException if the file cannot be read or is not a pack
+     */
+    static AssetPack open(Path file) throws IOException {
+        ByteBuffer mapped;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < 12 || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT) {
+            throw new IOException("Not an asset pack");
+        }
+        int count = mapped.getInt(8);
+        var entries = new HashMap<String, Entry>(count * 2);
+        int position = 12;
+        var name = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int nameLength = mapped.getShort(position) & 0xFFFF;
+            if (nameLength > name.length) {
+                name = new byte[nameLength];
+            }
+            mapped.get(position + 2, name, 0, nameLength);
+            position += 2 + nameLength;
+            var entry = new Entry(mapped.getInt(position), mapped.getInt(position + 4));
+            position += 8;
+            if (entry.offset() < 0 || entry.length() < 0 || entry.offset() > mapped.capacity() - entry.length()) {
+                throw new IOException("Asset pack is damaged");
+            }
+            entries.put(new String(name, 0, nameLength, StandardCharsets.UTF_8), entry);
+        }
+        return new AssetPack(file, mapped, entries);
+    }
+
+    /**
+     * Find the pack from the tetrecs.assets property, or beside the jar
+     */
+    private static Path locate() {
+        var property = System.getProperty("tetrecs.assets");
+        if (property != null) {
+            return Path.of(property);
+        }
+        try {
+            var source = AssetPack.class.getProtectionDomain().getCodeSource();
+            if (source == null) {
+                return null;
+            }
+            var location = Path.of(source.getLocation().toURI());
+            //From target/classes the classpath is already loose files, so the pack is only used beside a jar
+            if (Files.isRegularFile(location)) {
+                var file = location.resolveSibling(FILE_NAME);
+                return Files.isRegularFile(file) ? file : null;
+            }
+        } catch (URISyntaxException | RuntimeException e) {
+            logger.debug("Not looking for an asset pack: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Get an asset's bytes without copying them
+     * @param name the asset's classpath name, such as /images/1.jpg
+     * @return a read only buffer over the asset, or null if it is not in the pack
+     */
+    public ByteBuffer slice(String name) {
+        var entry = entries.get(name);
+        return entry == null ? null : mapped.slice(entry.offset(), entry.length()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Open an asset from the pack if there is one, otherwise from the classpath
+     * @param name the asset's classpath name, such as /images/1.jpg
+     * @return a stream of the asset, or null if it cannot be found
+     */
+    public static InputStream open(String name) {
+        var pack = get();
+        var slice = pack == null ? null : pack.slice(name);
+        return slice != null ? new SliceInputStream(slice) : AssetPack.class.getResourceAsStream(name);
+    }
+
+    /**
+     * Get a URL JavaFX can load an asset from, in the pack if there is one, otherwise on the classpath
+     * @param name the asset's classpath name, such as /style/game.css
+     * @return the URL, or null if it cannot be found
+     */
+    public static String url(String name) {
+        var pack = get();
+        if (urls && pack.entries.containsKey(name)) {
+            return PROTOCOL + ":" + name;
+        }
+        var resource = AssetPack.class.getResource(name);
+        return resource == null ? null : resource.toExternalForm();
+    }
+
+    @Override
+    public String toString() {
+        return file + " (" + entries.size() + " assets)";
+    }
+
+    /**
+     * Reads a slice of the mapping
+     */
+    private static final class SliceInputStream extends InputStream {
+
+        private final ByteBuffer slice;
+
+        SliceInputStream(ByteBuffer slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public int read() {
+            return slice.hasRemaining() ? slice.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!slice.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, slice.remaining());
+            slice.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, slice.remaining()));
+            slice.position(slice.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return slice.remaining();
+        }
+    }
+
+    /**
+     * Opens {@value #PROTOCOL} URLs
+     */
+    private static final class Handler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    var slice = pack.slice(url.getPath());
+                    if (slice == null) {
+                        throw new FileNotFoundException(url.toExternalForm());
+                    }
+                    return new SliceInputStream(slice);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    var entry = pack.entries.get(url.getPath());
+                    return entry == null ? -1 : entry.length();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Builds the {@link AssetPack} from the resources folder. The shade build runs it to put an assets.pack beside the
+ * shaded jar.
+ *
+ * The pack starts with the magic number, format and number of assets, then an index giving each asset's classpath name
+ * (a short length and UTF-8 bytes), offset and length, and then the assets themselves, each starting on an 8 byte
+ * boundary.
+ *
+ * Usage: {@code AssetPacker [resources folder] [pack file]}, by default src/main/resources and target/assets.pack
+ */
+public class AssetPacker {
+
+    /**
+     * Folders packed. Sounds and music are left out because the media player can only open them from a URL it reads
+     * itself, never from the pack.
+     */
+    static final String[] FOLDERS = {"images", "style"};
+
+    /**
+     * Build a pack
+     * @param args the resources folder and the pack file
+     * @throws IOException if the resources cannot be read or the pack cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        var resources = Path.of(args.length > 0 ? args[0] : "src/main/resources");
+        var output = Path.of(args.length > 1 ? args[1] : "target/" + AssetPack.FILE_NAME);
+        long start = System.nanoTime();
+        long bytes = pack(resources, output);
+        System.out.printf(Locale.ROOT, "Packed %s into %s, %.1f KB in %.0f ms%n", resources, output, bytes / 1024.0,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Pack every file in the packed folders
+     * @param resources the resources folder
+     * @param output the pack file, replaced if it exists
+     * @return size of the pack in bytes
+     * @throws IOException if the resources cannot be read or the pack cannot be written
+     */
+    static long pack(Path resources, Path output) throws IOException {
+        var files = new ArrayList<Path>();
+        for (String folder : FOLDERS) {
+            var path = resources.resolve(folder);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> found = Files.walk(path)) {
+                    found.filter(Files::isRegularFile).sorted().forEach(files::add);
+                }
+            }
+        }
+
+        List<byte[]> names = new ArrayList<>();
+        long indexSize = 12;
+        for (var file : files) {
+            var name = ("/" + resources.relativize(file).toString().replace('\\', '/')).getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            indexSize += 2 + name.length + 8;
+        }
+
+        //Lay the assets out after the index, each aligned so it can be read a long at a time
+        long[] offsets = new long[files.size()];
+        long end = align(indexSize);
+        for (int i = 0; i < files.size(); i++) {
+            offsets[i] = end;
+            end = align(end + Files.size(files.get(i)));
+        }
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Assets too large for one pack: " + end + " bytes");
+        }
+
+        var index = ByteBuffer.allocate((int) indexSize).order(ByteOrder.BIG_ENDIAN);
+        index.putInt(AssetPack.MAGIC).putInt(AssetPack.FORMAT).putInt(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            index.putShort((short) names.get(i).length).put(names.get(i));
+            index.putInt((int) offsets[i]).putInt((int) Files.size(files.get(i)));
+        }
+        index.flip();
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (var channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(index, 0);
+            for (int i = 0; i < files.size(); i++) {
+                var data = ByteBuffer.wrap(Files.readAllBytes(files.get(i)));
+                channel.write(data, offsets[i]);
+            }
+            channel.truncate(end);
+        }
+        return Files.size(output);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+}
@@ -2,6 +2,8 @@ package uk.ac.soton.comp1206.ui;
 
 import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -9,10 +11,20 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.App;
+import uk.ac.soton.comp1206.game.SaveState;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.scene.BaseScene;
 import uk.ac.soton.comp1206.scene.ChallengeScene;
+import uk.ac.soton.comp1206.scene.InstructionsScene;
 import uk.ac.soton.comp1206.scene.MenuScene;
+import uk.ac.soton.comp1206.scene.SettingsScene;
+import uk.ac.soton.comp1206.scene.SpectatorScene;
+import uk.ac.soton.comp1206.storage.Outbox;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * The GameWindow is the single window for the game where everything takes place. To move between screens in the game,
@@ -20,11 +32,22 @@ import uk.ac.soton.comp1206.scene.MenuScene;
  *
  * The GameWindow has methods to launch each of the different parts of the game by switching scenes. You can add more
  * methods here to add more screens to the game.
+ *
+ * The window has one JavaFX scene, and switching game scene swaps its root, so the stylesheet is parsed once for the
+ * whole session. Reusable scenes such as the menu are kept after they are first built and shown again as they were.
+ * They are held by soft references, so the garbage collector can drop the ones not used for a while if memory runs
+ * short, and they are simply built again on the next visit.
  */
 public class GameWindow {
 
     private static final Logger logger = LogManager.getLogger(GameWindow.class);
 
+    /**
+     * The TetrECS server to connect to. Can be overridden with the tetrecs.server system property, for example to
+     * point the game at a LocalServer.
+     */
+    private static final String SERVER = System.getProperty("tetrecs.server", "ws://ofb-labs.soton.ac.uk:9700");
+
     private final int width;
     private final int height;
 
@@ -33,8 +56,19 @@ public class GameWindow {
     private BaseScene currentScene;
     private Scene scene;
 
+    /**
+     * Reusable scenes already built, by type
+     */
+    private final Map<Class<? extends BaseScene>, SoftReference<BaseScene>> reusable = new HashMap<>();
+
     final Communicator communicator;
 
+    /**
+     * Performance overlay, moved onto each new scene while it is turned on
+     */
+    private final PerformanceHud hud = new PerformanceHud();
+    private boolean hudEnabled = false;
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -57,7 +91,13 @@ public class GameWindow {
         setupDefaultScene();
 
         //Setup communicator
-        communicator = new Communicator("ws://ofb-labs.soton.ac.uk:9700");
+        communicator = new Communicator(SERVER);
+
+        //Scores that could not be sent before are sent now, and later ones survive the connection dropping
+        var outbox = Outbox.getLocal();
+        if (outbox != null) {
+            communicator.setOutbox(outbox);
+        }
 
         //Go to menu
         startMenu();
@@ -69,17 +109,37 @@ public class GameWindow {
     private void setupResources() {
         logger.info("Loading resources");
 
+        //Assets come from the asset pack beside the jar when there is one
+        var pack = AssetPack.get();
+        if (pack != null) {
+            logger.info("Using asset pack {}", pack);
+        }
+
         //We need to load fonts here due to the Font loader bug with spaces in URLs in the CSS files
-        Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Regular.ttf"),32);
-        Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Bold.ttf"),32);
-        Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-ExtraBold.ttf"),32);
+        Font.loadFont(AssetPack.open("/style/Orbitron-Regular.ttf"),32);
+        Font.loadFont(AssetPack.open("/style/Orbitron-Bold.ttf"),32);
+        Font.loadFont(AssetPack.open("/style/Orbitron-ExtraBold.ttf"),32);
     }
 
     /**
      * Display the main menu
      */
     public void startMenu() {
-        loadScene(new MenuScene(this));
+        loadScene(reuse(MenuScene.class, MenuScene::new));
+    }
+
+    /**
+     * Display the settings
+     */
+    public void startSettings() {
+        loadScene(reuse(SettingsScene.class, SettingsScene::new));
+    }
+
+    /**
+     * Display the instructions
+     */
+    public void startInstructions() {
+        loadScene(reuse(InstructionsScene.class, InstructionsScene::new));
     }
 
     /**
@@ -89,6 +149,22 @@ public class GameWindow {
         loadScene(new ChallengeScene(this));
     }
 
+    /**
+     * Carry on a saved single player challenge
+     *
+     * @param state the saved game
+     */
+    public void resumeChallenge(SaveState state) {
+        loadScene(new ChallengeScene(this, state));
+    }
+
+    /**
+     * Display the spectator wall of live boards
+     */
+    public void startSpectator() {
+        loadScene(new SpectatorScene(this));
+    }
+
 
 
 
@@ -100,6 +176,25 @@ public class GameWindow {
         stage.setMinWidth(width);
         stage.setMinHeight(height + 20);
         stage.setOnCloseRequest(ev -> App.getInstance().shutdown());
+        //F3 toggles the performance overlay in every scene
+        stage.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == KeyCode.F3) {
+                toggleHud();
+                event.consume();
+            }
+        });
+    }
+
+    /**
+     * Turn the performance overlay on or off
+     */
+    public void toggleHud() {
+        hudEnabled = !hudEnabled;
+        if (hudEnabled && scene.getRoot() instanceof GamePane pane) {
+            hud.show(pane);
+        } else {
+            hud.hide();
+        }
     }
 
     /**
@@ -110,21 +205,50 @@ public class GameWindow {
         //Cleanup remains of the previous scene
         cleanup();
 
-        //Create the new scene and set it up
-        newScene.build();
+        //Create the new scene and set it up, unless it is a reused scene that has been built already
+        if (!newScene.isBuilt()) {
+            newScene.build();
+        }
+        if (newScene.isReusable()) {
+            reusable.put(newScene.getClass(), new SoftReference<>(newScene));
+        }
         currentScene = newScene;
         scene = newScene.setScene();
         stage.setScene(scene);
+        QualityController.attach(scene);
+        if (hudEnabled && scene.getRoot() instanceof GamePane pane) {
+            hud.show(pane);
+        }
 
         //Initialise the scene when ready
         Platform.runLater(() -> currentScene.initialise());
     }
 
     /**
-     * Setup the default scene (an empty black scene) when no scene is loaded
+     * Get a reusable scene kept from an earlier visit, or create one if it has not been shown or has been dropped
+     * @param type the type of scene
+     * @param create creates the scene
+     * @return the scene
+     * @param <T> the type of scene
+     */
+    private <T extends BaseScene> T reuse(Class<T> type, Function<GameWindow, T> create) {
+        var kept = reusable.get(type);
+        var scene = kept == null ? null : type.cast(kept.get());
+        if (scene == null) {
+            scene = create.apply(this);
+        } else {
+            logger.info("Reusing {}", type.getSimpleName());
+        }
+        return scene;
+    }
+
+    /**
+     * Setup the default scene (an empty black scene) when no scene is loaded. Every game scene is shown in this
+     * scene, so the stylesheet is added here once.
      */
     public void setupDefaultScene() {
         this.scene = new Scene(new Pane(),width,height, Color.BLACK);
+        this.scene.getStylesheets().add(AssetPack.url("/style/game.css"));
         stage.setScene(this.scene);
     }
 
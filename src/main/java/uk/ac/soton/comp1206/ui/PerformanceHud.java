@@ -0,0 +1,246 @@
+package uk.ac.soton.comp1206.ui;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An overlay showing how smoothly the game is running: frame rate, 99th percentile frame time, pulse time, how long
+ * runLater tasks wait, heap usage, recent garbage collection pauses, how long the model takes to place a piece and the
+ * render quality.
+ *
+ * The overlay only measures anything while it is showing. When hidden it has no timer, no pulse listener and no
+ * garbage collection listener registered, and the placement hook is a single volatile read.
+ */
+public class PerformanceHud extends Label {
+
+    private static final Logger logger = LogManager.getLogger(PerformanceHud.class);
+
+    /**
+     * Number of recent frames used for the frame rate and percentile
+     */
+    private static final int FRAMES = 240;
+
+    /**
+     * Time between text updates
+     */
+    private static final long UPDATE_NANOS = 250_000_000;
+
+    /**
+     * Notification type sent by the JVM after each collection
+     */
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private static volatile boolean showing = false;
+    private static final AtomicLong placementNanos = new AtomicLong();
+    private static final AtomicLong placements = new AtomicLong();
+
+    private final long[] frameNanos = new long[FRAMES];
+    private final long[] sorted = new long[FRAMES];
+    private int frameCount = 0;
+    private int frameIndex = 0;
+    private long lastFrame = 0;
+    private long lastUpdate = 0;
+
+    private long pulseStart = 0;
+    private long pulseMaxNanos = 0;
+    private volatile long runLaterDelayNanos = 0;
+    private boolean probeQueued = false;
+
+    private final AtomicLong gcPauseMillis = new AtomicLong();
+    private final AtomicLong gcCount = new AtomicLong();
+    private volatile long lastGcPauseMillis = 0;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Runnable postLayout = this::pulseEnded;
+    private final NotificationListener gcListener = this::garbageCollected;
+    private Scene scene;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            frame(now);
+        }
+    };
+
+    /**
+     * Create a hidden overlay
+     */
+    public PerformanceHud() {
+        getStyleClass().add("hud");
+        setMouseTransparent(true);
+        setFocusTraversable(false);
+        StackPane.setAlignment(this, Pos.TOP_RIGHT);
+    }
+
+    /**
+     * Record how long the model took to place a piece. Does nothing unless an overlay is showing.
+     *
+     * @param nanos time taken
+     */
+    public static void recordPlacement(long nanos) {
+        if (showing) {
+            placementNanos.set(nanos);
+            placements.incrementAndGet();
+        }
+    }
+
+    /**
+     * Whether an overlay is showing, so callers can skip timing work when it is not
+     *
+     * @return true if measurements are being taken
+     */
+    public static boolean isShowing() {
+        return showing;
+    }
+
+    /**
+     * Show the overlay on top of a pane and start measuring
+     *
+     * @param pane the pane to show it on
+     */
+    public void show(GamePane pane) {
+        hide();
+        pane.getChildren().add(this);
+        scene = pane.getScene();
+        if (scene != null) {
+            scene.addPostLayoutPulseListener(postLayout);
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(gcListener, null, null);
+            }
+        }
+        frameCount = 0;
+        lastFrame = 0;
+        showing = true;
+        timer.start();
+        logger.info("Performance overlay shown");
+    }
+
+    /**
+     * Stop measuring and remove the overlay from its pane
+     */
+    public void hide() {
+        if (getParent() == null) {
+            return;
+        }
+        showing = false;
+        timer.stop();
+        if (scene != null) {
+            scene.removePostLayoutPulseListener(postLayout);
+            scene = null;
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter) {
+                try {
+                    emitter.removeNotificationListener(gcListener);
+                } catch (Exception e) {
+                    logger.debug("GC listener was not registered on {}", collector.getName());
+                }
+            }
+        }
+        ((StackPane) getParent()).getChildren().remove(this);
+        logger.info("Performance overlay hidden");
+    }
+
+    /**
+     * Whether the overlay is attached to a pane
+     *
+     * @return true if showing
+     */
+    public boolean isVisibleOnPane() {
+        return getParent() != null;
+    }
+
+    /**
+     * Called at the start of each pulse, before layout and rendering
+     */
+    private void frame(long now) {
+        pulseStart = System.nanoTime();
+        if (lastFrame != 0) {
+            frameNanos[frameIndex] = now - lastFrame;
+            frameIndex = (frameIndex + 1) % FRAMES;
+            frameCount = Math.min(frameCount + 1, FRAMES);
+        }
+        lastFrame = now;
+
+        //Measure how long a task waits in the runLater queue
+        if (!probeQueued) {
+            probeQueued = true;
+            long posted = System.nanoTime();
+            Platform.runLater(() -> {
+                runLaterDelayNanos = System.nanoTime() - posted;
+                probeQueued = false;
+            });
+        }
+
+        if (now - lastUpdate >= UPDATE_NANOS) {
+            lastUpdate = now;
+            updateText();
+            pulseMaxNanos = 0;
+        }
+    }
+
+    /**
+     * Called after layout of each pulse, so the time since the frame started covers animation, CSS and layout
+     */
+    private void pulseEnded() {
+        if (pulseStart != 0) {
+            pulseMaxNanos = Math.max(pulseMaxNanos, System.nanoTime() - pulseStart);
+        }
+    }
+
+    /**
+     * Called on a JMX thread after each garbage collection
+     */
+    private void garbageCollected(Notification notification, Object handback) {
+        if (!GC_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        var info = (CompositeData) notification.getUserData();
+        var gcInfo = (CompositeData) info.get("gcInfo");
+        long duration = (Long) gcInfo.get("duration");
+        lastGcPauseMillis = duration;
+        gcPauseMillis.addAndGet(duration);
+        gcCount.incrementAndGet();
+    }
+
+    private void updateText() {
+        double fps = 0;
+        double p99 = 0;
+        if (frameCount > 0) {
+            long total = 0;
+            for (int i = 0; i < frameCount; i++) {
+                total += frameNanos[i];
+                sorted[i] = frameNanos[i];
+            }
+            Arrays.sort(sorted, 0, frameCount);
+            fps = frameCount * 1e9 / total;
+            p99 = sorted[Math.min(frameCount - 1, (int) Math.ceil(frameCount * 0.99) - 1)] / 1e6;
+        }
+        var heap = memory.getHeapMemoryUsage();
+        setText(String.format(
+                "FPS %.0f%nFrame p99 %.1f ms%nPulse %.2f ms%nrunLater wait %.2f ms%nHeap %d / %d MB%nGC %d (%d ms, last %d ms)%nPlace %.1f us (%d)%nQuality %s%s",
+                fps, p99, pulseMaxNanos / 1e6, runLaterDelayNanos / 1e6,
+                heap.getUsed() >> 20, heap.getCommitted() >> 20,
+                gcCount.get(), gcPauseMillis.get(), lastGcPauseMillis,
+                placementNanos.get() / 1e3, placements.get(),
+                QualityController.getQuality(), QualityController.isAutomatic() ? " (auto)" : ""));
+    }
+}
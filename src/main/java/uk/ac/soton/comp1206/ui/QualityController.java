@@ -0,0 +1,231 @@
+package uk.ac.soton.comp1206.ui;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.Scene;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * Chooses the {@link RenderQuality} the game is drawn at. The player can fix a level in the settings, or leave it on
+ * automatic, where the controller watches how long frames take and steps the quality down when frames are late and
+ * back up when they have been on time for a while.
+ *
+ * Frames are timed with a pulse listener on the current scene, which only runs when JavaFX is drawing anyway, so
+ * watching costs nothing while the game is idle. A gap between pulses long enough to be idleness rather than a slow
+ * frame is ignored. After stepping up, the level is only kept if frames stay on time: stepping straight back down
+ * doubles how long the controller waits before trying again, so it does not flicker between two levels.
+ *
+ * Everything here runs on the JavaFX thread. Components read {@link #getQuality()} when they paint and listen to
+ * {@link #qualityProperty()} to repaint when it changes.
+ */
+public class QualityController {
+
+    private static final Logger logger = LogManager.getLogger(QualityController.class);
+
+    /**
+     * Style class put on the scene root while backgrounds should use the low resolution images
+     */
+    public static final String REDUCED_BACKGROUNDS = "reduced-backgrounds";
+
+    /**
+     * Frames judged together
+     */
+    private static final int WINDOW = 60;
+
+    /**
+     * A frame taking longer than this, one and a half frames at 60Hz, is late
+     */
+    private static final long LATE_NANOS = 25_000_000;
+
+    /**
+     * A gap between pulses longer than this means JavaFX was idle, not that a frame was slow
+     */
+    private static final long IDLE_NANOS = 100_000_000;
+
+    /**
+     * Step down when more than this many frames in a window are late
+     */
+    private static final int LATE_LIMIT = WINDOW / 10;
+
+    /**
+     * On time windows needed before the first try at a higher level, and the most it backs off to
+     */
+    private static final int FIRST_PATIENCE = 5;
+    private static final int MAX_PATIENCE = 80;
+
+    private static final ReadOnlyObjectWrapper<RenderQuality> quality = new ReadOnlyObjectWrapper<>(RenderQuality.HIGH);
+    private static boolean automatic = true;
+
+    private static Scene scene;
+    private static final Runnable pulse = QualityController::pulse;
+
+    private static long lastPulse = 0;
+    private static int frames = 0;
+    private static int late = 0;
+    private static int onTimeWindows = 0;
+    private static int patience = FIRST_PATIENCE;
+    private static int windowsSinceStepUp = Integer.MAX_VALUE;
+    private static boolean settling = false;
+
+    static {
+        var setting = System.getProperty("tetrecs.quality", "auto");
+        if (!setting.equalsIgnoreCase("auto")) {
+            try {
+                setQuality(RenderQuality.valueOf(setting.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown tetrecs.quality {}, using automatic quality", setting);
+            }
+        }
+    }
+
+    private QualityController() {
+    }
+
+    /**
+     * Get the level things should be drawn at now
+     * @return the quality
+     */
+    public static RenderQuality getQuality() {
+        return quality.get();
+    }
+
+    /**
+     * The level things should be drawn at, for repainting when it changes
+     * @return the quality property
+     */
+    public static ReadOnlyObjectProperty<RenderQuality> qualityProperty() {
+        return quality.getReadOnlyProperty();
+    }
+
+    /**
+     * Whether the level is being chosen from frame times
+     * @return true if automatic
+     */
+    public static boolean isAutomatic() {
+        return automatic;
+    }
+
+    /**
+     * Choose the level from frame times, starting from the current level
+     */
+    public static void setAutomatic() {
+        automatic = true;
+        patience = FIRST_PATIENCE;
+        resetWindow();
+        logger.info("Automatic render quality, currently {}", quality.get());
+    }
+
+    /**
+     * Fix the level, turning automatic quality off
+     * @param level the level to draw at
+     */
+    public static void setQuality(RenderQuality level) {
+        automatic = false;
+        change(level);
+    }
+
+    /**
+     * Time frames on a new scene, and style its root for the current level. Called whenever the window changes scene.
+     * @param newScene the scene now showing
+     */
+    public static void attach(Scene newScene) {
+        if (scene != null) {
+            scene.removePreLayoutPulseListener(pulse);
+        }
+        scene = newScene;
+        lastPulse = 0;
+        resetWindow();
+        if (scene != null) {
+            scene.addPreLayoutPulseListener(pulse);
+            styleRoot();
+        }
+    }
+
+    /**
+     * Called at the start of every pulse of the current scene
+     */
+    private static void pulse() {
+        long now = System.nanoTime();
+        long interval = now - lastPulse;
+        boolean idle = lastPulse == 0 || interval > IDLE_NANOS;
+        lastPulse = now;
+        if (!automatic || idle) {
+            return;
+        }
+        frames++;
+        if (interval > LATE_NANOS) {
+            late++;
+        }
+        if (frames == WINDOW) {
+            judgeWindow();
+        }
+    }
+
+    /**
+     * Step the level down or up once a window of frames has been timed
+     */
+    private static void judgeWindow() {
+        boolean tooSlow = late > LATE_LIMIT;
+        boolean onTime = late == 0;
+        resetWindow();
+
+        //The window straight after a change includes repainting everything for the new level, so is not judged
+        if (settling) {
+            settling = false;
+            return;
+        }
+        if (windowsSinceStepUp < Integer.MAX_VALUE) {
+            windowsSinceStepUp++;
+        }
+
+        var current = quality.get();
+        if (tooSlow && current != RenderQuality.MINIMUM) {
+            if (windowsSinceStepUp <= 2) {
+                //The last step up did not hold, so wait longer before trying again
+                patience = Math.min(MAX_PATIENCE, patience * 2);
+            }
+            onTimeWindows = 0;
+            logger.info("Frames are late, lowering render quality");
+            change(current.lower());
+        } else if (onTime && current != RenderQuality.HIGH) {
+            if (++onTimeWindows >= patience) {
+                onTimeWindows = 0;
+                windowsSinceStepUp = 0;
+                logger.info("Frames are on time, raising render quality");
+                change(current.higher());
+            }
+        } else if (!onTime) {
+            onTimeWindows = 0;
+        }
+    }
+
+    private static void change(RenderQuality level) {
+        if (quality.get() != level) {
+            quality.set(level);
+            settling = true;
+            logger.info("Render quality {}", level);
+        }
+        styleRoot();
+    }
+
+    private static void styleRoot() {
+        if (scene == null || scene.getRoot() == null) {
+            return;
+        }
+        var styles = scene.getRoot().getStyleClass();
+        boolean reduced = !quality.get().hasFullBackgrounds();
+        if (reduced && !styles.contains(REDUCED_BACKGROUNDS)) {
+            styles.add(REDUCED_BACKGROUNDS);
+        } else if (!reduced) {
+            styles.remove(REDUCED_BACKGROUNDS);
+        }
+    }
+
+    private static void resetWindow() {
+        frames = 0;
+        late = 0;
+    }
+}
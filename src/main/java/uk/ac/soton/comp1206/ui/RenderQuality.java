@@ -0,0 +1,99 @@
+package uk.ac.soton.comp1206.ui;
+
+/**
+ * How much visual detail is drawn, from the full effects down to the cheapest rendering that still plays the same.
+ * Each level keeps everything the level below it drops.
+ *
+ * {@link QualityController} picks the level, either from the player's setting or by watching frame times.
+ */
+public enum RenderQuality {
+
+    /**
+     * Every effect
+     */
+    HIGH("High", 1000),
+
+    /**
+     * No drop shadows on blocks, the most expensive effect to draw on a canvas
+     */
+    MEDIUM("Medium", 1000),
+
+    /**
+     * Flat fills instead of gradients, a shorter fade on cleared blocks and no fade in on the menu
+     */
+    LOW("Low", 400),
+
+    /**
+     * Backgrounds at a third of the resolution and the shortest fade
+     */
+    MINIMUM("Minimum", 150);
+
+    private final String label;
+    private final long fadeMillis;
+
+    RenderQuality(String label, long fadeMillis) {
+        this.label = label;
+        this.fadeMillis = fadeMillis;
+    }
+
+    /**
+     * Whether filled blocks are drawn with a drop shadow
+     * @return true to draw shadows
+     */
+    public boolean hasShadows() {
+        return this == HIGH;
+    }
+
+    /**
+     * Whether blocks are filled with gradients rather than flat colours
+     * @return true to draw gradients
+     */
+    public boolean hasGradients() {
+        return compareTo(MEDIUM) <= 0;
+    }
+
+    /**
+     * Whether the menu fades in when it is shown
+     * @return true to fade in
+     */
+    public boolean hasMenuFade() {
+        return compareTo(MEDIUM) <= 0;
+    }
+
+    /**
+     * Whether backgrounds are drawn from the full resolution images
+     * @return true for full resolution
+     */
+    public boolean hasFullBackgrounds() {
+        return this != MINIMUM;
+    }
+
+    /**
+     * Get how long cleared blocks take to fade out
+     * @return milliseconds
+     */
+    public long getFadeMillis() {
+        return fadeMillis;
+    }
+
+    /**
+     * The next cheaper level
+     * @return the level below, or this one if it is the lowest
+     */
+    public RenderQuality lower() {
+        return this == MINIMUM ? this : values()[ordinal() + 1];
+    }
+
+    /**
+     * The next more detailed level
+     * @return the level above, or this one if it is the highest
+     */
+    public RenderQuality higher() {
+        return this == HIGH ? this : values()[ordinal() - 1];
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,209 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+import uk.ac.soton.comp1206.storage.EventLog;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks that the placement hot path stays within its allocation budget, and exits with status 1 if any operation
+ * allocates more than allowed. It is not shipped with the game: the test phase runs it from the test classes and fails
+ * the build if it exits with an error, which stops allocations creeping back into every move.
+ *
+ * Each operation is warmed up so the JIT has compiled it, then run many times while the thread's allocated bytes are
+ * read from the ThreadMXBean before and after. Anything an operation needs set up, such as refilling the board, is done
+ * outside the measured region. Logging is raised to WARN first, as in a release build, so log messages are not counted.
+ *
+ * Usage: {@code AllocationBudget [iterations]}
+ */
+public class AllocationBudget {
+
+    private static final Logger logger = LogManager.getLogger(AllocationBudget.class);
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * An operation under test. Only {@link #run()} is measured.
+     */
+    private interface Operation {
+        /**
+         * Put everything back into the state the operation expects
+         */
+        default void setup() {
+        }
+
+        /**
+         * The measured work
+         */
+        void run();
+    }
+
+    private record Check(String name, long budget, Operation operation) {
+    }
+
+    /**
+     * Measurement of one operation
+     */
+    private record Outcome(String name, double bytesPerOp, long budget) {
+        boolean passed() {
+            //Allow less than a byte per operation for one-off allocations such as the JIT recompiling something, any
+            //real allocation on every call is at least 16 bytes
+            return bytesPerOp < budget + 1;
+        }
+    }
+
+    /**
+     * Run every check
+     * @param args optional number of measured iterations per operation
+     */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Configurator.setRootLevel(Level.WARN);
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation counting is not supported by this JVM");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        var outcomes = new ArrayList<Outcome>();
+        for (var check : checks()) {
+            outcomes.add(measure(check, iterations));
+        }
+        boolean passed = report(outcomes);
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static List<Check> checks() {
+        var checks = new ArrayList<Check>();
+        var game = new Game(5, 5, PieceSequence.createDefault(), Runnable::run);
+        var grid = game.getGrid();
+        var line = GamePiece.createPiece(0);
+        var plus = GamePiece.createPiece(2);
+
+        checks.add(new Check("Grid.canPlayPiece", 0, () -> grid.canPlayPiece(plus, 2, 2)));
+
+        //Placing a line in the middle column completes three rows, clearing them as one change set
+        checks.add(new Check("placement with clears", 0, new Operation() {
+            @Override
+            public void setup() {
+                fill(grid, 2);
+                line.rotate(line.getBlocks()[1][0] == 0 ? 1 : 0);
+            }
+
+            @Override
+            public void run() {
+                if (grid.canPlayPiece(line, 2, 2)) {
+                    grid.beginChanges();
+                    grid.playPiece(line, 2, 2);
+                    game.afterPiece();
+                    grid.commitChanges();
+                }
+            }
+        }));
+
+        checks.add(new Check("placement without clears", 0, new Operation() {
+            @Override
+            public void setup() {
+                clear(grid);
+            }
+
+            @Override
+            public void run() {
+                if (grid.canPlayPiece(plus, 2, 2)) {
+                    grid.beginChanges();
+                    grid.playPiece(plus, 2, 2);
+                    game.afterPiece();
+                    grid.commitChanges();
+                }
+            }
+        }));
+
+        checks.add(new Check("GamePiece.rotate", 0, plus::rotate));
+        checks.add(new Check("Game.moveAim", 0, () -> game.moveAim(1, -1)));
+
+        int[] cells = new int[25];
+        int[][] blocks = line.getBlocks();
+        checks.add(new Check("BoardSearch.canPlace", 0, () -> BoardSearch.canPlace(cells, 5, 5, blocks, 2, 2)));
+        checks.add(new Check("BoardSearch.clearLines", 0, () -> BoardSearch.clearLines(cells, 5, 5)));
+
+        //Recording a move only copies it into the log's buffer, the file is written on the log's own thread
+        try {
+            var file = Files.createTempFile("allocation-budget", ".tlog");
+            file.toFile().deleteOnExit();
+            var log = new EventLog(file, 5, 5);
+            checks.add(new Check("EventLog.placed", 0, () -> log.placed(3, 1, 2, 2, 0, 1500, 0)));
+        } catch (IOException e) {
+            logger.warn("Skipping event log check: {}", e.getMessage());
+        }
+
+        //Spawning still creates the piece and its block arrays, but nothing else
+        checks.add(new Check("GamePiece.createPiece", 256, () -> GamePiece.createPiece(1)));
+        checks.add(new Check("Game.nextPiece", 256, game::nextPiece));
+        return checks;
+    }
+
+    private static Outcome measure(Check check, int iterations) {
+        var operation = check.operation();
+        //Warm up so the measurement sees compiled code
+        for (int i = 0; i < 20_000; i++) {
+            operation.setup();
+            operation.run();
+        }
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            operation.setup();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            operation.run();
+            allocated += threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        //Take off the cost of reading the counter itself
+        long overhead = 0;
+        for (int i = 0; i < iterations; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            overhead += threads.getCurrentThreadAllocatedBytes() - before;
+        }
+        return new Outcome(check.name(), Math.max(0, allocated - overhead) / (double) iterations, check.budget());
+    }
+
+    private static boolean report(List<Outcome> outcomes) {
+        boolean passed = true;
+        System.out.printf("%-32s %12s %8s%n", "operation", "bytes/op", "budget");
+        for (var outcome : outcomes) {
+            System.out.printf(Locale.ROOT, "%-32s %12.1f %8d  %s%n", outcome.name(), outcome.bytesPerOp(),
+                    outcome.budget(), outcome.passed() ? "ok" : "OVER BUDGET");
+            passed &= outcome.passed();
+        }
+        if (!passed) {
+            logger.error("Allocation budget exceeded");
+        }
+        return passed;
+    }
+
+    /**
+     * Fill every cell except one column
+     */
+    private static void fill(Grid grid, int emptyColumn) {
+        for (int x = 0; x < grid.getCols(); x++) {
+            for (int y = 0; y < grid.getRows(); y++) {
+                grid.set(x, y, x == emptyColumn ? 0 : 1);
+            }
+        }
+    }
+
+    private static void clear(Grid grid) {
+        for (int x = 0; x < grid.getCols(); x++) {
+            for (int y = 0; y < grid.getRows(); y++) {
+                grid.set(x, y, 0);
+            }
+        }
+    }
+}
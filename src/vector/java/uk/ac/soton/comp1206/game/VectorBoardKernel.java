@@ -0,0 +1,80 @@
+package uk.ac.soton.comp1206.game;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The board kernel built on the Vector API. Each lane holds one board, so a row count, a near-complete line or a hole
+ * is worked out for a whole vector of boards with one instruction.
+ *
+ * Only loaded by {@link BoardKernel#get()} when the jdk.incubator.vector module is present. It lives in its own source
+ * root, compiled separately with the incubator module added, so the rest of the game compiles without the incubating
+ * module warning.
+ */
+final class VectorBoardKernel extends BoardKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private static final IntVector ONE = IntVector.broadcast(SPECIES, 1);
+    private static final IntVector TWO = IntVector.broadcast(SPECIES, 2);
+    private static final IntVector FOUR = IntVector.broadcast(SPECIES, 4);
+    private static final IntVector SIX = IntVector.broadcast(SPECIES, 6);
+
+    @Override
+    public void evaluate(int[] cells, int stride, int count, int cols, int rows, int[] scores) {
+        for (int board = 0; board < count; board += SPECIES.length()) {
+            var value = IntVector.zero(SPECIES);
+
+            //Lines one or two blocks short of complete
+            for (int y = 0; y < rows; y++) {
+                var filled = IntVector.zero(SPECIES);
+                for (int x = 0; x < cols; x++) {
+                    filled = filled.add(ONE, occupied(cells, stride, board, y * cols + x));
+                }
+                value = value.add(SIX, filled.eq(cols - 1)).add(TWO, filled.eq(cols - 2));
+            }
+            for (int x = 0; x < cols; x++) {
+                var filled = IntVector.zero(SPECIES);
+                for (int y = 0; y < rows; y++) {
+                    filled = filled.add(ONE, occupied(cells, stride, board, y * cols + x));
+                }
+                value = value.add(SIX, filled.eq(rows - 1)).add(TWO, filled.eq(rows - 2));
+            }
+
+            //Empty cells with every neighbour filled or off the board
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    var hole = occupied(cells, stride, board, y * cols + x).not();
+                    if (x > 0) {
+                        hole = hole.and(occupied(cells, stride, board, y * cols + x - 1));
+                    }
+                    if (x < cols - 1) {
+                        hole = hole.and(occupied(cells, stride, board, y * cols + x + 1));
+                    }
+                    if (y > 0) {
+                        hole = hole.and(occupied(cells, stride, board, (y - 1) * cols + x));
+                    }
+                    if (y < rows - 1) {
+                        hole = hole.and(occupied(cells, stride, board, (y + 1) * cols + x));
+                    }
+                    value = value.sub(FOUR, hole);
+                }
+            }
+            value.intoArray(scores, board);
+        }
+    }
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Which boards have a block in the given cell
+     */
+    private static VectorMask<Integer> occupied(int[] cells, int stride, int board, int cell) {
+        return IntVector.fromArray(SPECIES, cells, cell * stride + board).compare(VectorOperators.NE, 0);
+    }
+}